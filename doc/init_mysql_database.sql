@@ -48,6 +48,7 @@ CREATE TABLE IF NOT EXISTS `chat_sessions` (
     `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键（自增）',
     `title` varchar(200) NOT NULL COMMENT '会话标题（自动生成或用户自定义）',
     `description` text DEFAULT NULL COMMENT '会话描述（可选的会话备注信息）',
+    `parent_session_id` bigint(20) DEFAULT NULL COMMENT '父会话ID（分支会话才有）',
     `deleted` tinyint(1) unsigned NOT NULL DEFAULT '0' COMMENT '0正常，1删除',
     `gmt_create` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `gmt_modified` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
@@ -63,8 +64,12 @@ CREATE TABLE IF NOT EXISTS `chat_messages` (
     `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键（自增）',
     `session_id` bigint(20) NOT NULL COMMENT '会话ID（关联chat_sessions表）',
     `conversation_id` varchar(100) DEFAULT NULL COMMENT 'Spring AI 对话ID（冗余字段，便于查询）',
+    `message_seq` bigint(20) NOT NULL DEFAULT '0' COMMENT '对话内消息序号（按写入顺序单调递增）',
     `message_type` varchar(20) DEFAULT NULL COMMENT 'Spring AI 消息类型（USER:用户输入消息；ASSISTANT:AI助手回复消息；SYSTEM:系统提示消息；TOOL:工具调用消息）',
-    `content` text NOT NULL COMMENT '消息内容（用户问题或AI回答的完整文本）',
+    `content` text NOT NULL COMMENT '消息内容（用户问题或AI回答的完整文本，压缩存储时为空串）',
+    `content_format` tinyint(4) NOT NULL DEFAULT '0' COMMENT '内容存储格式（0:明文存储在content；1:Deflate压缩后存储在content_blob）',
+    `content_blob` mediumblob DEFAULT NULL COMMENT '压缩后的消息内容',
+    `token_count` int(11) DEFAULT NULL COMMENT '消息内容的token数（写入时计算，用于按token预算选取记忆窗口）',
     `rating` int(11) DEFAULT NULL COMMENT '用户评分（1-5分，用户对AI回答的满意度评价）',
     `deleted` tinyint(1) unsigned NOT NULL DEFAULT '0' COMMENT '0正常，1删除',
     `gmt_create` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -73,11 +78,118 @@ CREATE TABLE IF NOT EXISTS `chat_messages` (
     `modifier` varchar(64) NOT NULL DEFAULT 'system' COMMENT '修改人',
     PRIMARY KEY (`id`),
     KEY `idx_session_id` (`session_id`),
-    KEY `idx_conversation_id` (`conversation_id`),
+    KEY `idx_conversation_deleted_id` (`conversation_id`, `deleted`, `id`),
+    KEY `idx_conversation_seq` (`conversation_id`, `message_seq`),
     KEY `idx_message_type` (`message_type`),
     KEY `idx_rating` (`rating`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='聊天消息表';
 
+-- =====================================================
+-- 对话状态表（每个对话一行，记录消息序号水位线，同时作为对话注册表供枚举对话使用）
+-- =====================================================
+CREATE TABLE IF NOT EXISTS `chat_conversations` (
+    `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键（自增）',
+    `conversation_id` varchar(100) NOT NULL COMMENT 'Spring AI 对话ID',
+    `parent_conversation_id` varchar(100) DEFAULT NULL COMMENT '父对话ID（分支对话才有）',
+    `fork_seq` bigint(20) DEFAULT NULL COMMENT '分支点序号（继承父对话链上序号不超过该值的消息）',
+    `last_seq` bigint(20) NOT NULL DEFAULT '0' COMMENT '已持久化消息的最大序号（水位线）',
+    `summarized_seq` bigint(20) NOT NULL DEFAULT '0' COMMENT '已合并进滚动摘要的被淘汰消息的最大序号',
+    `deleted` tinyint(1) unsigned NOT NULL DEFAULT '0' COMMENT '0正常，1删除',
+    `gmt_create` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `gmt_modified` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
+    `creator` varchar(64) NOT NULL DEFAULT 'system' COMMENT '创建人',
+    `modifier` varchar(64) NOT NULL DEFAULT 'system' COMMENT '修改人',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_conversation_id` (`conversation_id`),
+    KEY `idx_deleted_conversation_id` (`deleted`, `conversation_id`),
+    KEY `idx_parent_conversation_id` (`parent_conversation_id`, `fork_seq`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='对话状态表（同时作为对话注册表）';
+
+-- =====================================================
+-- 聊天消息归档表（超过保留期的软删除消息由清理任务迁移至此）
+-- =====================================================
+CREATE TABLE IF NOT EXISTS `chat_messages_archive` (
+    `id` bigint(20) NOT NULL COMMENT '主键（与chat_messages.id一致）',
+    `session_id` bigint(20) NOT NULL COMMENT '会话ID',
+    `conversation_id` varchar(100) DEFAULT NULL COMMENT 'Spring AI 对话ID',
+    `message_seq` bigint(20) NOT NULL DEFAULT '0' COMMENT '对话内消息序号',
+    `message_type` varchar(20) DEFAULT NULL COMMENT 'Spring AI 消息类型',
+    `content` text NOT NULL COMMENT '消息内容',
+    `content_format` tinyint(4) NOT NULL DEFAULT '0' COMMENT '内容存储格式',
+    `content_blob` mediumblob DEFAULT NULL COMMENT '压缩后的消息内容',
+    `token_count` int(11) DEFAULT NULL COMMENT '消息内容的token数',
+    `rating` int(11) DEFAULT NULL COMMENT '用户评分',
+    `deleted` tinyint(1) unsigned NOT NULL DEFAULT '1' COMMENT '0正常，1删除',
+    `gmt_create` datetime NOT NULL COMMENT '创建时间',
+    `gmt_modified` datetime NOT NULL COMMENT '修改时间（软删除时间）',
+    `creator` varchar(64) NOT NULL DEFAULT 'system' COMMENT '创建人',
+    `modifier` varchar(64) NOT NULL DEFAULT 'system' COMMENT '修改人',
+    `gmt_archived` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '归档时间',
+    PRIMARY KEY (`id`),
+    KEY `idx_conversation_seq` (`conversation_id`, `message_seq`),
+    KEY `idx_session_id` (`session_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='聊天消息归档表';
+
+-- =====================================================
+-- 冷对话段索引表（空闲对话的消息迁移到本地压缩段文件，这里记录其所在文件和偏移量）
+-- =====================================================
+CREATE TABLE IF NOT EXISTS `chat_cold_segments` (
+    `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键（自增）',
+    `conversation_id` varchar(100) NOT NULL COMMENT 'Spring AI 对话ID',
+    `segment_file` varchar(128) NOT NULL COMMENT '段文件名',
+    `segment_offset` bigint(20) NOT NULL COMMENT '记录在段文件中的起始偏移量',
+    `segment_length` int(11) NOT NULL COMMENT '记录的字节长度（压缩后）',
+    `message_count` int(11) NOT NULL COMMENT '记录中的消息条数',
+    `max_message_id` bigint(20) NOT NULL COMMENT '记录中消息的最大主键',
+    `deleted` tinyint(1) unsigned NOT NULL DEFAULT '0' COMMENT '0冷数据有效，1已回迁',
+    `gmt_create` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `gmt_modified` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
+    `creator` varchar(64) NOT NULL DEFAULT 'system' COMMENT '创建人',
+    `modifier` varchar(64) NOT NULL DEFAULT 'system' COMMENT '修改人',
+    PRIMARY KEY (`id`),
+    KEY `idx_conversation_deleted` (`conversation_id`, `deleted`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='冷对话段索引表';
+
+-- =====================================================
+-- 存量库升级（已有表结构时执行）
+-- =====================================================
+-- ALTER TABLE `chat_messages`
+--     ADD COLUMN `message_seq` bigint(20) NOT NULL DEFAULT '0' COMMENT '对话内消息序号（按写入顺序单调递增）' AFTER `conversation_id`,
+--     ADD KEY `idx_conversation_seq` (`conversation_id`, `message_seq`);
+-- ALTER TABLE `chat_messages`
+--     DROP KEY `idx_conversation_id`,
+--     ADD KEY `idx_conversation_deleted_id` (`conversation_id`, `deleted`, `id`);
+-- ALTER TABLE `chat_messages`
+--     ADD COLUMN `token_count` int(11) DEFAULT NULL COMMENT '消息内容的token数（写入时计算，用于按token预算选取记忆窗口）' AFTER `content`;
+-- ALTER TABLE `chat_messages`
+--     ADD COLUMN `content_format` tinyint(4) NOT NULL DEFAULT '0' COMMENT '内容存储格式（0:明文存储在content；1:Deflate压缩后存储在content_blob）' AFTER `content`,
+--     ADD COLUMN `content_blob` mediumblob DEFAULT NULL COMMENT '压缩后的消息内容' AFTER `content_format`;
+-- ALTER TABLE `chat_messages_archive`
+--     ADD COLUMN `content_format` tinyint(4) NOT NULL DEFAULT '0' COMMENT '内容存储格式' AFTER `content`,
+--     ADD COLUMN `content_blob` mediumblob DEFAULT NULL COMMENT '压缩后的消息内容' AFTER `content_format`;
+-- ALTER TABLE `chat_conversations`
+--     ADD COLUMN `summarized_seq` bigint(20) NOT NULL DEFAULT '0' COMMENT '已合并进滚动摘要的被淘汰消息的最大序号' AFTER `last_seq`;
+-- ALTER TABLE `chat_conversations`
+--     ADD KEY `idx_deleted_conversation_id` (`deleted`, `conversation_id`);
+-- 回填对话注册表（为引入水位线之前写入、尚未登记的对话补充注册行）
+-- INSERT IGNORE INTO `chat_conversations` (`conversation_id`, `last_seq`, `summarized_seq`, `deleted`)
+-- SELECT `conversation_id`, MAX(`message_seq`), MAX(`message_seq`), IF(SUM(`deleted` = 0) > 0, 0, 1)
+-- FROM `chat_messages`
+-- WHERE `conversation_id` IS NOT NULL
+-- GROUP BY `conversation_id`;
+-- ALTER TABLE `chat_sessions`
+--     ADD COLUMN `parent_session_id` bigint(20) DEFAULT NULL COMMENT '父会话ID（分支会话才有）' AFTER `description`;
+-- ALTER TABLE `chat_conversations`
+--     ADD COLUMN `parent_conversation_id` varchar(100) DEFAULT NULL COMMENT '父对话ID（分支对话才有）' AFTER `conversation_id`,
+--     ADD COLUMN `fork_seq` bigint(20) DEFAULT NULL COMMENT '分支点序号（继承父对话链上序号不超过该值的消息）' AFTER `parent_conversation_id`,
+--     ADD KEY `idx_parent_conversation_id` (`parent_conversation_id`, `fork_seq`);
+-- 回填写入时未带会话ID的历史消息（对话ID即会话ID），同时补齐作者
+-- UPDATE `chat_messages` m
+--     JOIN `chat_sessions` s ON m.`conversation_id` = CAST(s.`id` AS CHAR)
+-- SET m.`session_id` = s.`id`, m.`creator` = s.`creator`, m.`modifier` = s.`creator`, m.`gmt_modified` = m.`gmt_modified`
+-- WHERE m.`session_id` = -1
+--   AND m.`creator` <> 'memory-compaction';
+
 -- =====================================================
 -- 脚本结束
 -- =====================================================
\ No newline at end of file
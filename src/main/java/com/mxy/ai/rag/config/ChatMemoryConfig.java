@@ -1,44 +1,147 @@
 package com.mxy.ai.rag.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mxy.ai.rag.service.memory.CachingChatMemoryRepository;
+import com.mxy.ai.rag.service.memory.ChatMemoryWindowStore;
 import com.mxy.ai.rag.service.memory.CustomChatMemoryRepository;
+import com.mxy.ai.rag.service.memory.RedisChatMemoryRepository;
+import com.mxy.ai.rag.service.memory.SerializedChatMemory;
+import com.mxy.ai.rag.service.memory.TokenWindowChatMemory;
+import org.redisson.api.RedissonClient;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
 import jakarta.annotation.Resource;
 
+import java.time.Duration;
+
 /**
  * 聊天记忆配置类
  * 配置Spring AI的聊天记忆功能，使用自定义的ChatMemoryRepository实现
- * 
+ *
  * @author Mxy
  */
 @Configuration
 public class ChatMemoryConfig {
-    private static final int DEFAULT_MAX_MESSAGES = 10;
+    private static final String WINDOW_TYPE_TOKEN = "token";
     @Resource
     private CustomChatMemoryRepository customChatMemoryRepository;
 
+    /**
+     * 记忆窗口类型：message按固定条数，token按token预算
+     */
+    @Value("${mxy.chat.memory.window-type:message}")
+    private String windowType;
+
+    /**
+     * 窗口的消息条数上限
+     */
+    @Value("${mxy.chat.memory.max-messages:10}")
+    private int maxMessages;
+
+    /**
+     * 按token预算选取窗口时的token预算
+     */
+    @Value("${mxy.chat.memory.max-tokens:4000}")
+    private int maxTokens;
+
+    /**
+     * 是否按对话串行化并合并并发写入
+     */
+    @Value("${mxy.chat.memory.serialize.enabled:true}")
+    private boolean serializeEnabled;
+
+    /**
+     * 串行化写入的分段锁数量
+     */
+    @Value("${mxy.chat.memory.serialize.stripes:64}")
+    private int serializeStripes;
+
+    /**
+     * 水位线乐观校验失败时的最大重试次数
+     */
+    @Value("${mxy.chat.memory.serialize.max-retries:3}")
+    private int serializeMaxRetries;
+
+    /**
+     * 是否启用本地消息窗口缓存
+     */
+    @Value("${mxy.chat.memory.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    /**
+     * 本地缓存最多缓存的对话数
+     */
+    @Value("${mxy.chat.memory.cache.maximum-size:10000}")
+    private long cacheMaximumSize;
+
+    /**
+     * 对话窗口空闲多久后从本地缓存过期
+     */
+    @Value("${mxy.chat.memory.cache.expire-after-access:30m}")
+    private Duration cacheExpireAfterAccess;
+
+    /**
+     * Redis共享窗口的过期时间
+     */
+    @Value("${mxy.chat.memory.redis.ttl:2h}")
+    private Duration redisTtl;
+
     /**
      * 配置聊天记忆仓库
-     * 使用自定义的CustomChatMemoryRepository作为主要的ChatMemoryRepository实现
-     * 
+     * 使用自定义的CustomChatMemoryRepository作为主要的ChatMemoryRepository实现：
+     * - 启用Redis共享记忆时，在其外层包装Redis窗口层，多个节点共享同一份窗口
+     * - 否则按配置在其外层包装本地消息窗口缓存
+     * 多节点部署时本地缓存会读到其他节点已经更新过的旧窗口，因此两者不叠加使用
+     *
+     * @param redissonClientProvider Redis客户端（仅在启用Redis共享记忆时存在）
+     * @param objectMapper           消息序列化
      * @return ChatMemoryRepository实例
      */
     @Bean
     @Primary
-    public ChatMemoryRepository chatMemoryRepository() {
-        return customChatMemoryRepository;
+    public ChatMemoryWindowStore chatMemoryRepository(ObjectProvider<RedissonClient> redissonClientProvider,
+                                                     ObjectMapper objectMapper) {
+        RedissonClient redissonClient = redissonClientProvider.getIfAvailable();
+        if (redissonClient != null) {
+            return new RedisChatMemoryRepository(redissonClient, customChatMemoryRepository, objectMapper, redisTtl);
+        }
+        if (!cacheEnabled) {
+            return customChatMemoryRepository;
+        }
+        return new CachingChatMemoryRepository(customChatMemoryRepository, cacheMaximumSize, cacheExpireAfterAccess);
     }
 
+    /**
+     * 配置聊天记忆
+     * 按配置选择窗口策略：
+     * - token：保留能放进token预算的最近消息，条数上限为max-messages
+     * - message：固定保留最近max-messages条消息
+     * 启用串行化时在外层包装SerializedChatMemory，同一对话的并发写入合并为一次读取和一次保存
+     *
+     * @param chatMemoryRepository 聊天记忆仓库
+     * @return ChatMemory实例
+     */
     @Bean
     @Primary
-    public MessageWindowChatMemory chatMemory() {
-       return MessageWindowChatMemory.builder()
-                .chatMemoryRepository(customChatMemoryRepository)
-                .maxMessages(DEFAULT_MAX_MESSAGES).build();
+    public ChatMemory chatMemory(ChatMemoryRepository chatMemoryRepository) {
+        ChatMemory chatMemory;
+        if (WINDOW_TYPE_TOKEN.equalsIgnoreCase(windowType)) {
+            chatMemory = new TokenWindowChatMemory(chatMemoryRepository, maxTokens, maxMessages);
+        } else {
+            chatMemory = MessageWindowChatMemory.builder()
+                    .chatMemoryRepository(chatMemoryRepository)
+                    .maxMessages(maxMessages).build();
+        }
+        if (!serializeEnabled) {
+            return chatMemory;
+        }
+        return new SerializedChatMemory(chatMemory, serializeStripes, serializeMaxRetries);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package com.mxy.ai.rag.config;
+
+import com.mxy.ai.rag.service.embedding.CachingEmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+/**
+ * 嵌入模型配置类
+ * 知识库VectorStore由自动配置创建，无法传入已计算好的查询向量，
+ * 因此在嵌入模型Bean初始化后包装查询向量缓存，知识库检索和长期记忆召回共用同一个问题的向量
+ *
+ * @author Mxy
+ */
+@Configuration
+@ConditionalOnProperty(name = "mxy.embedding.query-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class EmbeddingConfig {
+
+    /**
+     * 为嵌入模型包装查询向量缓存
+     * 必须是静态方法，BeanPostProcessor需要早于其他Bean创建
+     *
+     * @param environment 配置环境
+     * @return BeanPostProcessor实例
+     */
+    @Bean
+    public static BeanPostProcessor cachingEmbeddingModelPostProcessor(Environment environment) {
+        long maximumSize = environment.getProperty("mxy.embedding.query-cache.maximum-size", Long.class, 1000L);
+        Duration expireAfterWrite = environment.getProperty("mxy.embedding.query-cache.expire-after-write",
+                Duration.class, Duration.ofSeconds(60));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof EmbeddingModel embeddingModel && !(bean instanceof CachingEmbeddingModel)) {
+                    return new CachingEmbeddingModel(embeddingModel, maximumSize, expireAfterWrite);
+                }
+                return bean;
+            }
+        };
+    }
+}
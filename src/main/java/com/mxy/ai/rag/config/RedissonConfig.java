@@ -0,0 +1,47 @@
+package com.mxy.ai.rag.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.redisson.config.SingleServerConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+/**
+ * Redisson配置
+ * 仅在启用集群共享聊天记忆（mxy.chat.memory.redis.enabled=true）时初始化Redis客户端
+ */
+@Configuration
+@Slf4j
+@ConditionalOnProperty(prefix = "mxy.chat.memory.redis", name = "enabled", havingValue = "true")
+public class RedissonConfig {
+
+    @Value("${mxy.chat.memory.redis.address:redis://127.0.0.1:6379}")
+    private String address;
+
+    @Value("${mxy.chat.memory.redis.password:}")
+    private String password;
+
+    @Value("${mxy.chat.memory.redis.database:0}")
+    private int database;
+
+    /**
+     * 初始化Redisson客户端（单节点模式）
+     */
+    @Bean(destroyMethod = "shutdown")
+    public RedissonClient redissonClient() {
+        Config config = new Config();
+        SingleServerConfig serverConfig = config.useSingleServer()
+                .setAddress(address)
+                .setDatabase(database);
+        if (StringUtils.hasText(password)) {
+            serverConfig.setPassword(password);
+        }
+        log.info("初始化Redisson客户端: address={}, database={}", address, database);
+        return Redisson.create(config);
+    }
+}
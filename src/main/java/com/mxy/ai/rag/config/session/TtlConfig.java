@@ -1,8 +1,12 @@
 package com.mxy.ai.rag.config.session;
 
+import com.alibaba.ttl.TtlRunnable;
 import com.alibaba.ttl.threadpool.TtlExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -12,7 +16,8 @@ import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * TTL（TransmittableThreadLocal）配置类
- * 配置支持TTL的线程池，确保异步任务中能够正确传递用户上下文
+ * 配置支持TTL的线程池，确保异步任务中能够正确传递用户上下文；
+ * 启用虚拟线程时，ttlTaskExecutor、streamingTaskExecutor、ragPipelineExecutor和ttlScheduledExecutor改由VirtualThreadConfig提供
  * 
  * @author Mxy
  */
@@ -28,6 +33,7 @@ public class TtlConfig {
      * @return 支持TTL的任务执行器
      */
     @Bean("ttlTaskExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
     public ThreadPoolTaskExecutor ttlTaskExecutor() {
         logger.info("初始化支持TTL的线程池执行器");
         
@@ -53,6 +59,116 @@ public class TtlConfig {
         return executor;
     }
     
+    /**
+     * 配置聊天记忆压缩执行器
+     * 压缩需要调用大模型生成摘要，耗时较长，使用独立的小线程池与请求线程隔离；
+     * 队列满时直接丢弃本次压缩（下次窗口裁剪会再次触发），不能像CallerRunsPolicy那样回落到请求线程执行
+     *
+     * @return 聊天记忆压缩执行器
+     */
+    @Bean("memoryCompactionExecutor")
+    public ThreadPoolTaskExecutor memoryCompactionExecutor() {
+        logger.info("初始化聊天记忆压缩线程池执行器");
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("memory-compaction-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+
+        executor.initialize();
+
+        return executor;
+    }
+
+    /**
+     * 配置长期记忆向量化执行器
+     * 对话轮次的向量化需要调用嵌入模型，在独立线程池中执行；队列满时丢弃，不回落到请求线程
+     *
+     * @return 长期记忆向量化执行器
+     */
+    @Bean("longTermMemoryExecutor")
+    public ThreadPoolTaskExecutor longTermMemoryExecutor() {
+        logger.info("初始化长期记忆向量化线程池执行器");
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("long-term-memory-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+
+        executor.initialize();
+
+        return executor;
+    }
+
+    /**
+     * 配置流式回答执行器
+     * 非阻塞流式模式下承担MVC异步请求的派发和流式回答的响应写出，每个任务只写出一帧，
+     * 空闲的回答流不占用线程，单节点可同时保持的回答流数量不再受ttlTaskExecutor线程数限制；
+     * 线程池大小和队列容量单独配置，通过/api/v1/chat/stream/stats监控
+     *
+     * @param corePoolSize  核心线程数
+     * @param maxPoolSize   最大线程数
+     * @param queueCapacity 队列容量
+     * @return 支持TTL的流式回答执行器
+     */
+    @Bean("streamingTaskExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor streamingTaskExecutor(@Value("${mxy.chat.stream.executor.core-pool-size:16}") int corePoolSize,
+                                                        @Value("${mxy.chat.stream.executor.max-pool-size:64}") int maxPoolSize,
+                                                        @Value("${mxy.chat.stream.executor.queue-capacity:10000}") int queueCapacity) {
+        logger.info("初始化流式回答线程池执行器: corePoolSize={}, maxPoolSize={}, queueCapacity={}",
+                corePoolSize, maxPoolSize, queueCapacity);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("chat-stream-");
+        // 队列满时由调用线程写出，宁可变慢也不丢弃回答内容
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setTaskDecorator(TtlRunnable::get);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+
+        executor.initialize();
+
+        return executor;
+    }
+
+    /**
+     * 配置RAG流水线执行器
+     * 知识库检索和聊天记忆加载在该线程池中并行执行；有界队列满时由调用线程执行，
+     * 使用TTL装饰器包装，检索阶段召回长期记忆时能拿到当前用户上下文
+     *
+     * @return 支持TTL的RAG流水线执行器
+     */
+    @Bean("ragPipelineExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public Executor ragPipelineExecutor() {
+        logger.info("初始化RAG流水线线程池执行器");
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(32);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("rag-pipeline-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+
+        executor.initialize();
+
+        return TtlExecutors.getTtlExecutor(executor.getThreadPoolExecutor());
+    }
+
     /**
      * 配置支持TTL的调度任务执行器
      * 用于定时任务等场景
@@ -60,6 +176,7 @@ public class TtlConfig {
      * @return 支持TTL的调度执行器
      */
     @Bean("ttlScheduledExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
     public Executor ttlScheduledExecutor() {
         logger.info("初始化支持TTL的调度线程池执行器");
         
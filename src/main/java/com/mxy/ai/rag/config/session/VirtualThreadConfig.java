@@ -0,0 +1,89 @@
+package com.mxy.ai.rag.config.session;
+
+import com.alibaba.ttl.TtlRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+/**
+ * 虚拟线程配置类
+ * spring.threads.virtual.enabled=true且运行在JDK 21及以上时生效（virtual profile），Tomcat请求处理由Spring Boot切换为虚拟线程，
+ * 这里提供与TtlConfig同名的执行器：每个任务一个虚拟线程，不再排队等待池中线程，阻塞在大模型调用、MyBatis查询上的任务只占用很少的内存；
+ * 任务经TtlRunnable装饰，UserSessionHolder中的用户上下文照常传递到异步任务。
+ * 聊天记忆压缩和长期记忆向量化执行器保持有界线程池，队列满时丢弃的限流语义不变
+ *
+ * @author Mxy
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    /**
+     * 关闭时等待执行中任务结束的时间（毫秒）
+     */
+    private static final long TASK_TERMINATION_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * 配置基于虚拟线程的异步任务执行器（MVC异步请求）
+     *
+     * @return 支持TTL的虚拟线程执行器
+     */
+    @Bean("ttlTaskExecutor")
+    public SimpleAsyncTaskExecutor ttlTaskExecutor() {
+        logger.info("初始化基于虚拟线程的异步任务执行器");
+        return virtualThreadExecutor("ttl-async-");
+    }
+
+    /**
+     * 配置基于虚拟线程的流式回答执行器
+     * 非阻塞流式模式下在该执行器上publishOn写出回答帧，不设并发上限，避免在Reactor线程上提交任务时被阻塞
+     *
+     * @return 支持TTL的虚拟线程执行器
+     */
+    @Bean("streamingTaskExecutor")
+    public SimpleAsyncTaskExecutor streamingTaskExecutor() {
+        logger.info("初始化基于虚拟线程的流式回答执行器");
+        return virtualThreadExecutor("chat-stream-");
+    }
+
+    /**
+     * 配置基于虚拟线程的RAG流水线执行器
+     * 检索会调用嵌入模型和向量库，用并发上限代替原线程池的有界队列，超出上限的提交方（同为虚拟线程）等待而不是回落执行
+     *
+     * @param concurrencyLimit 同时执行的检索任务上限
+     * @return 支持TTL的虚拟线程执行器
+     */
+    @Bean("ragPipelineExecutor")
+    public SimpleAsyncTaskExecutor ragPipelineExecutor(@Value("${mxy.chat.rag.pipeline.concurrency-limit:64}") int concurrencyLimit) {
+        logger.info("初始化基于虚拟线程的RAG流水线执行器: concurrencyLimit={}", concurrencyLimit);
+        SimpleAsyncTaskExecutor executor = virtualThreadExecutor("rag-pipeline-");
+        executor.setConcurrencyLimit(concurrencyLimit);
+        return executor;
+    }
+
+    /**
+     * 配置基于虚拟线程的调度任务执行器
+     *
+     * @return 支持TTL的虚拟线程执行器
+     */
+    @Bean("ttlScheduledExecutor")
+    public SimpleAsyncTaskExecutor ttlScheduledExecutor() {
+        logger.info("初始化基于虚拟线程的调度任务执行器");
+        return virtualThreadExecutor("ttl-scheduled-");
+    }
+
+    private static SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setTaskDecorator(TtlRunnable::get);
+        executor.setTaskTerminationTimeout(TASK_TERMINATION_TIMEOUT_MILLIS);
+        return executor;
+    }
+}
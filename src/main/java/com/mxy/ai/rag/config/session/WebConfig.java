@@ -1,26 +1,48 @@
 package com.mxy.ai.rag.config.session;
 
 import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;/**
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/**
  * Web配置类
  * 配置Spring MVC相关设置，包括拦截器注册和页面重定向
  * 
  * @author Mxy
  */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class WebConfig implements WebMvcConfigurer {
     
     @Resource
     private UserAuthInterceptor userAuthInterceptor;
     
     @Resource(name = "ttlTaskExecutor")
-    private ThreadPoolTaskExecutor ttlTaskExecutor;
+    private AsyncTaskExecutor ttlTaskExecutor;
+
+    @Resource(name = "streamingTaskExecutor")
+    private AsyncTaskExecutor streamingTaskExecutor;
+
+    /**
+     * 是否启用非阻塞流式模式
+     */
+    @Value("${mxy.chat.stream.non-blocking:false}")
+    private boolean nonBlockingStreaming;
+
+    /**
+     * 流式回答的异步请求超时时间
+     */
+    @Value("${mxy.chat.stream.timeout:5m}")
+    private Duration streamTimeout;
     
     /**
      * 配置视图控制器
@@ -98,12 +120,18 @@ public class WebConfig implements WebMvcConfigurer {
     /**
      * 配置异步支持
      * 使用自定义的TTL任务执行器替代默认的SimpleAsyncTaskExecutor
-     * 解决生产环境下的异步处理性能问题，并保持用户上下文传递
+     * 解决生产环境下的异步处理性能问题，并保持用户上下文传递；
+     * 非阻塞流式模式下改用单独配置的流式回答执行器，超时时间按最长回答设置
      * 
      * @param configurer 异步支持配置器
      */
     @Override
     public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if (nonBlockingStreaming) {
+            configurer.setTaskExecutor(streamingTaskExecutor);
+            configurer.setDefaultTimeout(streamTimeout.toMillis());
+            return;
+        }
         // 设置异步请求的任务执行器
         configurer.setTaskExecutor(ttlTaskExecutor);
         // 设置异步请求超时时间（30秒）
@@ -0,0 +1,122 @@
+package com.mxy.ai.rag.datasource.codec;
+
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 聊天消息内容编解码工具类
+ * 较长的消息内容压缩后存入content_blob列，content_format标记存储格式，content列置为空串：
+ * - 写入前在DAO层编码，压缩收益不足时保持明文
+ * - 读取后在DAO层解码，上层始终只看到明文content
+ *
+ * @author Mxy
+ */
+public final class ChatContentCodec {
+
+    /**
+     * 明文存储在content列
+     */
+    public static final int FORMAT_PLAIN = 0;
+
+    /**
+     * Deflate压缩后存储在content_blob列
+     */
+    public static final int FORMAT_DEFLATE = 1;
+
+    /**
+     * 压缩后至少要比原文小10%才采用压缩格式
+     */
+    private static final double MIN_SAVING_RATIO = 0.9;
+
+    private ChatContentCodec() {
+    }
+
+    /**
+     * 编码消息内容（可重复调用，已压缩的消息不会重复压缩）
+     *
+     * @param messageDO 消息
+     * @param minBytes  内容达到该字节数才压缩
+     */
+    public static void encode(ChatMessagesDO messageDO, int minBytes) {
+        if (messageDO == null || isCompressed(messageDO)) {
+            return;
+        }
+        messageDO.setContentFormat(FORMAT_PLAIN);
+        if (messageDO.getContent() == null) {
+            return;
+        }
+        byte[] raw = messageDO.getContent().getBytes(StandardCharsets.UTF_8);
+        if (raw.length < minBytes) {
+            return;
+        }
+        byte[] compressed = deflate(raw);
+        if (compressed.length >= raw.length * MIN_SAVING_RATIO) {
+            return;
+        }
+        messageDO.setContent("");
+        messageDO.setContentBlob(compressed);
+        messageDO.setContentFormat(FORMAT_DEFLATE);
+    }
+
+    /**
+     * 解码消息内容，解码后content为明文，content_blob置空
+     *
+     * @param messageDO 消息
+     */
+    public static void decode(ChatMessagesDO messageDO) {
+        if (messageDO == null) {
+            return;
+        }
+        if (isCompressed(messageDO) && messageDO.getContentBlob() != null) {
+            messageDO.setContent(new String(inflate(messageDO.getContentBlob()), StandardCharsets.UTF_8));
+        }
+        messageDO.setContentBlob(null);
+        messageDO.setContentFormat(FORMAT_PLAIN);
+    }
+
+    private static boolean isCompressed(ChatMessagesDO messageDO) {
+        return messageDO.getContentFormat() != null && messageDO.getContentFormat() == FORMAT_DEFLATE;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(raw.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("压缩的消息内容不完整");
+                }
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("解压消息内容失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
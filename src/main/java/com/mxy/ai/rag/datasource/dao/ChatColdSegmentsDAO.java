@@ -0,0 +1,44 @@
+package com.mxy.ai.rag.datasource.dao;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.mxy.ai.rag.datasource.entity.ChatColdSegmentsDO;
+import com.mxy.ai.rag.datasource.mapper.ChatColdSegmentsMapper;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 冷对话段索引表DAO类
+ * 维护冷对话消息在段文件中的位置
+ */
+@Repository
+public class ChatColdSegmentsDAO extends ServiceImpl<ChatColdSegmentsMapper, ChatColdSegmentsDO> {
+
+    /**
+     * 获取对话尚未回迁的冷数据段
+     *
+     * @param conversationId 对话ID
+     * @return 按迁移顺序排列的冷数据段，对话不是冷对话时返回空列表
+     */
+    public List<ChatColdSegmentsDO> getActiveSegments(String conversationId) {
+        return lambdaQuery().eq(ChatColdSegmentsDO::getConversationId, conversationId)
+                .eq(ChatColdSegmentsDO::getDeleted, 0)
+                .orderByAsc(ChatColdSegmentsDO::getId)
+                .list();
+    }
+
+    /**
+     * 标记冷数据段已回迁
+     *
+     * @param id 冷数据段ID
+     * @return 是否由本次调用完成标记（并发回迁时只有一个调用返回true）
+     */
+    public boolean markRehydrated(Long id) {
+        return lambdaUpdate().eq(ChatColdSegmentsDO::getId, id)
+                .eq(ChatColdSegmentsDO::getDeleted, 0)
+                .set(ChatColdSegmentsDO::getDeleted, 1)
+                .set(ChatColdSegmentsDO::getGmtModified, LocalDateTime.now())
+                .update();
+    }
+}
@@ -0,0 +1,189 @@
+package com.mxy.ai.rag.datasource.dao;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import com.mxy.ai.rag.datasource.mapper.ChatConversationsMapper;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 对话状态表DAO类
+ * 维护每个对话的消息序号水位线，同时作为对话注册表供枚举对话使用
+ */
+@Repository
+public class ChatConversationsDAO extends ServiceImpl<ChatConversationsMapper, ChatConversationsDO> {
+
+    /**
+     * 根据对话ID获取对话状态
+     *
+     * @param conversationId 对话ID
+     * @return 对话状态，不存在时返回null
+     */
+    public ChatConversationsDO getByConversationId(String conversationId) {
+        return lambdaQuery().eq(ChatConversationsDO::getConversationId, conversationId)
+                .last("LIMIT 1")
+                .one();
+    }
+
+    /**
+     * 根据对话ID获取对话状态并加行锁，需在事务内调用
+     * 与推进水位线的写入互斥，供冷对话迁移和回迁在同一事务内重新校验对话状态
+     *
+     * @param conversationId 对话ID
+     * @return 对话状态，不存在时返回null
+     */
+    public ChatConversationsDO lockByConversationId(String conversationId) {
+        return lambdaQuery().eq(ChatConversationsDO::getConversationId, conversationId)
+                .last("LIMIT 1 FOR UPDATE")
+                .one();
+    }
+
+    /**
+     * 按对话ID游标分页查询未删除的对话ID
+     * 由(deleted, conversation_id)联合索引支撑，只扫描索引且不需要回表
+     *
+     * @param afterConversationId 上一页最后一个对话ID，为null时从头开始
+     * @param limit               每页数量
+     * @return 按对话ID升序排列的对话ID列表
+     */
+    public List<String> getConversationIdsAfter(String afterConversationId, int limit) {
+        return lambdaQuery().select(ChatConversationsDO::getConversationId)
+                .eq(ChatConversationsDO::getDeleted, 0)
+                .gt(afterConversationId != null, ChatConversationsDO::getConversationId, afterConversationId)
+                .orderByAsc(ChatConversationsDO::getConversationId)
+                .last("LIMIT " + limit)
+                .list()
+                .stream()
+                .map(ChatConversationsDO::getConversationId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 按主键游标查询空闲时间超过阈值且仍有热数据的对话
+     *
+     * @param afterId 上一批最后一个对话的主键
+     * @param before  最后活跃时间早于该时间的对话才会返回
+     * @param limit   每批数量
+     * @return 对话列表（只包含id和conversationId）
+     */
+    public List<ChatConversationsDO> getIdleConversations(long afterId, LocalDateTime before, int limit) {
+        return this.baseMapper.selectIdleConversations(afterId, before, limit);
+    }
+
+    /**
+     * 获取对话的消息序号水位线，对话状态不存在时先初始化
+     *
+     * @param conversationId 对话ID
+     * @return 已持久化消息的最大序号
+     */
+    public long getOrCreateLastSeq(String conversationId) {
+        ChatConversationsDO conversation = getByConversationId(conversationId);
+        if (conversation == null) {
+            this.baseMapper.insertIgnore(conversationId);
+            conversation = getByConversationId(conversationId);
+        }
+        return conversation != null && conversation.getLastSeq() != null ? conversation.getLastSeq() : 0L;
+    }
+
+    /**
+     * 创建分支对话的状态行
+     * 分支对话的消息水位线和摘要水位线都从分支点开始，自身消息的序号接在继承的消息之后
+     *
+     * @param conversationId       分支对话ID
+     * @param parentConversationId 父对话ID
+     * @param forkSeq              分支点序号
+     * @param operator             操作人
+     */
+    public void createFork(String conversationId, String parentConversationId, long forkSeq, String operator) {
+        LocalDateTime now = LocalDateTime.now();
+        ChatConversationsDO conversation = new ChatConversationsDO();
+        conversation.setConversationId(conversationId);
+        conversation.setParentConversationId(parentConversationId);
+        conversation.setForkSeq(forkSeq);
+        conversation.setLastSeq(forkSeq);
+        conversation.setSummarizedSeq(forkSeq);
+        conversation.setDeleted(0);
+        conversation.setGmtCreate(now);
+        conversation.setGmtModified(now);
+        conversation.setCreator(operator);
+        conversation.setModifier(operator);
+        save(conversation);
+    }
+
+    /**
+     * 推进对话的消息序号水位线（乐观更新）
+     * 只有水位线仍为expected时才更新，多节点并发写同一对话时只有一方成功；
+     * 已删除的对话重新写入消息时恢复为正常状态
+     *
+     * @param conversationId 对话ID
+     * @param expected       保存开始时读到的水位线
+     * @param lastSeq        新的水位线
+     * @return 是否更新成功
+     */
+    public boolean compareAndSetLastSeq(String conversationId, long expected, long lastSeq) {
+        return lambdaUpdate().eq(ChatConversationsDO::getConversationId, conversationId)
+                .eq(ChatConversationsDO::getLastSeq, expected)
+                .set(ChatConversationsDO::getLastSeq, lastSeq)
+                .set(ChatConversationsDO::getDeleted, 0)
+                .set(ChatConversationsDO::getGmtModified, LocalDateTime.now())
+                .update();
+    }
+
+    /**
+     * 更新对话的最后活跃时间
+     *
+     * @param conversationId 对话ID
+     */
+    public void touch(String conversationId) {
+        lambdaUpdate().eq(ChatConversationsDO::getConversationId, conversationId)
+                .set(ChatConversationsDO::getGmtModified, LocalDateTime.now())
+                .update();
+    }
+
+    /**
+     * 把对话的消息水位线推进到不小于lastSeq（批量导入消息后调用）
+     *
+     * @param conversationId 对话ID
+     * @param lastSeq        导入消息的最大序号
+     */
+    public void advanceLastSeq(String conversationId, long lastSeq) {
+        lambdaUpdate().eq(ChatConversationsDO::getConversationId, conversationId)
+                .setSql("last_seq = GREATEST(last_seq, " + lastSeq + ")")
+                .set(ChatConversationsDO::getGmtModified, LocalDateTime.now())
+                .update();
+    }
+
+    /**
+     * 推进对话的摘要水位线（乐观更新）
+     * 只有摘要水位线仍为expected时才更新，避免并发压缩重复合并同一批消息
+     *
+     * @param conversationId 对话ID
+     * @param expected       压缩开始时读到的摘要水位线
+     * @param summarizedSeq  新的摘要水位线
+     * @return 是否更新成功
+     */
+    public boolean compareAndSetSummarizedSeq(String conversationId, long expected, long summarizedSeq) {
+        return lambdaUpdate().eq(ChatConversationsDO::getConversationId, conversationId)
+                .eq(ChatConversationsDO::getSummarizedSeq, expected)
+                .set(ChatConversationsDO::getSummarizedSeq, summarizedSeq)
+                .set(ChatConversationsDO::getGmtModified, LocalDateTime.now())
+                .update();
+    }
+
+    /**
+     * 标记对话已删除，并把摘要水位线推进到消息水位线
+     * 清空对话时调用，清空前的消息不再参与摘要，对话也不再出现在对话ID枚举中
+     *
+     * @param conversationId 对话ID
+     */
+    public void markDeleted(String conversationId) {
+        lambdaUpdate().eq(ChatConversationsDO::getConversationId, conversationId)
+                .setSql("summarized_seq = last_seq")
+                .set(ChatConversationsDO::getDeleted, 1)
+                .set(ChatConversationsDO::getGmtModified, LocalDateTime.now())
+                .update();
+    }
+}
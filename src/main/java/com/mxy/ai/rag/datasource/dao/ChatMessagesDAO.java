@@ -2,45 +2,144 @@ package com.mxy.ai.rag.datasource.dao;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.mxy.ai.rag.datasource.codec.ChatContentCodec;
 import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
 import com.mxy.ai.rag.datasource.entity.ChatSessionsDO;
 import com.mxy.ai.rag.datasource.mapper.ChatMessagesMapper;
 import com.mxy.ai.rag.dto.ChatFeedbackDTO;
 import com.mxy.ai.rag.dto.ChatMessagePageRequestDTO;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 聊天消息表DAO类
  * 提供聊天消息数据的业务层操作
+ * 消息内容在写入前按配置压缩、读取后解压，上层始终只看到明文content
  */
 @Repository
 public class ChatMessagesDAO extends ServiceImpl<ChatMessagesMapper, ChatMessagesDO> {
 
     /**
-     * 根据会话ID获取聊天消息列表
+     * 滚动摘要消息的创建人标识，摘要以SYSTEM消息存储，不在聊天历史中展示
+     */
+    public static final String SUMMARY_CREATOR = "memory-compaction";
+
+    /**
+     * 窗口中最多加载的基础系统消息数（不含滚动摘要）
+     */
+    private static final int MAX_BASELINE_SYSTEM_MESSAGES = 1;
+
+    /**
+     * 是否压缩存储较长的消息内容
+     */
+    @Value("${mxy.chat.compression.enabled:false}")
+    private boolean compressionEnabled;
+
+    /**
+     * 内容达到该字节数才压缩
+     */
+    @Value("${mxy.chat.compression.min-bytes:1024}")
+    private int compressionMinBytes;
+
+    @Override
+    public boolean save(ChatMessagesDO entity) {
+        encode(entity);
+        return super.save(entity);
+    }
+
+    @Override
+    public boolean saveBatch(Collection<ChatMessagesDO> entityList, int batchSize) {
+        entityList.forEach(this::encode);
+        return super.saveBatch(entityList, batchSize);
+    }
+
+    @Override
+    public ChatMessagesDO getById(Serializable id) {
+        return decode(super.getById(id));
+    }
+
+    /**
+     * 获取对话最近的消息窗口
+     * 系统消息不参与窗口裁剪，始终排在窗口最前面，但只加载最早的基础系统消息和当前的滚动摘要各一条，
+     * 避免系统消息不断累积时每次加载都读出全部系统消息；
+     * 其余消息按主键倒序取最新的N条后再恢复为时间升序。三部分合并为一次UNION ALL查询，只查询记忆加载需要的列，
+     * 各部分均由(conversation_id, deleted, id)联合索引支撑，避免过滤后再排序
      *
-     * @param conversationId 会话ID
-     * @param maxMessages    最大消息数
-     * @return 聊天消息列表
+     * @param conversationId 对话ID
+     * @param windowSize     窗口大小
+     * @return 系统消息在前、其余消息按时间升序排列的消息窗口
      */
-    public List<ChatMessagesDO> getMessagesByConversationId(String conversationId, Integer maxMessages) {
-        return lambdaQuery().eq(ChatMessagesDO::getConversationId, conversationId)
-                .eq(ChatMessagesDO::getDeleted, 0)
-                .orderByAsc(ChatMessagesDO::getId)
-                .last("LIMIT " + maxMessages)
-                .list();
+    public List<ChatMessagesDO> getMessageWindowByConversationId(String conversationId, int windowSize) {
+        return decodeAll(this.baseMapper.selectMessageWindow(conversationId, windowSize,
+                MAX_BASELINE_SYSTEM_MESSAGES, SUMMARY_CREATOR));
     }
 
     /**
-     * 获取会话ID列表
+     * 获取分支对话从父对话继承的最近消息
+     * 父对话之后的窗口裁剪和清空都不影响分支，因此不区分软删除状态；由(conversation_id, message_seq)索引支撑
      *
-     * @return 会话ID列表
+     * @param conversationId 父对话ID
+     * @param maxSeq         分支点序号（包含）
+     * @param limit          最多返回的消息数
+     * @return 按序号升序排列的非系统消息
      */
-    public List<String> findConversationIds() {
-        return  this.baseMapper.findConversationIds();
+    public List<ChatMessagesDO> getInheritedMessages(String conversationId, long maxSeq, int limit) {
+        List<ChatMessagesDO> messages = new ArrayList<>(lambdaQuery()
+                .select(ChatMessagesDO::getMessageSeq, ChatMessagesDO::getMessageType, ChatMessagesDO::getContent,
+                        ChatMessagesDO::getContentFormat, ChatMessagesDO::getContentBlob, ChatMessagesDO::getTokenCount)
+                .eq(ChatMessagesDO::getConversationId, conversationId)
+                .le(ChatMessagesDO::getMessageSeq, maxSeq)
+                .ne(ChatMessagesDO::getMessageType, "SYSTEM")
+                .orderByDesc(ChatMessagesDO::getMessageSeq)
+                .last("LIMIT " + limit)
+                .list());
+        Collections.reverse(messages);
+        return decodeAll(messages);
+    }
+
+    /**
+     * 获取已被窗口淘汰、尚未合并进摘要的消息
+     *
+     * @param conversationId 对话ID
+     * @param summarizedSeq  摘要水位线
+     * @param limit          最多返回的消息数
+     * @return 按序号升序排列的被淘汰消息
+     */
+    public List<ChatMessagesDO> getEvictedMessages(String conversationId, long summarizedSeq, int limit) {
+        return decodeAll(lambdaQuery()
+                .select(ChatMessagesDO::getSessionId, ChatMessagesDO::getMessageSeq, ChatMessagesDO::getMessageType,
+                        ChatMessagesDO::getContent, ChatMessagesDO::getContentFormat, ChatMessagesDO::getContentBlob)
+                .eq(ChatMessagesDO::getConversationId, conversationId)
+                .eq(ChatMessagesDO::getDeleted, 1)
+                .ne(ChatMessagesDO::getMessageType, "SYSTEM")
+                .gt(ChatMessagesDO::getMessageSeq, summarizedSeq)
+                .orderByAsc(ChatMessagesDO::getMessageSeq)
+                .last("LIMIT " + limit)
+                .list());
+    }
+
+    /**
+     * 获取对话当前的滚动摘要消息
+     *
+     * @param conversationId 对话ID
+     * @return 摘要消息，不存在时返回null
+     */
+    public ChatMessagesDO getSummaryMessage(String conversationId) {
+        return decode(lambdaQuery().eq(ChatMessagesDO::getConversationId, conversationId)
+                .eq(ChatMessagesDO::getDeleted, 0)
+                .eq(ChatMessagesDO::getMessageType, "SYSTEM")
+                .eq(ChatMessagesDO::getCreator, SUMMARY_CREATOR)
+                .orderByDesc(ChatMessagesDO::getId)
+                .last("LIMIT 1")
+                .one());
     }
 
     public void deleteMessagesByConversationId(String conversationId) {
@@ -67,21 +166,130 @@ public class ChatMessagesDAO extends ServiceImpl<ChatMessagesMapper, ChatMessage
     }
 
     /**
-     * 更新消息
+     * 流式读取对话的有效消息（不含滚动摘要），逐条解码后交给consumer处理
+     *
+     * @param conversationId 对话ID
+     * @param consumer       逐条处理器
+     */
+    public void streamMessagesByConversationId(String conversationId, Consumer<ChatMessagesDO> consumer) {
+        this.baseMapper.streamMessagesByConversationId(conversationId,
+                context -> consumer.accept(decode(context.getResultObject())));
+    }
+
+    /**
+     * 多行批量插入消息
+     * 与saveBatch逐行执行INSERT不同，这里每批只生成一条多行INSERT语句
+     *
+     * @param messages  消息列表
+     * @param batchSize 每条INSERT语句最多包含的行数
+     */
+    public void insertBatch(List<ChatMessagesDO> messages, int batchSize) {
+        messages.forEach(this::encode);
+        for (int i = 0; i < messages.size(); i += batchSize) {
+            this.baseMapper.insertBatch(messages.subList(i, Math.min(i + batchSize, messages.size())));
+        }
+    }
+
+    /**
+     * 裁剪消息窗口（软删除）
+     * 一次范围更新删除序号小于窗口起点的非系统消息，系统消息始终保留
      *
-     * @param sessionId      会话ID
-     * @param conversationId 对话id
-     * @param currentUserId  当前用户ID
+     * @param conversationId 对话ID
+     * @param windowStartSeq 当前窗口中最早一条非系统消息的序号
      */
-    public void updateMessage(Long sessionId, String conversationId, String currentUserId) {
+    public void trimWindow(String conversationId, long windowStartSeq) {
         lambdaUpdate().eq(ChatMessagesDO::getConversationId, conversationId)
                 .eq(ChatMessagesDO::getDeleted, 0)
-                .set(ChatMessagesDO::getSessionId, sessionId)
+                .ne(ChatMessagesDO::getMessageType, "SYSTEM")
+                .lt(ChatMessagesDO::getMessageSeq, windowStartSeq)
+                .set(ChatMessagesDO::getDeleted, 1)
                 .set(ChatMessagesDO::getGmtModified, LocalDateTime.now())
-                .set(ChatMessagesDO::getModifier, currentUserId)
                 .update();
     }
 
+    /**
+     * 获取对话的全部消息（包括软删除的消息），用于迁移到冷存储
+     *
+     * @param conversationId 对话ID
+     * @return 按主键升序排列的消息列表
+     */
+    public List<ChatMessagesDO> listAllByConversationId(String conversationId) {
+        return decodeAll(lambdaQuery().eq(ChatMessagesDO::getConversationId, conversationId)
+                .orderByAsc(ChatMessagesDO::getId)
+                .list());
+    }
+
+    /**
+     * 物理删除已迁移到冷存储的消息
+     * 只删除不超过maxId的消息，迁移过程中新写入的消息保留在热表中
+     *
+     * @param conversationId 对话ID
+     * @param maxId          已迁移消息的最大主键
+     * @return 是否删除了消息
+     */
+    public boolean removeColdMessages(String conversationId, long maxId) {
+        return lambdaUpdate().eq(ChatMessagesDO::getConversationId, conversationId)
+                .le(ChatMessagesDO::getId, maxId)
+                .remove();
+    }
+
+    /**
+     * 按原主键批量插入消息（冷数据回迁）
+     *
+     * @param messages  消息列表
+     * @param batchSize 每条INSERT语句最多包含的行数
+     */
+    public void insertBatchWithId(List<ChatMessagesDO> messages, int batchSize) {
+        messages.forEach(this::encode);
+        for (int i = 0; i < messages.size(); i += batchSize) {
+            this.baseMapper.insertBatchWithId(messages.subList(i, Math.min(i + batchSize, messages.size())));
+        }
+    }
+
+    /**
+     * 获取消息表最小主键
+     *
+     * @return 最小主键，表为空时返回null
+     */
+    public Long getMinId() {
+        return this.baseMapper.selectMinId();
+    }
+
+    /**
+     * 获取消息表最大主键
+     *
+     * @return 最大主键，表为空时返回null
+     */
+    public Long getMaxId() {
+        return this.baseMapper.selectMaxId();
+    }
+
+    /**
+     * 归档主键区间内超过保留期的软删除消息
+     *
+     * @param fromId 起始主键（包含）
+     * @param toId   结束主键（不包含）
+     * @param before 软删除时间早于该时间的消息才归档
+     * @param requireSummarized 是否只处理序号不超过对话摘要水位线的消息，开启滚动摘要时传true，避免未摘要的淘汰消息被清理
+     * @return 归档行数
+     */
+    public int archiveDeletedRange(long fromId, long toId, LocalDateTime before, boolean requireSummarized) {
+        return this.baseMapper.archiveDeletedRange(fromId, toId, before, requireSummarized);
+    }
+
+    /**
+     * 物理删除主键区间内超过保留期的软删除消息
+     *
+     * @param fromId 起始主键（包含）
+     * @param toId   结束主键（不包含）
+     * @param before 软删除时间早于该时间的消息才删除
+     * @param requireSummarized 是否只处理序号不超过对话摘要水位线的消息，开启滚动摘要时传true，避免未摘要的淘汰消息被清理
+     * @return 删除行数
+     */
+    public int purgeDeletedRange(long fromId, long toId, LocalDateTime before, boolean requireSummarized) {
+        return this.baseMapper.purgeDeletedRange(fromId, toId, before, requireSummarized);
+    }
+
     /**
      * 获取聊天历史
      *
@@ -89,10 +297,13 @@ public class ChatMessagesDAO extends ServiceImpl<ChatMessagesMapper, ChatMessage
      * @return 聊天历史列表
      */
     public Page<ChatMessagesDO> getChatHistory(ChatMessagePageRequestDTO chatMessagePageRequestDTO) {
-        return lambdaQuery().eq(ChatMessagesDO::getSessionId, chatMessagePageRequestDTO.getSessionId())
+        Page<ChatMessagesDO> page = lambdaQuery().eq(ChatMessagesDO::getSessionId, chatMessagePageRequestDTO.getSessionId())
                 .eq(ChatMessagesDO::getDeleted, 0)
+                .ne(ChatMessagesDO::getCreator, SUMMARY_CREATOR)
                 .orderByDesc(ChatMessagesDO::getId)
                 .page(new Page<>(chatMessagePageRequestDTO.getPageNum(), chatMessagePageRequestDTO.getPageSize()));
+        decodeAll(page.getRecords());
+        return page;
     }
 
     /**
@@ -114,10 +325,65 @@ public class ChatMessagesDAO extends ServiceImpl<ChatMessagesMapper, ChatMessage
      * @return 最近的消息列表
      */
     public List<ChatMessagesDO> getRecentMessagesBySessionId(Long sessionId, int limit) {
-        return lambdaQuery().eq(ChatMessagesDO::getSessionId, sessionId)
+        return decodeAll(lambdaQuery().eq(ChatMessagesDO::getSessionId, sessionId)
                 .eq(ChatMessagesDO::getDeleted, 0)
+                .ne(ChatMessagesDO::getCreator, SUMMARY_CREATOR)
                 .orderByDesc(ChatMessagesDO::getId)
                 .last("LIMIT " + limit)
+                .list());
+    }
+
+    /**
+     * 压缩主键区间内仍为明文的较长消息（存量数据迁移）
+     * 显式保留gmt_modified，避免改写软删除时间影响清理任务的保留期判断
+     *
+     * @param fromId 起始主键（包含）
+     * @param toId   结束主键（不包含）
+     * @return 压缩的消息数
+     */
+    public int compressRange(long fromId, long toId) {
+        List<ChatMessagesDO> candidates = lambdaQuery()
+                .select(ChatMessagesDO::getId, ChatMessagesDO::getContent, ChatMessagesDO::getContentFormat)
+                .ge(ChatMessagesDO::getId, fromId)
+                .lt(ChatMessagesDO::getId, toId)
+                .eq(ChatMessagesDO::getContentFormat, ChatContentCodec.FORMAT_PLAIN)
                 .list();
+
+        int compressed = 0;
+        for (ChatMessagesDO candidate : candidates) {
+            ChatContentCodec.encode(candidate, compressionMinBytes);
+            if (candidate.getContentFormat() != ChatContentCodec.FORMAT_DEFLATE) {
+                continue;
+            }
+            boolean updated = lambdaUpdate().eq(ChatMessagesDO::getId, candidate.getId())
+                    .eq(ChatMessagesDO::getContentFormat, ChatContentCodec.FORMAT_PLAIN)
+                    .set(ChatMessagesDO::getContent, candidate.getContent())
+                    .set(ChatMessagesDO::getContentBlob, candidate.getContentBlob())
+                    .set(ChatMessagesDO::getContentFormat, ChatContentCodec.FORMAT_DEFLATE)
+                    .setSql("gmt_modified = gmt_modified")
+                    .update();
+            if (updated) {
+                compressed++;
+            }
+        }
+        return compressed;
+    }
+
+    private void encode(ChatMessagesDO messageDO) {
+        if (compressionEnabled) {
+            ChatContentCodec.encode(messageDO, compressionMinBytes);
+        } else if (messageDO != null && messageDO.getContentFormat() == null) {
+            messageDO.setContentFormat(ChatContentCodec.FORMAT_PLAIN);
+        }
+    }
+
+    private static ChatMessagesDO decode(ChatMessagesDO messageDO) {
+        ChatContentCodec.decode(messageDO);
+        return messageDO;
+    }
+
+    private static List<ChatMessagesDO> decodeAll(List<ChatMessagesDO> messages) {
+        messages.forEach(ChatContentCodec::decode);
+        return messages;
     }
 }
\ No newline at end of file
@@ -9,6 +9,8 @@ import com.mxy.ai.rag.dto.SessionQueryDTO;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
 
+import java.util.List;
+
 /**
  * 聊天会话表DAO类
  * 提供聊天会话数据的业务层操作
@@ -31,4 +33,19 @@ public class ChatSessionsDAO extends ServiceImpl<ChatSessionsMapper, ChatSession
         
         return page(page, queryWrapper);
     }
+
+    /**
+     * 获取用户的全部有效会话（按主键升序，分支会话总在父会话之后）
+     *
+     * @param userId 用户ID
+     * @return 会话列表
+     */
+    public List<ChatSessionsDO> listSessionsByCreator(String userId) {
+        return lambdaQuery().select(ChatSessionsDO::getId, ChatSessionsDO::getTitle, ChatSessionsDO::getDescription,
+                        ChatSessionsDO::getParentSessionId, ChatSessionsDO::getGmtCreate)
+                .eq(ChatSessionsDO::getCreator, userId)
+                .eq(ChatSessionsDO::getDeleted, 0)
+                .orderByAsc(ChatSessionsDO::getId)
+                .list();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.mxy.ai.rag.datasource.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 冷对话段索引表实体类
+ * 记录已迁移到压缩段文件的对话消息所在的文件和偏移量
+ */
+@TableName(value = "chat_cold_segments")
+@Data
+public class ChatColdSegmentsDO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键（自增）
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * Spring AI 对话ID
+     */
+    private String conversationId;
+
+    /**
+     * 段文件名
+     */
+    private String segmentFile;
+
+    /**
+     * 记录在段文件中的起始偏移量
+     */
+    private Long segmentOffset;
+
+    /**
+     * 记录的字节长度（压缩后）
+     */
+    private Integer segmentLength;
+
+    /**
+     * 记录中的消息条数
+     */
+    private Integer messageCount;
+
+    /**
+     * 记录中消息的最大主键，迁移时只删除不超过该主键的消息
+     */
+    private Long maxMessageId;
+
+    /**
+     * 0冷数据有效，1已回迁
+     */
+    private Integer deleted;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime gmtCreate;
+
+    /**
+     * 修改时间
+     */
+    private LocalDateTime gmtModified;
+
+    /**
+     * 创建人
+     */
+    private String creator;
+
+    /**
+     * 修改人
+     */
+    private String modifier;
+}
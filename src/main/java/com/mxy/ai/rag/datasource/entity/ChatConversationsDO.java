@@ -0,0 +1,75 @@
+package com.mxy.ai.rag.datasource.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 对话状态表实体类
+ * 与chat_messages配套的小表，每个对话一行，记录消息序号水位线等对话级状态
+ */
+@TableName(value = "chat_conversations")
+@Data
+public class ChatConversationsDO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键（自增）
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * Spring AI 对话ID（唯一）
+     */
+    private String conversationId;
+
+    /**
+     * 父对话ID（分支对话才有）
+     */
+    private String parentConversationId;
+
+    /**
+     * 分支点序号，分支对话继承父对话链上序号不超过该值的消息，自身消息从该值之后编号
+     */
+    private Long forkSeq;
+
+    /**
+     * 已持久化消息的最大序号（水位线）
+     */
+    private Long lastSeq;
+
+    /**
+     * 已合并进滚动摘要的被淘汰消息的最大序号
+     */
+    private Long summarizedSeq;
+
+    /**
+     * 0正常，1删除
+     */
+    private Integer deleted;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime gmtCreate;
+
+    /**
+     * 修改时间
+     */
+    private LocalDateTime gmtModified;
+
+    /**
+     * 创建人
+     */
+    private String creator;
+
+    /**
+     * 修改人
+     */
+    private String modifier;
+}
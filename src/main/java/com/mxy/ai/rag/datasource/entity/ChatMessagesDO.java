@@ -34,6 +34,11 @@ public class ChatMessagesDO implements Serializable {
      */
     private String conversationId;
 
+    /**
+     * 对话内消息序号（按写入顺序单调递增，配合chat_conversations.last_seq水位线使用）
+     */
+    private Long messageSeq;
+
     /**
      * Spring AI 消息类型
      * USER: 用户输入消息
@@ -48,6 +53,21 @@ public class ChatMessagesDO implements Serializable {
      */
     private String content;
 
+    /**
+     * 内容存储格式（0:明文存储在content；1:Deflate压缩后存储在contentBlob）
+     */
+    private Integer contentFormat;
+
+    /**
+     * 压缩后的消息内容
+     */
+    private byte[] contentBlob;
+
+    /**
+     * 消息内容的token数（写入时计算一次，用于按token预算选取记忆窗口）
+     */
+    private Integer tokenCount;
+
     /**
      * 用户评分（1-5分，用户对AI回答的满意度评价）
      */
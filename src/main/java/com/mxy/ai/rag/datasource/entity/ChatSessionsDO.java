@@ -37,6 +37,12 @@ public class ChatSessionsDO implements Serializable {
      * 会话描述（可选的会话备注信息）
      */
     private String description;
+
+    /**
+     * 父会话ID（分支会话才有，记录从哪个会话分支而来）
+     */
+    private Long parentSessionId;
+
     /**
      * 0正常，1删除
      */
@@ -0,0 +1,13 @@
+package com.mxy.ai.rag.datasource.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.mxy.ai.rag.datasource.entity.ChatColdSegmentsDO;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 冷对话段索引表Mapper接口
+ * 提供冷对话段索引数据的基础CRUD操作
+ */
+@Mapper
+public interface ChatColdSegmentsMapper extends BaseMapper<ChatColdSegmentsDO> {
+}
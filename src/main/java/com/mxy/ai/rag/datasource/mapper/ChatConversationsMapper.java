@@ -0,0 +1,37 @@
+package com.mxy.ai.rag.datasource.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 对话状态表Mapper接口
+ * 提供对话状态数据的基础CRUD操作
+ */
+@Mapper
+public interface ChatConversationsMapper extends BaseMapper<ChatConversationsDO> {
+
+    /**
+     * 对话不存在时插入初始状态行（水位线为0），已存在时不做任何修改
+     *
+     * @param conversationId Spring AI对话ID
+     * @return 影响行数
+     */
+    int insertIgnore(String conversationId);
+
+    /**
+     * 按主键游标查询空闲时间超过阈值且仍有热数据的对话
+     *
+     * @param afterId 上一批最后一个对话的主键
+     * @param before  最后活跃时间早于该时间的对话才会返回
+     * @param limit   每批数量
+     * @return 对话列表（只包含id和conversationId）
+     */
+    List<ChatConversationsDO> selectIdleConversations(@Param("afterId") long afterId,
+                                                      @Param("before") LocalDateTime before,
+                                                      @Param("limit") int limit);
+}
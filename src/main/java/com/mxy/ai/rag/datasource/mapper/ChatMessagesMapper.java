@@ -3,7 +3,10 @@ package com.mxy.ai.rag.datasource.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -13,6 +16,80 @@ import java.util.List;
 @Mapper
 public interface ChatMessagesMapper extends BaseMapper<ChatMessagesDO> {
 
+    /**
+     * 流式读取对话的有效消息（不含滚动摘要），结果集逐行交给handler处理，不在内存中缓存整个结果
+     *
+     * @param conversationId 对话ID
+     * @param handler        逐行处理器
+     */
+    void streamMessagesByConversationId(@Param("conversationId") String conversationId,
+                                        ResultHandler<ChatMessagesDO> handler);
 
-    List<String> findConversationIds();
+    /**
+     * 一次查询加载对话的消息窗口：最早的基础系统消息、当前的滚动摘要和最新的非系统消息
+     *
+     * @param conversationId 对话ID
+     * @param windowSize     最多加载的非系统消息数
+     * @param baselineLimit  最多加载的基础系统消息数
+     * @param summaryCreator 滚动摘要消息的创建人标识
+     * @return 依次为基础系统消息、滚动摘要、非系统消息，每部分内按主键升序（只包含记忆加载需要的列）
+     */
+    List<ChatMessagesDO> selectMessageWindow(@Param("conversationId") String conversationId,
+                                             @Param("windowSize") int windowSize,
+                                             @Param("baselineLimit") int baselineLimit,
+                                             @Param("summaryCreator") String summaryCreator);
+
+    /**
+     * 多行批量插入消息
+     *
+     * @param messages 消息列表
+     * @return 插入行数
+     */
+    int insertBatch(List<ChatMessagesDO> messages);
+
+    /**
+     * 按原主键批量插入消息，主键已存在时忽略（冷数据回迁使用）
+     *
+     * @param messages 消息列表
+     * @return 插入行数
+     */
+    int insertBatchWithId(List<ChatMessagesDO> messages);
+
+    /**
+     * 查询最小主键
+     *
+     * @return 最小主键，表为空时返回null
+     */
+    Long selectMinId();
+
+    /**
+     * 查询最大主键
+     *
+     * @return 最大主键，表为空时返回null
+     */
+    Long selectMaxId();
+
+    /**
+     * 把主键区间内超过保留期的软删除消息复制到归档表
+     *
+     * @param fromId 起始主键（包含）
+     * @param toId   结束主键（不包含）
+     * @param before 软删除时间早于该时间的消息才归档
+     * @param requireSummarized 是否只处理序号不超过对话摘要水位线的消息
+     * @return 归档行数
+     */
+    int archiveDeletedRange(@Param("fromId") long fromId, @Param("toId") long toId, @Param("before") LocalDateTime before,
+                            @Param("requireSummarized") boolean requireSummarized);
+
+    /**
+     * 物理删除主键区间内超过保留期的软删除消息
+     *
+     * @param fromId 起始主键（包含）
+     * @param toId   结束主键（不包含）
+     * @param before 软删除时间早于该时间的消息才删除
+     * @param requireSummarized 是否只处理序号不超过对话摘要水位线的消息
+     * @return 删除行数
+     */
+    int purgeDeletedRange(@Param("fromId") long fromId, @Param("toId") long toId, @Param("before") LocalDateTime before,
+                          @Param("requireSummarized") boolean requireSummarized);
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.mxy.ai.rag.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 对话导出/导入记录
+ * NDJSON中的一行，type为session时描述一个会话，type为message时描述该会话的一条消息；
+ * 会话行总在其消息行之前，分支会话总在父会话之后
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatExportRecord {
+
+    public static final String TYPE_SESSION = "session";
+
+    public static final String TYPE_MESSAGE = "message";
+
+    /**
+     * 记录类型（session或message）
+     */
+    private String type;
+
+    /**
+     * 会话ID（导出时的原会话ID，导入时重新分配）
+     */
+    private Long sessionId;
+
+    /**
+     * 会话标题
+     */
+    private String title;
+
+    /**
+     * 会话描述
+     */
+    private String description;
+
+    /**
+     * 父会话ID（分支会话才有）
+     */
+    private Long parentSessionId;
+
+    /**
+     * 分支点序号（分支会话才有）
+     */
+    private Long forkSeq;
+
+    /**
+     * 对话内消息序号
+     */
+    private Long messageSeq;
+
+    /**
+     * 消息类型
+     */
+    private String messageType;
+
+    /**
+     * 消息内容
+     */
+    private String content;
+
+    /**
+     * 消息内容的token数
+     */
+    private Integer tokenCount;
+
+    /**
+     * 用户评分
+     */
+    private Integer rating;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime gmtCreate;
+}
@@ -0,0 +1,26 @@
+package com.mxy.ai.rag.dto;
+
+import lombok.Data;
+
+/**
+ * 分支会话数据传输对象
+ * 用于在service层传递分支会话的数据
+ */
+@Data
+public class ForkSessionDTO {
+
+    /**
+     * 父会话ID
+     */
+    private Long sessionId;
+
+    /**
+     * 分支点消息ID
+     */
+    private Long messageId;
+
+    /**
+     * 新会话标题（可选）
+     */
+    private String title;
+}
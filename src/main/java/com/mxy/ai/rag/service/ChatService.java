@@ -3,8 +3,12 @@ package com.mxy.ai.rag.service;
 import com.mxy.ai.rag.dto.ChatAskDTO;
 import com.mxy.ai.rag.dto.ChatFeedbackDTO;
 import com.mxy.ai.rag.dto.ChatMessagePageRequestDTO;
+import com.mxy.ai.rag.web.vo.ChatMemoryCacheStatsVO;
+import com.mxy.ai.rag.web.vo.ChatPurgeReportVO;
 import com.mxy.ai.rag.web.vo.ChatMessageVO;
+import com.mxy.ai.rag.web.vo.ChatStreamStatsVO;
 import com.mxy.ai.rag.web.vo.PageResult;
+import org.springframework.http.codec.ServerSentEvent;
 import reactor.core.publisher.Flux;
 
 /**
@@ -30,6 +34,23 @@ public interface ChatService {
      */
     Flux<String> askQuestionStream(ChatAskDTO dto);
 
+    /**
+     * 开始SSE流式问答
+     *
+     * @param dto 流式问答请求参数
+     * @return 回答流ID
+     */
+    String startAnswerStream(ChatAskDTO dto);
+
+    /**
+     * 订阅SSE流式问答，支持断线后按Last-Event-ID续传
+     *
+     * @param streamId    回答流ID
+     * @param lastEventId 客户端已收到的最后一个事件ID，首次连接传0
+     * @return SSE事件流
+     */
+    Flux<ServerSentEvent<Object>> subscribeAnswerStream(String streamId, long lastEventId);
+
     /**
      * 获取对话历史
      *
@@ -52,4 +73,25 @@ public interface ChatService {
      * @return 生成的标题
      */
     String generateSessionTitle(Long sessionId);
+
+    /**
+     * 获取聊天记忆缓存统计信息
+     *
+     * @return 缓存统计
+     */
+    ChatMemoryCacheStatsVO getMemoryCacheStats();
+
+    /**
+     * 获取流式回答统计信息
+     *
+     * @return 流式回答统计
+     */
+    ChatStreamStatsVO getStreamStats();
+
+    /**
+     * 获取最近一次软删除消息清理报告
+     *
+     * @return 清理报告，尚未运行过时返回null
+     */
+    ChatPurgeReportVO getLastPurgeReport();
 }
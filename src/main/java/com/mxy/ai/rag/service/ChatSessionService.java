@@ -2,6 +2,7 @@ package com.mxy.ai.rag.service;
 
 import com.mxy.ai.rag.dto.CreateSessionDTO;
 import com.mxy.ai.rag.dto.DeleteSessionDTO;
+import com.mxy.ai.rag.dto.ForkSessionDTO;
 import com.mxy.ai.rag.dto.SessionQueryDTO;
 import com.mxy.ai.rag.dto.UpdateSessionTitleDTO;
 import com.mxy.ai.rag.web.vo.PageResult;
@@ -53,4 +54,12 @@ public interface ChatSessionService {
      * @param dto 删除会话请求参数
      */
     void deleteSession(DeleteSessionDTO dto);
+
+    /**
+     * 从会话的某条消息处分支出新会话
+     *
+     * @param dto 分支会话请求参数
+     * @return 新会话ID
+     */
+    Long forkSession(ForkSessionDTO dto);
 }
@@ -0,0 +1,35 @@
+package com.mxy.ai.rag.service;
+
+import com.mxy.ai.rag.web.vo.ChatImportResultVO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 对话导出/导入服务接口
+ * 以NDJSON格式流式导出、导入当前用户的会话和消息
+ *
+ * @author Mxy
+ */
+public interface ChatTransferService {
+
+    /**
+     * 流式导出当前用户的全部会话和消息
+     *
+     * @param outputStream 输出流
+     * @throws IOException 写出失败
+     */
+    void exportConversations(OutputStream outputStream) throws IOException;
+
+    /**
+     * 流式导入会话和消息，导入的会话归属当前用户并重新分配会话ID
+     * 只导入用户和助手消息；每个会话在一个事务内导入，某个会话失败时回滚该会话并停止导入，
+     * 之前的会话保持已导入，失败会话的原ID和原因在结果中返回
+     *
+     * @param inputStream 输入流
+     * @return 导入结果
+     * @throws IOException 读取或解析失败
+     */
+    ChatImportResultVO importConversations(InputStream inputStream) throws IOException;
+}
@@ -1,10 +1,12 @@
 package com.mxy.ai.rag.service;
 
+import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.document.Document;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 知识库管理操作的服务接口。
@@ -51,7 +53,57 @@ public interface KnowledgeBaseService {
      * @param topK 检索的相关文档数量
      * @return 流式返回的LLM回答
      */
-    Flux<String> chatWithKnowledgeStream(String query, String conversationId, int topK);
+    default Flux<String> chatWithKnowledgeStream(String query, String conversationId, int topK) {
+        return chatWithKnowledgeStream(query, conversationId, topK, documents -> {
+        });
+    }
+
+    /**
+     * 流式LLM对话接口，检索完成后先把检索到的知识库文档回调给调用方，便于在回答之前展示引用来源。
+     *
+     * @param query           用户查询问题
+     * @param conversationId  对话ID
+     * @param topK            检索的相关文档数量
+     * @param sourcesListener 检索结果回调
+     * @return 流式返回的LLM回答
+     */
+    Flux<String> chatWithKnowledgeStream(String query, String conversationId, int topK,
+                                         Consumer<List<Document>> sourcesListener);
+
+    /**
+     * 检索知识库，检索完成后回调检索结果（阻塞调用）
+     *
+     * @param query           用户查询问题
+     * @param topK            检索的相关文档数量
+     * @param sourcesListener 检索结果回调
+     * @return 检索到的文档
+     */
+    List<Document> searchKnowledge(String query, int topK, Consumer<List<Document>> sourcesListener);
+
+    /**
+     * 召回长期记忆并与检索结果一起组装系统提示词（阻塞调用）
+     * 供不依赖线程上下文的调用方使用，用户ID需显式传入；
+     * 长期记忆按调用方已读取的最近窗口排除当前对话中仍在窗口内的轮次，不再重新读取窗口
+     *
+     * @param userId         用户ID
+     * @param conversationId 对话ID
+     * @param query          用户查询问题
+     * @param documents      检索到的文档
+     * @param window         当前对话的最近消息窗口
+     * @return 系统提示词
+     */
+    String buildSystemPrompt(String userId, String conversationId, String query, List<Document> documents,
+                             List<Message> window);
+
+    /**
+     * 基于已组装的系统提示词和对话历史流式生成回答，不读写聊天记忆
+     *
+     * @param systemPrompt 系统提示词
+     * @param history      对话历史
+     * @param query        用户查询问题
+     * @return 流式返回的LLM回答
+     */
+    Flux<String> streamAnswer(String systemPrompt, List<Message> history, String query);
 
     /**
      * 生成会话标题
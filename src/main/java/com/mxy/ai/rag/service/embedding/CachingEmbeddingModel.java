@@ -0,0 +1,101 @@
+package com.mxy.ai.rag.service.embedding;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 带查询向量缓存的嵌入模型
+ * 装饰EmbeddingModel，按文本缓存单条文本的向量：
+ * - 一次提问会先检索知识库再召回长期记忆，两个PgVectorStore都只接受查询文本、各自在内部调用embed(String)，
+ *   缓存后同一个问题只向嵌入模型请求一次
+ * - 同一文本并发请求时只有一个线程调用嵌入模型，其余线程等待并复用结果
+ * - 批量向量化（文档入库）不经过缓存，直接委托给下层模型
+ * 缓存条目写入后很快过期，只用于合并同一次提问内的重复请求
+ *
+ * @author Mxy
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingModel.class);
+
+    private final EmbeddingModel delegate;
+
+    private final Cache<String, float[]> embeddingCache;
+
+    /**
+     * 构造函数
+     *
+     * @param delegate         下层嵌入模型
+     * @param maximumSize      最多缓存的文本数
+     * @param expireAfterWrite 向量写入缓存后多久过期
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, long maximumSize, Duration expireAfterWrite) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        this.delegate = delegate;
+        this.embeddingCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        logger.info("初始化查询向量缓存: delegate={}, maximumSize={}, expireAfterWrite={}",
+                delegate.getClass().getSimpleName(), maximumSize, expireAfterWrite);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        Assert.notNull(text, "text cannot be null");
+        return embeddingCache.get(text, delegate::embed);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        return delegate.embed(texts);
+    }
+
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        return delegate.embed(documents, options, batchingStrategy);
+    }
+
+    @Override
+    public EmbeddingResponse embedForResponse(List<String> texts) {
+        return delegate.embedForResponse(texts);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * 获取缓存统计信息
+     *
+     * @return 缓存命中率等统计
+     */
+    public CacheStats stats() {
+        return embeddingCache.stats();
+    }
+}
@@ -2,6 +2,7 @@ package com.mxy.ai.rag.service.impl;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
 import com.mxy.ai.rag.datasource.dao.ChatSessionsDAO;
 import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
@@ -11,21 +12,43 @@ import com.mxy.ai.rag.dto.ChatFeedbackDTO;
 import com.mxy.ai.rag.dto.ChatMessagePageRequestDTO;
 import com.mxy.ai.rag.service.ChatService;
 import com.mxy.ai.rag.service.KnowledgeBaseService;
+import com.mxy.ai.rag.service.memory.CachingChatMemoryRepository;
+import com.mxy.ai.rag.service.memory.ChatColdTierService;
+import com.mxy.ai.rag.service.memory.ChatLongTermMemory;
+import com.mxy.ai.rag.service.memory.ChatMessagePurgeJob;
+import com.mxy.ai.rag.service.stream.ChatStreamBuffer;
+import com.mxy.ai.rag.service.stream.ChatStreamCancellation;
+import com.mxy.ai.rag.service.stream.ChatStreamEvent;
+import com.mxy.ai.rag.service.stream.ChatStreamRegistry;
+import com.mxy.ai.rag.service.stream.TokenFrameAggregator;
 import com.mxy.ai.rag.util.UserContextUtil;
+import com.mxy.ai.rag.web.vo.ChatMemoryCacheStatsVO;
+import com.mxy.ai.rag.web.vo.ChatPurgeReportVO;
 import com.mxy.ai.rag.web.vo.ChatMessageVO;
+import com.mxy.ai.rag.web.vo.ChatSourceVO;
+import com.mxy.ai.rag.web.vo.ChatStreamStatsVO;
 import com.mxy.ai.rag.web.vo.PageResult;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.document.Document;
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * 智能对话服务实现类
@@ -48,16 +71,47 @@ public class ChatServiceImpl implements ChatService {
     @Resource
     private KnowledgeBaseService knowledgeBaseService;
 
+    @Resource
+    private ChatMemoryRepository chatMemoryRepository;
+
+    @Resource
+    private ChatMemory chatMemory;
+
+    @Resource
+    private ChatLongTermMemory chatLongTermMemory;
+
+    @Resource
+    private ChatMessagePurgeJob chatMessagePurgeJob;
+
+    @Resource
+    private ChatColdTierService chatColdTierService;
+
+    @Resource
+    private ChatStreamRegistry chatStreamRegistry;
+
+    @Resource
+    private TokenFrameAggregator tokenFrameAggregator;
+
+    @Resource(name = "streamingTaskExecutor")
+    private AsyncTaskExecutor streamingTaskExecutor;
+
+    /**
+     * 是否启用非阻塞流式模式
+     */
+    @Value("${mxy.chat.stream.non-blocking:false}")
+    private boolean nonBlockingStreaming;
+
 
     /**
      * 智能问答（阻塞式）
      * 基于知识库进行问答，返回完整的回答结果
+     * 整个问答不在事务中执行，避免检索和大模型调用期间一直占用数据库连接：
+     * 记忆读取为独立的短查询，记忆写入在聊天记忆仓库自身的短事务中完成
      *
      * @param dto 问答请求数据传输对象
      * @return 问答结果
      */
     @Override
-    @Transactional
     public String askQuestion(ChatAskDTO dto) {
         Assert.notNull(dto.getSessionId(), "会话ID不能为空");
         Assert.hasText(dto.getQuestion(), "问题内容不能为空");
@@ -71,11 +125,12 @@ public class ChatServiceImpl implements ChatService {
         try {
             String conversationId = dto.getSessionId().toString();
             // 调用知识库服务获取回答
-            String answer = knowledgeBaseService.chatWithKnowledge(dto.getQuestion(), conversationId, dto.getTopK());
+            String answer = knowledgeBaseService.chatWithKnowledge(dto.getQuestion(), conversationId, dto.getTopK() != null ? dto.getTopK() : 0);
             long responseTime = System.currentTimeMillis() - startTime;
             logger.info("知识库对话完成，查询: '{}'，耗时: {}ms", dto.getQuestion(), responseTime);
 
-            chatMessagesDAO.updateMessage(dto.getSessionId(), conversationId, currentUserId);
+            // 异步存入长期记忆
+            chatLongTermMemory.remember(currentUserId, conversationId, dto.getQuestion(), answer);
 
             // 转换为VO返回
             return answer;
@@ -101,39 +156,135 @@ public class ChatServiceImpl implements ChatService {
         logger.info("开始处理流式智能问答: sessionId={}, userId={}, question={}",
                 dto.getSessionId(), currentUserId, dto.getQuestion());
 
-        // 验证会话是否存在且属于当前用户
-        long startTime = System.currentTimeMillis();
         try {
-            String conversationId = dto.getSessionId().toString();
+            return chatStreamRegistry.track(tokenFrameAggregator.aggregate(answerStream(dto, currentUserId, documents -> {
+            })));
+        } catch (Exception e) {
+            logger.error("流式智能问答处理失败: {}", e.getMessage(), e);
+            return Flux.just("智能问答处理失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 开始SSE流式问答
+     * 大模型回答只订阅一次并写入回答流的重放缓冲区，客户端通过subscribeAnswerStream读取
+     *
+     * @param dto 流式问答请求数据传输对象
+     * @return 回答流ID
+     */
+    @Override
+    public String startAnswerStream(ChatAskDTO dto) {
+        Assert.notNull(dto.getSessionId(), "会话ID不能为空");
+        Assert.hasText(dto.getQuestion(), "问题内容不能为空");
+        String currentUserId = UserContextUtil.getCurrentUserId();
+        logger.info("开始处理SSE流式智能问答: sessionId={}, userId={}, question={}",
+                dto.getSessionId(), currentUserId, dto.getQuestion());
 
-            // 调用知识库服务获取流式回答
-            Flux<String> answerStream = knowledgeBaseService.chatWithKnowledgeStream(dto.getQuestion(), conversationId, dto.getTopK());
+        ChatStreamBuffer buffer = chatStreamRegistry.create(currentUserId);
+        Flux<String> answer;
+        try {
+            answer = tokenFrameAggregator.aggregate(answerStream(dto, currentUserId,
+                    documents -> buffer.emit(ChatStreamEvent.SOURCES, toSourceVOs(documents))));
+        } catch (Exception e) {
+            answer = Flux.error(e);
+        }
+        chatStreamRegistry.start(buffer, answer);
+        return buffer.getStreamId();
+    }
 
-            // 在流完成时记录日志和更新消息
+    /**
+     * 订阅SSE流式问答
+     *
+     * @param streamId    回答流ID
+     * @param lastEventId 客户端已收到的最后一个事件ID，首次连接传0
+     * @return SSE事件流
+     */
+    @Override
+    public Flux<ServerSentEvent<Object>> subscribeAnswerStream(String streamId, long lastEventId) {
+        ChatStreamBuffer buffer = chatStreamRegistry.get(streamId, UserContextUtil.getCurrentUserId());
+        if (buffer == null) {
+            throw new RuntimeException("回答流不存在或已过期");
+        }
+        return chatStreamRegistry.track(chatStreamRegistry.toServerSentEvents(buffer, lastEventId));
+    }
+
+    /**
+     * 组装流式回答：在流完成时记录日志并存入长期记忆；
+     * 客户端断开等原因取消时，记录取消原因并把已生成的部分回答写入聊天记忆
+     *
+     * @param dto             流式问答请求数据传输对象
+     * @param currentUserId   当前用户ID
+     * @param sourcesListener 检索结果回调
+     * @return 流式回答内容
+     */
+    private Flux<String> answerStream(ChatAskDTO dto, String currentUserId, Consumer<List<Document>> sourcesListener) {
+        long startTime = System.currentTimeMillis();
+        String conversationId = dto.getSessionId().toString();
+
+        // 调用知识库服务获取流式回答
+        Flux<String> answerStream = knowledgeBaseService.chatWithKnowledgeStream(dto.getQuestion(), conversationId,
+                dto.getTopK() != null ? dto.getTopK() : 0, sourcesListener);
+
+        return Flux.deferContextual(context -> {
+            StringBuilder fullAnswer = new StringBuilder();
             return answerStream
+                    .doOnNext(fullAnswer::append)
                     .doOnComplete(() -> {
                         long responseTime = System.currentTimeMillis() - startTime;
                         logger.info("流式知识库对话完成，查询: '{}', 耗时: {}ms", dto.getQuestion(), responseTime);
 
-                        // 异步更新消息记录
-                        try {
-                            chatMessagesDAO.updateMessage(dto.getSessionId(), conversationId, currentUserId);
-                        } catch (Exception e) {
-                            logger.error("更新消息记录失败: {}", e.getMessage(), e);
-                        }
+                        // 异步存入长期记忆
+                        chatLongTermMemory.remember(currentUserId, conversationId, dto.getQuestion(), fullAnswer.toString());
                     })
+                    .doOnCancel(() -> recordPartialAnswer(conversationId, fullAnswer.toString(),
+                            ChatStreamCancellation.reasonOf(context), startTime))
                     .doOnError(error -> {
                         logger.error("流式智能问答处理失败: {}", error.getMessage(), error);
                     });
+        });
+    }
 
+    /**
+     * 记录被取消的流式回答
+     * 聊天记忆顾问只在回答完成时写入回答，取消时由这里把已生成的部分写入聊天记忆，保证下一轮对话上下文完整
+     *
+     * @param conversationId 对话ID
+     * @param partialAnswer  已生成的部分回答
+     * @param reason         取消原因
+     * @param startTime      开始时间
+     */
+    private void recordPartialAnswer(String conversationId, String partialAnswer, String reason, long startTime) {
+        logger.info("流式知识库对话已取消: conversationId={}, reason={}, partialLength={}, 耗时: {}ms",
+                conversationId, reason, partialAnswer.length(), System.currentTimeMillis() - startTime);
+        if (!StringUtils.hasText(partialAnswer)) {
+            return;
+        }
+        try {
+            chatMemory.add(conversationId, new AssistantMessage(partialAnswer));
         } catch (Exception e) {
-            logger.error("流式智能问答处理失败: {}", e.getMessage(), e);
-            return Flux.just("智能问答处理失败: " + e.getMessage());
+            logger.error("记录部分回答失败: conversationId={}", conversationId, e);
         }
     }
 
+    /**
+     * 转换检索到的知识库文档为来源响应对象
+     */
+    private static List<ChatSourceVO> toSourceVOs(List<Document> documents) {
+        return documents.stream().map(document -> {
+            ChatSourceVO source = new ChatSourceVO();
+            source.setId(document.getId());
+            source.setContent(document.getText());
+            source.setScore(document.getScore());
+            source.setMetadata(document.getMetadata());
+            return source;
+        }).toList();
+    }
+
     @Override
     public PageResult<ChatMessageVO> getChatHistory(ChatMessagePageRequestDTO chatMessagePageRequestDTO) {
+        // 已迁移到冷存储的会话先回迁到热表
+        chatColdTierService.rehydrateIfCold(chatMessagePageRequestDTO.getSessionId().toString());
+
         Page<ChatMessagesDO> page = chatMessagesDAO.getChatHistory(chatMessagePageRequestDTO);
         List<ChatMessagesDO> records = page.getRecords();
         List<ChatMessageVO> chatMessageVOS = records.stream().map(record -> {
@@ -211,4 +362,58 @@ public class ChatServiceImpl implements ChatService {
             return "新对话";
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取聊天记忆缓存统计信息
+     *
+     * @return 缓存统计，未启用缓存时只返回enabled=false
+     */
+    @Override
+    public ChatMemoryCacheStatsVO getMemoryCacheStats() {
+        ChatMemoryCacheStatsVO statsVO = new ChatMemoryCacheStatsVO();
+        if (!(chatMemoryRepository instanceof CachingChatMemoryRepository cachingRepository)) {
+            statsVO.setEnabled(false);
+            return statsVO;
+        }
+        CacheStats stats = cachingRepository.stats();
+        statsVO.setEnabled(true);
+        statsVO.setEstimatedSize(cachingRepository.estimatedSize());
+        statsVO.setHitCount(stats.hitCount());
+        statsVO.setMissCount(stats.missCount());
+        statsVO.setHitRate(stats.hitRate());
+        statsVO.setEvictionCount(stats.evictionCount());
+        return statsVO;
+    }
+
+    /**
+     * 获取流式回答统计信息
+     *
+     * @return 流式回答统计
+     */
+    @Override
+    public ChatStreamStatsVO getStreamStats() {
+        ChatStreamStatsVO statsVO = new ChatStreamStatsVO();
+        statsVO.setNonBlocking(nonBlockingStreaming);
+        statsVO.setOpenConnections(chatStreamRegistry.openConnections());
+        statsVO.setBufferedStreams(chatStreamRegistry.bufferedStreams());
+        // 虚拟线程模式下每个任务一个线程，没有线程池指标
+        statsVO.setVirtualThreads(!(streamingTaskExecutor instanceof ThreadPoolTaskExecutor));
+        if (streamingTaskExecutor instanceof ThreadPoolTaskExecutor pool) {
+            statsVO.setPoolSize(pool.getPoolSize());
+            statsVO.setActiveCount(pool.getActiveCount());
+            statsVO.setQueueSize(pool.getQueueSize());
+            statsVO.setCompletedTaskCount(pool.getThreadPoolExecutor().getCompletedTaskCount());
+        }
+        return statsVO;
+    }
+
+    /**
+     * 获取最近一次软删除消息清理报告
+     *
+     * @return 清理报告，尚未运行过时返回null
+     */
+    @Override
+    public ChatPurgeReportVO getLastPurgeReport() {
+        return chatMessagePurgeJob.getLastReport();
+    }
+}
@@ -2,22 +2,33 @@ package com.mxy.ai.rag.service.impl;
 
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.mxy.ai.rag.datasource.dao.ChatConversationsDAO;
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
 import com.mxy.ai.rag.datasource.dao.ChatSessionsDAO;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
 import com.mxy.ai.rag.datasource.entity.ChatSessionsDO;
 import com.mxy.ai.rag.dto.CreateSessionDTO;
 import com.mxy.ai.rag.dto.DeleteSessionDTO;
+import com.mxy.ai.rag.dto.ForkSessionDTO;
 import com.mxy.ai.rag.dto.SessionQueryDTO;
 import com.mxy.ai.rag.dto.UpdateSessionTitleDTO;
 import com.mxy.ai.rag.service.ChatSessionService;
+import com.mxy.ai.rag.service.memory.ChatLongTermMemory;
 import com.mxy.ai.rag.util.UserContextUtil;
 import com.mxy.ai.rag.web.vo.PageResult;
 import com.mxy.ai.rag.web.vo.SessionVO;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * 聊天会话管理服务实现类
@@ -27,9 +38,23 @@ import java.util.List;
 @Service
 @Slf4j
 public class ChatSessionServiceImpl implements ChatSessionService {
+    private static final int MAX_FORK_DEPTH = 32;
+
     @Resource
     private ChatSessionsDAO chatSessionsDAO;
 
+    @Resource
+    private ChatMessagesDAO chatMessagesDAO;
+
+    @Resource
+    private ChatConversationsDAO chatConversationsDAO;
+
+    @Resource
+    private ChatLongTermMemory chatLongTermMemory;
+
+    @Resource
+    private ChatMemoryRepository chatMemoryRepository;
+
 
     @Override
     public Long createSession(CreateSessionDTO dto) {
@@ -109,7 +134,103 @@ public class ChatSessionServiceImpl implements ChatSessionService {
                 .modifier(currentUserId)
                 .build();
         chatSessionsDAO.updateById(update);
+
+        // 软删除会话的消息并清除缓存窗口，超过保留期后由清理任务回收
+        String conversationId = dto.getSessionId().toString();
+        chatMemoryRepository.deleteByConversationId(conversationId);
+
+        // 已删除会话的历史对话不再被召回
+        chatLongTermMemory.forget(conversationId);
         
         log.info("会话删除成功: sessionId={}", dto.getSessionId());
     }
+
+    /**
+     * 从会话的某条消息处分支出新会话（写时复制）
+     * 不复制父会话的任何消息，只登记父对话和分支点序号，分支耗时和占用空间与父会话长度无关；
+     * 父会话的滚动摘要只在完全位于分支点之前时复制为新会话的摘要
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public Long forkSession(ForkSessionDTO dto) {
+        log.info("分支会话: sessionId={}, messageId={}", dto.getSessionId(), dto.getMessageId());
+
+        ChatSessionsDO parentSession = chatSessionsDAO.getById(dto.getSessionId());
+        if (parentSession == null || Objects.equals(parentSession.getDeleted(), 1)) {
+            log.error("会话不存在: {}", dto.getSessionId());
+            throw new RuntimeException("会话不存在");
+        }
+        String currentUserId = UserContextUtil.getCurrentUserId();
+        if (!currentUserId.equals(parentSession.getCreator())) {
+            log.error("无权限分支会话: sessionId={}, currentUserId={}, creator={}",
+                    dto.getSessionId(), currentUserId, parentSession.getCreator());
+            throw new RuntimeException("无权限分支该会话");
+        }
+
+        // 分支点消息可以是父会话自身的消息，也可以是父会话继承自更上层会话的消息
+        String parentConversationId = dto.getSessionId().toString();
+        ChatMessagesDO forkMessage = chatMessagesDAO.getById(dto.getMessageId());
+        if (forkMessage == null || forkMessage.getMessageSeq() == null
+                || !isInConversationChain(parentConversationId, forkMessage.getConversationId())) {
+            log.error("分支点消息不属于该会话: sessionId={}, messageId={}", dto.getSessionId(), dto.getMessageId());
+            throw new RuntimeException("分支点消息不属于该会话");
+        }
+        long forkSeq = forkMessage.getMessageSeq();
+
+        ChatSessionsDO session = ChatSessionsDO.builder()
+                .title(StringUtils.hasText(dto.getTitle()) ? dto.getTitle() : parentSession.getTitle())
+                .parentSessionId(parentSession.getId())
+                .creator(currentUserId)
+                .modifier(currentUserId)
+                .build();
+        chatSessionsDAO.save(session);
+        String conversationId = session.getId().toString();
+        chatConversationsDAO.createFork(conversationId, parentConversationId, forkSeq, currentUserId);
+        copySummaryBeforeFork(session.getId(), conversationId, parentConversationId, forkSeq, currentUserId);
+
+        log.info("会话分支成功: parentSessionId={}, sessionId={}, forkSeq={}", parentSession.getId(), session.getId(), forkSeq);
+        return session.getId();
+    }
+
+    /**
+     * 判断对话是否为指定对话本身或其祖先
+     */
+    private boolean isInConversationChain(String conversationId, String candidate) {
+        String current = conversationId;
+        for (int depth = 0; current != null && depth <= MAX_FORK_DEPTH; depth++) {
+            if (current.equals(candidate)) {
+                return true;
+            }
+            ChatConversationsDO conversation = chatConversationsDAO.getByConversationId(current);
+            current = conversation != null ? conversation.getParentConversationId() : null;
+        }
+        return false;
+    }
+
+    private void copySummaryBeforeFork(Long sessionId, String conversationId, String parentConversationId,
+                                       long forkSeq, String operator) {
+        ChatConversationsDO parentConversation = chatConversationsDAO.getByConversationId(parentConversationId);
+        if (parentConversation == null || parentConversation.getSummarizedSeq() == null
+                || parentConversation.getSummarizedSeq() > forkSeq) {
+            return;
+        }
+        ChatMessagesDO summary = chatMessagesDAO.getSummaryMessage(parentConversationId);
+        if (summary == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        ChatMessagesDO copy = new ChatMessagesDO();
+        copy.setSessionId(sessionId);
+        copy.setConversationId(conversationId);
+        copy.setMessageSeq(0L);
+        copy.setMessageType("SYSTEM");
+        copy.setContent(summary.getContent());
+        copy.setTokenCount(summary.getTokenCount());
+        copy.setDeleted(0);
+        copy.setGmtCreate(now);
+        copy.setGmtModified(now);
+        copy.setCreator(ChatMessagesDAO.SUMMARY_CREATOR);
+        copy.setModifier(operator);
+        chatMessagesDAO.save(copy);
+    }
 }
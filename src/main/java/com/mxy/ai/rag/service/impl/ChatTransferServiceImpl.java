@@ -0,0 +1,280 @@
+package com.mxy.ai.rag.service.impl;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mxy.ai.rag.datasource.dao.ChatConversationsDAO;
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import com.mxy.ai.rag.datasource.dao.ChatSessionsDAO;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import com.mxy.ai.rag.datasource.entity.ChatSessionsDO;
+import com.mxy.ai.rag.dto.ChatExportRecord;
+import com.mxy.ai.rag.service.ChatTransferService;
+import com.mxy.ai.rag.service.memory.ChatColdTierService;
+import com.mxy.ai.rag.util.UserContextUtil;
+import com.mxy.ai.rag.web.vo.ChatImportResultVO;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 对话导出/导入服务实现类
+ * 导出时会话逐个处理，已迁移到冷存储的会话先回迁到热表，每个会话的消息通过MyBatis流式结果集逐行写入输出流；
+ * 导入时逐行解析输入流，消息攒批后多行插入，每个会话在一个事务内导入，失败时回滚该会话并在结果中返回。
+ * 两个方向都只在内存中保留当前批次，与数据总量无关
+ *
+ * @author Mxy
+ */
+@Service
+public class ChatTransferServiceImpl implements ChatTransferService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatTransferServiceImpl.class);
+
+    private static final byte LINE_SEPARATOR = '\n';
+
+    private static final Set<String> IMPORTABLE_MESSAGE_TYPES = Set.of("USER", "ASSISTANT");
+
+    @Resource
+    private ChatSessionsDAO chatSessionsDAO;
+
+    @Resource
+    private ChatMessagesDAO chatMessagesDAO;
+
+    @Resource
+    private ChatConversationsDAO chatConversationsDAO;
+
+    @Resource
+    private ChatColdTierService chatColdTierService;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 导入时每条多行INSERT包含的消息数
+     */
+    @Value("${mxy.chat.transfer.import-batch-size:500}")
+    private int importBatchSize;
+
+    @Override
+    public void exportConversations(OutputStream outputStream) throws IOException {
+        String currentUserId = UserContextUtil.getCurrentUserId();
+        long startTime = System.currentTimeMillis();
+        long[] messageCount = {0};
+
+        List<ChatSessionsDO> sessions = chatSessionsDAO.listSessionsByCreator(currentUserId);
+        for (ChatSessionsDO session : sessions) {
+            writeRecord(outputStream, toSessionRecord(session));
+            // 已迁移到冷存储的会话先回迁到热表，否则导出的会话没有消息
+            chatColdTierService.rehydrateIfCold(session.getId().toString());
+            try {
+                chatMessagesDAO.streamMessagesByConversationId(session.getId().toString(), message -> {
+                    try {
+                        writeRecord(outputStream, toMessageRecord(session.getId(), message));
+                        messageCount[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            outputStream.flush();
+        }
+
+        logger.info("导出对话完成: userId={}, sessions={}, messages={}, elapsedMs={}",
+                currentUserId, sessions.size(), messageCount[0], System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    public ChatImportResultVO importConversations(InputStream inputStream) throws IOException {
+        String currentUserId = UserContextUtil.getCurrentUserId();
+        long startTime = System.currentTimeMillis();
+        ChatImportResultVO result = new ChatImportResultVO();
+        result.setSessions(0L);
+        result.setMessages(0L);
+        result.setSkipped(0L);
+
+        // 原会话ID -> 新会话ID
+        Map<Long, Long> sessionIdMapping = new HashMap<>();
+        // 当前批次中各对话的最大序号
+        Map<String, Long> batchLastSeq = new HashMap<>();
+        List<ChatMessagesDO> batch = new ArrayList<>(importBatchSize);
+        // 当前会话的事务及其中导入的消息数、跳过的记录数，会话提交后才计入结果
+        TransactionStatus transaction = null;
+        Long currentSessionId = null;
+        long sessionMessages = 0;
+        long sessionSkipped = 0;
+
+        try (MappingIterator<ChatExportRecord> records = objectMapper.readerFor(ChatExportRecord.class).readValues(inputStream)) {
+            while (records.hasNextValue()) {
+                ChatExportRecord record = records.nextValue();
+                if (ChatExportRecord.TYPE_SESSION.equals(record.getType()) && record.getSessionId() != null) {
+                    if (transaction != null) {
+                        flushBatch(batch, batchLastSeq);
+                        transactionManager.commit(transaction);
+                        addSession(result, sessionMessages, sessionSkipped);
+                    }
+                    currentSessionId = record.getSessionId();
+                    sessionMessages = 0;
+                    sessionSkipped = 0;
+                    transaction = transactionManager.getTransaction(TransactionDefinition.withDefaults());
+                    sessionIdMapping.put(record.getSessionId(), importSession(record, sessionIdMapping, currentUserId));
+                } else if (ChatExportRecord.TYPE_MESSAGE.equals(record.getType())
+                        && sessionIdMapping.containsKey(record.getSessionId()) && record.getMessageSeq() != null
+                        && isImportableType(record.getMessageType())) {
+                    ChatMessagesDO messageDO = toMessageDO(sessionIdMapping.get(record.getSessionId()), record, currentUserId);
+                    batch.add(messageDO);
+                    batchLastSeq.merge(messageDO.getConversationId(), messageDO.getMessageSeq(), Math::max);
+                    sessionMessages++;
+                    if (batch.size() >= importBatchSize) {
+                        flushBatch(batch, batchLastSeq);
+                    }
+                } else if (transaction != null) {
+                    sessionSkipped++;
+                } else {
+                    result.setSkipped(result.getSkipped() + 1);
+                }
+            }
+            if (transaction != null) {
+                flushBatch(batch, batchLastSeq);
+                transactionManager.commit(transaction);
+                transaction = null;
+                addSession(result, sessionMessages, sessionSkipped);
+            }
+        } catch (IOException | RuntimeException e) {
+            // 当前会话整体回滚，之前的会话已提交；返回失败会话的原ID，修正后可从该会话起重新导入
+            if (transaction != null && !transaction.isCompleted()) {
+                transactionManager.rollback(transaction);
+            }
+            result.setFailedSessionId(currentSessionId);
+            result.setFailureMessage(e.getMessage());
+            logger.error("导入对话失败，已回滚当前会话: userId={}, failedSessionId={}", currentUserId, currentSessionId, e);
+        }
+
+        result.setElapsedMs(System.currentTimeMillis() - startTime);
+        logger.info("导入对话完成: userId={}, sessions={}, messages={}, skipped={}, elapsedMs={}",
+                currentUserId, result.getSessions(), result.getMessages(), result.getSkipped(), result.getElapsedMs());
+        return result;
+    }
+
+    private static void addSession(ChatImportResultVO result, long messages, long skipped) {
+        result.setSessions(result.getSessions() + 1);
+        result.setMessages(result.getMessages() + messages);
+        result.setSkipped(result.getSkipped() + skipped);
+    }
+
+    /**
+     * 只导入用户和助手消息：系统消息不参与窗口裁剪、每轮都会加载，未知类型读取时会被丢弃
+     */
+    private static boolean isImportableType(String messageType) {
+        return messageType != null && IMPORTABLE_MESSAGE_TYPES.contains(messageType.toUpperCase());
+    }
+
+    /**
+     * 创建导入的会话及其对话状态，父会话已导入时恢复分支关系
+     */
+    private Long importSession(ChatExportRecord record, Map<Long, Long> sessionIdMapping, String currentUserId) {
+        Long parentSessionId = record.getParentSessionId() != null && record.getForkSeq() != null
+                ? sessionIdMapping.get(record.getParentSessionId()) : null;
+
+        ChatSessionsDO session = ChatSessionsDO.builder()
+                .title(StringUtils.hasText(record.getTitle()) ? record.getTitle() : "导入的会话")
+                .description(record.getDescription())
+                .parentSessionId(parentSessionId)
+                .creator(currentUserId)
+                .modifier(currentUserId)
+                .build();
+        chatSessionsDAO.save(session);
+
+        String conversationId = session.getId().toString();
+        if (parentSessionId != null) {
+            chatConversationsDAO.createFork(conversationId, parentSessionId.toString(), record.getForkSeq(), currentUserId);
+        } else {
+            chatConversationsDAO.getOrCreateLastSeq(conversationId);
+        }
+        return session.getId();
+    }
+
+    private void flushBatch(List<ChatMessagesDO> batch, Map<String, Long> batchLastSeq) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        chatMessagesDAO.insertBatch(batch, importBatchSize);
+        batchLastSeq.forEach(chatConversationsDAO::advanceLastSeq);
+        batch.clear();
+        batchLastSeq.clear();
+    }
+
+    private void writeRecord(OutputStream outputStream, ChatExportRecord record) throws IOException {
+        outputStream.write(objectMapper.writeValueAsBytes(record));
+        outputStream.write(LINE_SEPARATOR);
+    }
+
+    private ChatExportRecord toSessionRecord(ChatSessionsDO session) {
+        ChatExportRecord record = new ChatExportRecord();
+        record.setType(ChatExportRecord.TYPE_SESSION);
+        record.setSessionId(session.getId());
+        record.setTitle(session.getTitle());
+        record.setDescription(session.getDescription());
+        record.setGmtCreate(session.getGmtCreate());
+        if (session.getParentSessionId() != null) {
+            ChatConversationsDO conversation = chatConversationsDAO.getByConversationId(session.getId().toString());
+            if (conversation != null && conversation.getForkSeq() != null) {
+                record.setParentSessionId(session.getParentSessionId());
+                record.setForkSeq(conversation.getForkSeq());
+            }
+        }
+        return record;
+    }
+
+    private ChatExportRecord toMessageRecord(Long sessionId, ChatMessagesDO message) {
+        ChatExportRecord record = new ChatExportRecord();
+        record.setType(ChatExportRecord.TYPE_MESSAGE);
+        record.setSessionId(sessionId);
+        record.setMessageSeq(message.getMessageSeq());
+        record.setMessageType(message.getMessageType());
+        record.setContent(message.getContent());
+        record.setTokenCount(message.getTokenCount());
+        record.setRating(message.getRating());
+        record.setGmtCreate(message.getGmtCreate());
+        return record;
+    }
+
+    private ChatMessagesDO toMessageDO(Long sessionId, ChatExportRecord record, String currentUserId) {
+        LocalDateTime now = LocalDateTime.now();
+        ChatMessagesDO messageDO = new ChatMessagesDO();
+        messageDO.setSessionId(sessionId);
+        messageDO.setConversationId(sessionId.toString());
+        messageDO.setMessageSeq(record.getMessageSeq());
+        messageDO.setMessageType(record.getMessageType().toUpperCase());
+        messageDO.setContent(record.getContent() != null ? record.getContent() : "");
+        messageDO.setTokenCount(record.getTokenCount());
+        messageDO.setRating(record.getRating());
+        messageDO.setDeleted(0);
+        messageDO.setGmtCreate(record.getGmtCreate() != null ? record.getGmtCreate() : now);
+        messageDO.setGmtModified(now);
+        messageDO.setCreator(currentUserId);
+        messageDO.setModifier(currentUserId);
+        return messageDO;
+    }
+}
@@ -2,14 +2,18 @@ package com.mxy.ai.rag.service.impl;
 
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
 import com.mxy.ai.rag.service.KnowledgeBaseService;
+import com.mxy.ai.rag.service.memory.ChatLongTermMemory;
+import com.mxy.ai.rag.service.memory.WindowAwareChatMemory;
+import com.mxy.ai.rag.util.UserContextUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.markdown.MarkdownDocumentReader;
@@ -19,17 +23,25 @@ import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -54,13 +66,39 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
 
     private final VectorStore vectorStore;
     private final ChatClient chatClient;
+    private final ChatClient pipelineChatClient;
+    private final ChatMemory chatMemory;
+    private final ChatLongTermMemory chatLongTermMemory;
+    private final Executor ragPipelineExecutor;
+
+    /**
+     * 请求未指定检索数量时使用的默认topK
+     */
+    @Value("${mxy.chat.rag.default-top-k:5}")
+    private int defaultTopK = 5;
+
+    /**
+     * 单次检索允许的最大topK，避免请求参数把过多文档塞进提示词
+     */
+    @Value("${mxy.chat.rag.max-top-k:20}")
+    private int maxTopK = 20;
+
+    /**
+     * 是否启用流水线模式：知识库检索与聊天记忆加载并行执行，两者都完成后再组装提示词
+     */
+    @Value("${mxy.chat.rag.pipeline.enabled:false}")
+    private boolean pipelineEnabled;
+
     /**
      * 构造函数：初始化知识库服务
-     * 不再使用Spring AI的MessageChatMemoryAdvisor，改为手动管理聊天记忆
+     * 知识库检索只在对话方法中按请求的topK执行一次，不再注册QuestionAnswerAdvisor作为默认顾问，
+     * 避免每轮对话重复生成查询向量、重复检索并把知识库内容两次放入提示词
      * 
      * @param vectorStore 向量存储
      * @param chatModel 聊天模型
-     * @param messageWindowChatMemory 消息窗口聊天记忆
+     * @param chatMemory 聊天记忆（按配置为固定条数窗口或token预算窗口）
+     * @param chatLongTermMemory 聊天长期记忆
+     * @param ragPipelineExecutor RAG流水线执行器
      *                                  public KnowledgeBaseServiceImpl(VectorStore vectorStore, @Qualifier("openAiChatModel")ChatModel chatModel,
      *                                     MessageWindowChatMemory messageWindowChatMemory) {
      *         this.vectorStore = vectorStore;
@@ -72,12 +110,22 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
      *     }
      */
     public KnowledgeBaseServiceImpl(VectorStore vectorStore, @Qualifier("dashscopeChatModel")ChatModel chatModel,
-                                    MessageWindowChatMemory messageWindowChatMemory) {
+                                    ChatMemory chatMemory, ChatLongTermMemory chatLongTermMemory,
+                                    @Qualifier("ragPipelineExecutor") Executor ragPipelineExecutor) {
         this.vectorStore = vectorStore;
+        this.chatMemory = chatMemory;
+        this.chatLongTermMemory = chatLongTermMemory;
+        this.ragPipelineExecutor = ragPipelineExecutor;
                 
         this.chatClient = ChatClient.builder(chatModel)
                 .defaultAdvisors(SimpleLoggerAdvisor.builder().build(),
-                        MessageChatMemoryAdvisor.builder(messageWindowChatMemory).build(), QuestionAnswerAdvisor.builder(vectorStore).build())
+                        MessageChatMemoryAdvisor.builder(chatMemory).build())
+                .defaultOptions(DashScopeChatOptions.builder().withTopP(0.7).build())
+                .build();
+
+        // 流水线模式自行加载和写入聊天记忆，不注册聊天记忆顾问
+        this.pipelineChatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(SimpleLoggerAdvisor.builder().build())
                 .defaultOptions(DashScopeChatOptions.builder().withTopP(0.7).build())
                 .build();
     }
@@ -92,7 +140,7 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
     public List<Document> similaritySearch(String query, int topK) {
         Assert.hasText(query, "查询不能为空");
 
-        logger.info("执行相似性搜索: query={}, businessType={}, topK={}", query, topK);
+        logger.info("执行相似性搜索: query={}, topK={}", query, topK);
 
         // 创建业务类型过滤器
         SearchRequest searchRequest = SearchRequest.builder().query(query).topK(topK).build();
@@ -177,11 +225,11 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
 
     /**
      * 与知识库进行对话
-     * 手动管理聊天记忆，构建完整的对话历史传给大模型
+     * 检索一次知识库，把检索结果放入系统提示词，对话历史由聊天记忆顾问补充
      * 
      * @param query 用户查询
      * @param conversationId 对话ID
-     * @param topK 检索文档数量
+     * @param topK 检索文档数量，不大于0时使用默认值
      * @return 回答内容
      */
     @Override
@@ -190,11 +238,15 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
         logger.info("开始知识库对话，查询: '{}', conversationId: {}", query, conversationId);
         
         try {
-            String prompt = getRagStr(query, topK);
+            if (pipelineEnabled) {
+                return chatWithPipeline(query, conversationId, topK);
+            }
+
+            String systemPrompt = getSystemPrompt(query, conversationId, topK);
             
-            // 3. 调用LLM生成回答
-            String answer = chatClient.prompt(prompt)
-                    .system(SYSTEM_PROMPT)
+            // 调用LLM生成回答
+            String answer = chatClient.prompt()
+                    .system(systemPrompt)
                     .user(query)
                     .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, conversationId))
                     .call().content();
@@ -210,23 +262,29 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
 
     /**
      * 流式知识库对话
-     * 手动管理聊天记忆，构建完整的对话历史传给大模型
+     * 检索一次知识库，把检索结果放入系统提示词，对话历史由聊天记忆顾问补充
      * 
      * @param query 用户查询
      * @param conversationId 对话ID
-     * @param topK 检索文档数量
+     * @param topK 检索文档数量，不大于0时使用默认值
+     * @param sourcesListener 检索结果回调
      * @return 流式回答内容
      */
     @Override
-    public Flux<String> chatWithKnowledgeStream(String query, String conversationId, int topK) {
+    public Flux<String> chatWithKnowledgeStream(String query, String conversationId, int topK,
+                                                Consumer<List<Document>> sourcesListener) {
         Assert.hasText(query, "查询问题不能为空");
         logger.info("开始流式知识库对话，查询: '{}', conversationId: {}", query, conversationId);
 
         try {
-            String prompt = getRagStr(query, topK);
+            if (pipelineEnabled) {
+                return chatStreamWithPipeline(query, conversationId, topK, sourcesListener);
+            }
+
+            String systemPrompt = getSystemPrompt(query, conversationId, topK, sourcesListener);
 
-            return chatClient.prompt(prompt)
-                    .system(SYSTEM_PROMPT)
+            return chatClient.prompt()
+                    .system(systemPrompt)
                     .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, conversationId))
                     .user(query)
                     .stream()
@@ -237,6 +295,121 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
          }
     }
 
+    /**
+     * 流水线模式的知识库对话
+     * 知识库检索与聊天记忆加载并行执行，等两者完成后组装提示词，再按聊天记忆顾问的顺序写入问题和回答；
+     * 问题和回答依次追加到已加载的窗口上，写入时不再重新读取窗口
+     *
+     * @param query 用户查询
+     * @param conversationId 对话ID
+     * @param topK 检索文档数量
+     * @return 回答内容
+     */
+    private String chatWithPipeline(String query, String conversationId, int topK) {
+        PreparedPrompt prepared = preparePrompt(query, conversationId, topK, documents -> {
+        }).join();
+        List<Message> window = appendToWindow(conversationId, prepared.history(), new UserMessage(query));
+
+        String answer = pipelineChatClient.prompt()
+                .system(prepared.systemPrompt())
+                .messages(prepared.history())
+                .user(query)
+                .call().content();
+
+        if (answer != null) {
+            appendToWindow(conversationId, window, new AssistantMessage(answer));
+        }
+        logger.info("知识库对话完成（流水线模式），查询: '{}'", query);
+        return answer;
+    }
+
+    /**
+     * 流水线模式的流式知识库对话
+     * 写入聊天记忆会阻塞（数据库、Redis），在boundedElastic线程上执行，不占用Reactor事件循环线程
+     *
+     * @param query 用户查询
+     * @param conversationId 对话ID
+     * @param topK 检索文档数量
+     * @param sourcesListener 检索结果回调
+     * @return 流式回答内容
+     */
+    private Flux<String> chatStreamWithPipeline(String query, String conversationId, int topK,
+                                                Consumer<List<Document>> sourcesListener) {
+        return Mono.fromFuture(() -> preparePrompt(query, conversationId, topK, sourcesListener))
+                .flatMapMany(prepared -> Mono.fromCallable(() -> Optional.ofNullable(
+                                appendToWindow(conversationId, prepared.history(), new UserMessage(query))))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMapMany(window -> {
+                            StringBuilder answer = new StringBuilder();
+                            return pipelineChatClient.prompt()
+                                    .system(prepared.systemPrompt())
+                                    .messages(prepared.history())
+                                    .user(query)
+                                    .stream()
+                                    .content()
+                                    .doOnNext(answer::append)
+                                    .concatWith(Mono.<String>fromRunnable(() -> appendToWindow(conversationId,
+                                                    window.orElse(null), new AssistantMessage(answer.toString())))
+                                            .subscribeOn(Schedulers.boundedElastic()));
+                        }));
+    }
+
+    /**
+     * 把消息追加到已加载的窗口上并返回保存后的窗口
+     * 聊天记忆不支持在已加载的窗口上追加或窗口未知时，按普通写入重新读取窗口
+     *
+     * @param conversationId 对话ID
+     * @param window 已加载的窗口，未知时为null
+     * @param message 新消息
+     * @return 保存后的窗口，无法确定时返回null
+     */
+    private List<Message> appendToWindow(String conversationId, List<Message> window, Message message) {
+        if (window != null && chatMemory instanceof WindowAwareChatMemory windowAware) {
+            return windowAware.add(conversationId, window, List.of(message));
+        }
+        chatMemory.add(conversationId, message);
+        return null;
+    }
+
+    /**
+     * 基于已组装的系统提示词和对话历史流式生成回答，不读写聊天记忆
+     *
+     * @param systemPrompt 系统提示词
+     * @param history 对话历史
+     * @param query 用户查询
+     * @return 流式回答内容
+     */
+    @Override
+    public Flux<String> streamAnswer(String systemPrompt, List<Message> history, String query) {
+        return pipelineChatClient.prompt()
+                .system(systemPrompt)
+                .messages(history)
+                .user(query)
+                .stream()
+                .content();
+    }
+
+    /**
+     * 在RAG流水线执行器上并行执行知识库检索（含查询向量化）与聊天记忆加载，
+     * 两者都完成后按加载到的窗口召回长期记忆（复用已缓存的查询向量）
+     *
+     * @param query 用户查询
+     * @param conversationId 对话ID
+     * @param topK 检索文档数量
+     * @param sourcesListener 检索结果回调
+     * @return 两者都完成后的系统提示词和对话历史
+     */
+    private CompletableFuture<PreparedPrompt> preparePrompt(String query, String conversationId, int topK,
+                                                            Consumer<List<Document>> sourcesListener) {
+        String userId = UserContextUtil.getCurrentUserId();
+        CompletableFuture<List<Document>> documents = CompletableFuture.supplyAsync(
+                () -> searchKnowledge(query, topK, sourcesListener), ragPipelineExecutor);
+        CompletableFuture<List<Message>> history =
+                CompletableFuture.supplyAsync(() -> chatMemory.get(conversationId), ragPipelineExecutor);
+        return documents.thenCombineAsync(history, (knowledge, window) -> new PreparedPrompt(
+                buildSystemPrompt(userId, conversationId, query, knowledge, window), window), ragPipelineExecutor);
+    }
+
     /**
      * 生成会话标题
      * 基于对话内容智能生成简洁、相关的会话标题
@@ -325,21 +498,104 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
     }
 
     /**
-     * 获取RAG提示词
+     * 获取系统提示词
+     * 知识库检索结果和召回的当前用户相关历史对话依次附加在系统提示词之后
+     *
+     * @param query 用户查询
+     * @param conversationId 对话ID
+     * @param topK 检索文档数量
+     * @return 系统提示词
+     */
+    private String getSystemPrompt(String query, String conversationId, int topK) {
+        return getSystemPrompt(query, conversationId, topK, documents -> {
+        });
+    }
+
+    /**
+     * 获取系统提示词，检索完成后回调检索结果
      *
      * @param query 用户查询
+     * @param conversationId 对话ID
      * @param topK 检索文档数量
-     * @return 提示词
+     * @param sourcesListener 检索结果回调
+     * @return 系统提示词
+     */
+    private String getSystemPrompt(String query, String conversationId, int topK, Consumer<List<Document>> sourcesListener) {
+        List<Document> documents = searchKnowledge(query, topK, sourcesListener);
+        // 只有召回长期记忆时才需要最近窗口，未启用时不加载
+        List<Message> window = chatLongTermMemory.isEnabled() ? chatMemory.get(conversationId) : Collections.emptyList();
+        return buildSystemPrompt(UserContextUtil.getCurrentUserId(), conversationId, query, documents, window);
+    }
+
+    /**
+     * 召回长期记忆，与检索结果一起组装系统提示词
+     * 召回与知识库检索使用同一个问题，问题向量由CachingEmbeddingModel缓存，只请求一次嵌入模型；
+     * 长期记忆按调用方已读取的最近窗口排除仍在窗口内的轮次
+     *
+     * @param userId 用户ID
+     * @param conversationId 对话ID
+     * @param query 用户查询
+     * @param documents 检索到的文档
+     * @param window 当前对话的最近消息窗口
+     * @return 系统提示词
      */
-    private String getRagStr(String query, int topK) {
-        List<Document> documents = similaritySearch(query, topK);
-        String prompt = "";
-        if (documents != null && !documents.isEmpty()){
-            // 构建提示词
+    @Override
+    public String buildSystemPrompt(String userId, String conversationId, String query, List<Document> documents,
+                                    List<Message> window) {
+        return assembleSystemPrompt(documents, chatLongTermMemory.recall(userId, conversationId, window, query));
+    }
+
+    /**
+     * 检索知识库，检索完成后回调检索结果
+     *
+     * @param query 用户查询
+     * @param topK 检索文档数量
+     * @param sourcesListener 检索结果回调
+     * @return 检索到的文档
+     */
+    @Override
+    public List<Document> searchKnowledge(String query, int topK, Consumer<List<Document>> sourcesListener) {
+        List<Document> documents = similaritySearch(query, resolveTopK(topK));
+        sourcesListener.accept(documents);
+        return documents;
+    }
+
+    /**
+     * 把知识库内容和召回的历史轮次依次附加在系统提示词之后
+     *
+     * @param documents 检索到的文档
+     * @param memories 召回的历史轮次
+     * @return 系统提示词
+     */
+    private String assembleSystemPrompt(List<Document> documents, List<String> memories) {
+        StringBuilder systemPrompt = new StringBuilder(SYSTEM_PROMPT);
+        if (!documents.isEmpty()) {
             String context = documents.stream().map(Document::getText).collect(Collectors.joining("\n\n"));
-            prompt = String.format( "知识库内容：\n%s\n\n" , context);
+            systemPrompt.append("\n\n知识库内容：\n").append(context);
+        }
+
+        if (!memories.isEmpty()) {
+            logger.debug("召回长期记忆: count={}", memories.size());
+            systemPrompt.append("\n\n以下是与当前问题相关的历史对话片段，可作为回答的参考：\n")
+                    .append(String.join("\n---\n", memories));
         }
-        return prompt;
+        return systemPrompt.toString();
+    }
+
+    /**
+     * 解析检索数量：不大于0时使用默认值，并限制在最大值以内
+     *
+     * @param topK 请求的检索数量
+     * @return 实际检索数量
+     */
+    private int resolveTopK(int topK) {
+        return Math.min(topK > 0 ? topK : defaultTopK, maxTopK);
+    }
+
+    /**
+     * 组装完成的提示词：系统提示词（含知识库内容和长期记忆）与对话历史
+     */
+    private record PreparedPrompt(String systemPrompt, List<Message> history) {
     }
 
 }
\ No newline at end of file
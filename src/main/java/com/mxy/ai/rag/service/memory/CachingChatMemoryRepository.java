@@ -0,0 +1,140 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 带本地缓存的聊天记忆仓库
+ * 装饰ChatMemoryWindowStore，按对话ID缓存当前消息窗口：
+ * - 读取时优先命中缓存，活跃对话每轮不再查询数据库
+ * - 保存时先写穿到下层存储，再用落库后的窗口刷新缓存
+ * - 删除对话时同步失效缓存
+ * 缓存容量和空闲过期时间均有上限，淘汰策略为Caffeine的W-TinyLFU
+ *
+ * @author Mxy
+ */
+public class CachingChatMemoryRepository implements ChatMemoryWindowStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingChatMemoryRepository.class);
+
+    private final ChatMemoryWindowStore delegate;
+
+    private final Cache<String, List<Message>> windowCache;
+
+    /**
+     * 构造函数
+     *
+     * @param delegate          下层聊天记忆存储
+     * @param maximumSize       最多缓存的对话数
+     * @param expireAfterAccess 对话窗口空闲多久后过期
+     */
+    public CachingChatMemoryRepository(ChatMemoryWindowStore delegate, long maximumSize, Duration expireAfterAccess) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        this.delegate = delegate;
+        this.windowCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        logger.info("初始化聊天记忆窗口缓存: maximumSize={}, expireAfterAccess={}", maximumSize, expireAfterAccess);
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        return delegate.findConversationIds();
+    }
+
+    @Override
+    public Iterator<String> iterateConversationIds(int pageSize) {
+        return delegate.iterateConversationIds(pageSize);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+
+        List<Message> cached = windowCache.getIfPresent(conversationId);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<Message> messages = delegate.findByConversationId(conversationId);
+        // 空窗口不缓存：新对话首次保存后会写入缓存，读取失败返回的空列表也不会被缓存下来
+        if (!messages.isEmpty()) {
+            windowCache.put(conversationId, List.copyOf(messages));
+        }
+        return messages;
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        saveWindow(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> saveWindow(String conversationId, List<Message> messages) {
+        return cacheSavedWindow(conversationId, () -> delegate.saveWindow(conversationId, messages));
+    }
+
+    @Override
+    public List<Message> saveWindow(String conversationId, List<Message> messages, long expectedLastSeq) {
+        return cacheSavedWindow(conversationId, () -> delegate.saveWindow(conversationId, messages, expectedLastSeq));
+    }
+
+    /**
+     * 写穿到下层存储后用落库后的窗口刷新缓存，保存失败时失效缓存
+     */
+    private List<Message> cacheSavedWindow(String conversationId, Supplier<List<Message>> save) {
+        try {
+            List<Message> window = List.copyOf(save.get());
+            windowCache.put(conversationId, window);
+            return window;
+        } catch (RuntimeException e) {
+            windowCache.invalidate(conversationId);
+            throw e;
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        try {
+            delegate.deleteByConversationId(conversationId);
+        } finally {
+            windowCache.invalidate(conversationId);
+        }
+    }
+
+    @Override
+    public void evict(String conversationId) {
+        windowCache.invalidate(conversationId);
+        delegate.evict(conversationId);
+    }
+
+    /**
+     * 获取缓存命中、未命中和淘汰次数等统计信息
+     *
+     * @return 缓存统计
+     */
+    public CacheStats stats() {
+        return windowCache.stats();
+    }
+
+    /**
+     * 获取当前缓存的对话数（近似值）
+     *
+     * @return 缓存的对话数
+     */
+    public long estimatedSize() {
+        return windowCache.estimatedSize();
+    }
+}
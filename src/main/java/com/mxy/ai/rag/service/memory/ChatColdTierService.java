@@ -0,0 +1,312 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mxy.ai.rag.datasource.dao.ChatColdSegmentsDAO;
+import com.mxy.ai.rag.datasource.dao.ChatConversationsDAO;
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import com.mxy.ai.rag.datasource.entity.ChatColdSegmentsDO;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 冷对话分层服务
+ * 大部分对话几天后就不再访问，但其消息仍留在chat_messages热表中占用缓冲池。该服务：
+ * - 定时把空闲超过阈值的对话的全部消息压缩后追加到本地段文件，在索引表中记录位置，再从热表删除这些消息
+ * - 读取对话记忆或聊天历史前检查索引表，若对话已迁移则按索引内存映射读取段文件并按原主键写回热表
+ * 段文件保存在本地磁盘，多副本部署时需要挂载共享卷
+ *
+ * @author Mxy
+ */
+@Component
+public class ChatColdTierService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatColdTierService.class);
+
+    private static final int REHYDRATE_BATCH_SIZE = 500;
+
+    @Resource
+    private ChatMessagesDAO chatMessagesDAO;
+
+    @Resource
+    private ChatConversationsDAO chatConversationsDAO;
+
+    @Resource
+    private ChatColdSegmentsDAO chatColdSegmentsDAO;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource(name = "ttlScheduledExecutor")
+    private Executor ttlScheduledExecutor;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 对外暴露的聊天记忆仓库（可能带有缓存层），迁移后用于清除缓存窗口
+     */
+    @Lazy
+    @Resource
+    private ChatMemoryWindowStore chatMemoryRepository;
+
+    /**
+     * 是否启用冷对话迁移任务（关闭后已迁移的对话仍可回迁）
+     */
+    @Value("${mxy.chat.cold.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 段文件目录
+     */
+    @Value("${mxy.chat.cold.directory:./data/chat-segments}")
+    private String directory;
+
+    /**
+     * 对话空闲多久后迁移到冷存储
+     */
+    @Value("${mxy.chat.cold.idle-threshold:7d}")
+    private Duration idleThreshold;
+
+    /**
+     * 每批查询的对话数
+     */
+    @Value("${mxy.chat.cold.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * 单个段文件的大小上限
+     */
+    @Value("${mxy.chat.cold.max-segment-size:256MB}")
+    private DataSize maxSegmentSize;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private ChatSegmentFileStore segmentFileStore;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        segmentFileStore = new ChatSegmentFileStore(Paths.get(directory), maxSegmentSize.toBytes());
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 定时触发冷对话迁移，实际迁移在ttlScheduledExecutor上执行
+     */
+    @Scheduled(cron = "${mxy.chat.cold.cron:0 0 4 * * ?}")
+    public void schedule() {
+        if (!enabled) {
+            return;
+        }
+        ttlScheduledExecutor.execute(() -> {
+            try {
+                tierIdleConversations();
+            } catch (Exception e) {
+                logger.error("冷对话迁移失败", e);
+            }
+        });
+    }
+
+    /**
+     * 迁移所有空闲超过阈值的对话
+     */
+    public void tierIdleConversations() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("冷对话迁移正在运行，跳过本次触发");
+            return;
+        }
+        try {
+            long startTime = System.currentTimeMillis();
+            LocalDateTime before = LocalDateTime.now().minus(idleThreshold);
+            long afterId = 0L;
+            int conversations = 0;
+            long messages = 0;
+
+            List<ChatConversationsDO> batch;
+            while (!(batch = chatConversationsDAO.getIdleConversations(afterId, before, batchSize)).isEmpty()) {
+                for (ChatConversationsDO conversation : batch) {
+                    try {
+                        int count = tierConversation(conversation.getConversationId());
+                        if (count > 0) {
+                            conversations++;
+                            messages += count;
+                        }
+                    } catch (Exception e) {
+                        logger.warn("迁移冷对话失败: conversationId={}", conversation.getConversationId(), e);
+                    }
+                }
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+
+            logger.info("冷对话迁移完成: conversations={}, messages={}, elapsedMs={}",
+                    conversations, messages, System.currentTimeMillis() - startTime);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 把一个对话的全部消息迁移到段文件
+     * 先追加并刷盘段文件，再在一个事务内写入索引并删除热表中已迁移的消息；
+     * 事务内先锁住对话状态行，重新校验对话仍然空闲且水位线与读取消息时一致，
+     * 期间有新消息写入（水位线推进或最后活跃时间更新）时放弃本次迁移；
+     * 事务失败或放弃迁移时段文件中的记录没有索引指向，成为死数据，不影响正确性
+     *
+     * @param conversationId 对话ID
+     * @return 迁移的消息数
+     * @throws IOException 段文件写入失败
+     */
+    public int tierConversation(String conversationId) throws IOException {
+        ChatConversationsDO snapshot = chatConversationsDAO.getByConversationId(conversationId);
+        if (snapshot == null) {
+            return 0;
+        }
+        List<ChatMessagesDO> messages = chatMessagesDAO.listAllByConversationId(conversationId);
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        long maxMessageId = messages.get(messages.size() - 1).getId();
+        ChatSegmentFileStore.SegmentPointer pointer = segmentFileStore.append(compress(messages));
+
+        LocalDateTime now = LocalDateTime.now();
+        ChatColdSegmentsDO segment = new ChatColdSegmentsDO();
+        segment.setConversationId(conversationId);
+        segment.setSegmentFile(pointer.segmentFile());
+        segment.setSegmentOffset(pointer.offset());
+        segment.setSegmentLength(pointer.length());
+        segment.setMessageCount(messages.size());
+        segment.setMaxMessageId(maxMessageId);
+        segment.setDeleted(0);
+        segment.setGmtCreate(now);
+        segment.setGmtModified(now);
+        segment.setCreator("system");
+        segment.setModifier("system");
+
+        Boolean tiered = transactionTemplate.execute(status -> {
+            ChatConversationsDO conversation = chatConversationsDAO.lockByConversationId(conversationId);
+            if (!isStillIdle(conversation, snapshot)) {
+                return false;
+            }
+            chatColdSegmentsDAO.save(segment);
+            chatMessagesDAO.removeColdMessages(conversationId, maxMessageId);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(tiered)) {
+            logger.info("对话在迁移过程中有新的写入，放弃迁移: conversationId={}", conversationId);
+            return 0;
+        }
+        evictCachedWindow(conversationId);
+
+        logger.debug("迁移冷对话: conversationId={}, messages={}, segment={}, offset={}, length={}",
+                conversationId, messages.size(), pointer.segmentFile(), pointer.offset(), pointer.length());
+        return messages.size();
+    }
+
+    /**
+     * 对话已迁移到冷存储时，把消息按原主键写回热表
+     *
+     * @param conversationId 对话ID
+     * @return 是否回迁了消息
+     */
+    public boolean rehydrateIfCold(String conversationId) {
+        List<ChatColdSegmentsDO> segments = chatColdSegmentsDAO.getActiveSegments(conversationId);
+        if (segments.isEmpty()) {
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+        int messageCount = 0;
+        for (ChatColdSegmentsDO segment : segments) {
+            List<ChatMessagesDO> messages;
+            try {
+                messages = decompress(segmentFileStore.read(segment.getSegmentFile(),
+                        segment.getSegmentOffset(), segment.getSegmentLength()));
+            } catch (IOException e) {
+                throw new IllegalStateException("读取冷对话段文件失败: conversationId=" + conversationId
+                        + ", segment=" + segment.getSegmentFile(), e);
+            }
+            Boolean rehydrated = transactionTemplate.execute(status -> {
+                // 与迁移事务锁同一行：回迁与迁移互斥，回迁后刷新最后活跃时间，
+                // 使正在进行的迁移在重新校验时放弃，不会删除刚写回的消息
+                chatConversationsDAO.lockByConversationId(conversationId);
+                // 并发回迁时只有标记成功的一方写回消息
+                if (!chatColdSegmentsDAO.markRehydrated(segment.getId())) {
+                    return false;
+                }
+                chatMessagesDAO.insertBatchWithId(messages, REHYDRATE_BATCH_SIZE);
+                chatConversationsDAO.touch(conversationId);
+                return true;
+            });
+            if (Boolean.TRUE.equals(rehydrated)) {
+                messageCount += messages.size();
+            }
+        }
+
+        logger.info("回迁冷对话: conversationId={}, segments={}, messages={}, elapsedMs={}",
+                conversationId, segments.size(), messageCount, System.currentTimeMillis() - startTime);
+        return messageCount > 0;
+    }
+
+    /**
+     * 加锁读到的对话状态仍满足迁移条件：未删除、最后活跃时间早于空闲阈值、水位线与读取消息时一致
+     */
+    private boolean isStillIdle(ChatConversationsDO conversation, ChatConversationsDO snapshot) {
+        if (conversation == null || !Objects.equals(conversation.getDeleted(), 0)) {
+            return false;
+        }
+        LocalDateTime before = LocalDateTime.now().minus(idleThreshold);
+        return conversation.getGmtModified() != null && conversation.getGmtModified().isBefore(before)
+                && Objects.equals(conversation.getLastSeq(), snapshot.getLastSeq());
+    }
+
+    private byte[] compress(List<ChatMessagesDO> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, messages);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<ChatMessagesDO> decompress(byte[] record) throws IOException {
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(record))) {
+            return objectMapper.readValue(gzip, new TypeReference<List<ChatMessagesDO>>() {
+            });
+        }
+    }
+
+    private void evictCachedWindow(String conversationId) {
+        try {
+            chatMemoryRepository.evict(conversationId);
+        } catch (Exception e) {
+            logger.warn("清除缓存窗口失败: conversationId={}", conversationId, e);
+        }
+    }
+}
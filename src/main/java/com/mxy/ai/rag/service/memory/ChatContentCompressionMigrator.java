@@ -0,0 +1,140 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 存量聊天消息压缩迁移任务
+ * 新写入的消息在DAO层按需压缩，启用压缩之前写入的长消息仍以明文存储。
+ * 该任务在ttlScheduledExecutor上按主键区间分批扫描，逐行把仍为明文的长消息改写为压缩格式：
+ * - 每行一条按content_format条件更新的语句，与并发写入互不覆盖，重复执行是幂等的
+ * - 批次之间休眠限流，超过单次时长上限时记录断点，下次从断点继续
+ *
+ * @author Mxy
+ */
+@Component
+public class ChatContentCompressionMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatContentCompressionMigrator.class);
+
+    @Resource
+    private ChatMessagesDAO chatMessagesDAO;
+
+    @Resource(name = "ttlScheduledExecutor")
+    private Executor ttlScheduledExecutor;
+
+    /**
+     * 是否启用存量压缩迁移
+     */
+    @Value("${mxy.chat.compression.migration.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 每批处理的主键区间长度
+     */
+    @Value("${mxy.chat.compression.migration.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * 批次之间的休眠时间
+     */
+    @Value("${mxy.chat.compression.migration.throttle:100ms}")
+    private Duration throttle;
+
+    /**
+     * 单次运行的时长上限
+     */
+    @Value("${mxy.chat.compression.migration.max-duration:30m}")
+    private Duration maxDuration;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * 上次因超出时长上限中断时的主键断点
+     */
+    private volatile Long resumeFromId;
+
+    /**
+     * 定时触发存量压缩，实际迁移在ttlScheduledExecutor上执行
+     */
+    @Scheduled(cron = "${mxy.chat.compression.migration.cron:0 0 2 * * ?}")
+    public void schedule() {
+        if (!enabled) {
+            return;
+        }
+        ttlScheduledExecutor.execute(() -> {
+            try {
+                migrate();
+            } catch (Exception e) {
+                logger.error("存量聊天消息压缩失败", e);
+            }
+        });
+    }
+
+    /**
+     * 执行一次存量压缩
+     *
+     * @return 压缩的消息数，已有迁移任务在运行时返回-1
+     */
+    public long migrate() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("存量聊天消息压缩正在运行，跳过本次触发");
+            return -1;
+        }
+        try {
+            long startNanos = System.nanoTime();
+            long batches = 0;
+            long compressed = 0;
+            boolean completed = true;
+
+            Long minId = chatMessagesDAO.getMinId();
+            Long maxId = chatMessagesDAO.getMaxId();
+            if (minId != null && maxId != null) {
+                long fromId = resumeFromId != null ? Math.max(resumeFromId, minId) : minId;
+                while (fromId <= maxId) {
+                    if (System.nanoTime() - startNanos > maxDuration.toNanos()) {
+                        completed = false;
+                        break;
+                    }
+                    long rangeTo = fromId + batchSize;
+                    compressed += chatMessagesDAO.compressRange(fromId, rangeTo);
+                    batches++;
+                    fromId = rangeTo;
+                    if (!sleepBetweenBatches()) {
+                        completed = false;
+                        break;
+                    }
+                }
+                resumeFromId = completed ? null : fromId;
+            }
+
+            logger.info("存量聊天消息压缩完成: batches={}, compressed={}, elapsedMs={}, completed={}",
+                    batches, compressed, Duration.ofNanos(System.nanoTime() - startNanos).toMillis(), completed);
+            return compressed;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private boolean sleepBetweenBatches() {
+        if (throttle.isZero()) {
+            return true;
+        }
+        try {
+            Thread.sleep(throttle.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.mxy.ai.rag.datasource.dao.ChatConversationsDAO;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 聊天长期记忆
+ * 把用户每一轮问答向量化后存入独立的pgvector表，提问时按语义召回该用户相关的历史轮次：
+ * - 每轮对话结束后在独立线程池中异步向量化，不阻塞请求
+ * - 召回按userId过滤，只会召回当前用户自己的历史对话
+ * - 每轮记录存入时对话的消息水位线，召回时排除当前对话中仍在最近窗口内的轮次，避免与窗口内容重复
+ * - 召回结果与最近的消息窗口一起提供给模型，从而可以缩小最近窗口而不丢失早期信息
+ * 向量表与知识库向量表分开，这里的PgVectorStore不注册为Bean，避免影响自动配置的知识库VectorStore
+ *
+ * @author Mxy
+ */
+@Component
+public class ChatLongTermMemory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatLongTermMemory.class);
+
+    private static final String USER_ID = "userId";
+
+    private static final String CONVERSATION_ID = "conversationId";
+
+    private static final String MESSAGE_SEQ = "messageSeq";
+
+    /**
+     * 单轮存入向量表的最大字符数，过长的回答只保留开头部分
+     */
+    private static final int MAX_TURN_CHARS = 2000;
+
+    @Resource(name = "pgVectorJdbcTemplate")
+    private JdbcTemplate pgVectorJdbcTemplate;
+
+    @Resource
+    private EmbeddingModel embeddingModel;
+
+    @Resource
+    private ChatConversationsDAO chatConversationsDAO;
+
+    @Resource(name = "longTermMemoryExecutor")
+    private ThreadPoolTaskExecutor longTermMemoryExecutor;
+
+    /**
+     * 是否启用长期记忆
+     */
+    @Value("${mxy.chat.memory.long-term.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 长期记忆向量表名
+     */
+    @Value("${mxy.chat.memory.long-term.table-name:mxy_chat_memory_vector}")
+    private String tableName;
+
+    /**
+     * 向量维度，需与嵌入模型一致
+     */
+    @Value("${spring.ai.vectorstore.pgvector.dimensions:1024}")
+    private int dimensions;
+
+    /**
+     * 每次召回的历史轮次数
+     */
+    @Value("${mxy.chat.memory.long-term.top-k:3}")
+    private int topK;
+
+    /**
+     * 召回的相似度阈值
+     */
+    @Value("${mxy.chat.memory.long-term.similarity-threshold:0.5}")
+    private double similarityThreshold;
+
+    private PgVectorStore vectorStore;
+
+    /**
+     * 初始化长期记忆向量表
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        vectorStore = PgVectorStore.builder(pgVectorJdbcTemplate, embeddingModel)
+                .vectorTableName(tableName)
+                .dimensions(dimensions)
+                .distanceType(PgVectorStore.PgDistanceType.COSINE_DISTANCE)
+                .indexType(PgVectorStore.PgIndexType.HNSW)
+                .initializeSchema(true)
+                .build();
+        try {
+            // 未注册为Bean，需要手动触发建表
+            vectorStore.afterPropertiesSet();
+        } catch (Exception e) {
+            throw new IllegalStateException("初始化长期记忆向量表失败: " + tableName, e);
+        }
+        logger.info("初始化聊天长期记忆: tableName={}, topK={}, similarityThreshold={}", tableName, topK, similarityThreshold);
+    }
+
+    /**
+     * 是否已启用长期记忆
+     * 未启用时调用方无需为召回准备最近消息窗口
+     *
+     * @return 已启用并完成初始化时返回true
+     */
+    public boolean isEnabled() {
+        return vectorStore != null;
+    }
+
+    /**
+     * 异步存入一轮问答
+     * 同时记录存入时对话的消息水位线，作为这一轮的消息序号；
+     * 水位线不小于这一轮回答的实际序号，召回时按它判断该轮是否仍在窗口内只会偏保守
+     *
+     * @param userId         用户ID
+     * @param conversationId 对话ID
+     * @param question       用户问题
+     * @param answer         助手回答
+     */
+    public void remember(String userId, String conversationId, String question, String answer) {
+        if (vectorStore == null || !StringUtils.hasText(userId)
+                || !StringUtils.hasText(question) || !StringUtils.hasText(answer)) {
+            return;
+        }
+        String text = "用户：" + question + "\n助手：" + answer;
+        String content = text.length() > MAX_TURN_CHARS ? text.substring(0, MAX_TURN_CHARS) : text;
+
+        longTermMemoryExecutor.execute(() -> {
+            try {
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put(USER_ID, userId);
+                metadata.put(CONVERSATION_ID, conversationId);
+                ChatConversationsDO conversation = chatConversationsDAO.getByConversationId(conversationId);
+                if (conversation != null && conversation.getLastSeq() != null) {
+                    metadata.put(MESSAGE_SEQ, conversation.getLastSeq());
+                }
+                vectorStore.add(List.of(new Document(content, metadata)));
+                logger.debug("存入长期记忆: userId={}, conversationId={}", userId, conversationId);
+            } catch (Exception e) {
+                logger.warn("存入长期记忆失败: userId={}, conversationId={}", userId, conversationId, e);
+            }
+        });
+    }
+
+    /**
+     * 召回与问题相关的历史轮次
+     * 当前对话只召回序号早于最近窗口起点、已经被淘汰出窗口的轮次；
+     * 没有记录序号的旧数据无法判断是否仍在窗口内，当前对话的这部分轮次不召回
+     *
+     * @param userId         用户ID
+     * @param conversationId 当前对话ID
+     * @param window         当前对话的最近消息窗口
+     * @param query          用户问题
+     * @return 历史轮次文本，按相关度降序排列；未启用或召回失败时返回空列表
+     */
+    public List<String> recall(String userId, String conversationId, List<Message> window, String query) {
+        if (vectorStore == null || !StringUtils.hasText(userId) || !StringUtils.hasText(query)) {
+            return Collections.emptyList();
+        }
+        try {
+            SearchRequest searchRequest = SearchRequest.builder()
+                    .query(query)
+                    .topK(topK)
+                    .similarityThreshold(similarityThreshold)
+                    .filterExpression(buildFilter(userId, conversationId, window))
+                    .build();
+            return vectorStore.similaritySearch(searchRequest).stream()
+                    .map(Document::getText)
+                    .toList();
+        } catch (Exception e) {
+            logger.warn("召回长期记忆失败: userId={}", userId, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 组装召回过滤条件：userId == 当前用户 && (conversationId != 当前对话 || messageSeq < 窗口起点)
+     */
+    private Filter.Expression buildFilter(String userId, String conversationId, List<Message> window) {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        if (!StringUtils.hasText(conversationId) || window == null || window.isEmpty()) {
+            return b.eq(USER_ID, userId).build();
+        }
+        return b.and(b.eq(USER_ID, userId),
+                b.or(b.ne(CONVERSATION_ID, conversationId), b.lt(MESSAGE_SEQ, windowStartSeq(window)))).build();
+    }
+
+    /**
+     * 计算窗口起点：窗口内对话消息的最小序号；摘要消息序号为0，不参与计算
+     * 窗口内的消息都没有序号时返回0，当前对话的轮次全部排除
+     */
+    private long windowStartSeq(List<Message> window) {
+        return window.stream()
+                .map(ChatMessageMetadata::getSeq)
+                .filter(Objects::nonNull)
+                .filter(seq -> seq > 0)
+                .min(Long::compare)
+                .orElse(0L);
+    }
+
+    /**
+     * 删除对话的长期记忆
+     *
+     * @param conversationId 对话ID
+     */
+    public void forget(String conversationId) {
+        if (vectorStore == null) {
+            return;
+        }
+        longTermMemoryExecutor.execute(() -> {
+            try {
+                vectorStore.delete(new FilterExpressionBuilder().eq(CONVERSATION_ID, conversationId).build());
+                logger.info("删除长期记忆: conversationId={}", conversationId);
+            } catch (Exception e) {
+                logger.warn("删除长期记忆失败: conversationId={}", conversationId, e);
+            }
+        });
+    }
+}
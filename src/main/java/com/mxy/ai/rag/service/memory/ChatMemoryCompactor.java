@@ -0,0 +1,243 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.mxy.ai.rag.datasource.dao.ChatConversationsDAO;
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 聊天记忆滚动摘要压缩器
+ * 窗口裁剪只是软删除窗口外的消息，长对话会丢失早期上下文。压缩器在后台把被淘汰的消息
+ * 与已有摘要一起交给大模型合并成新的摘要，并以一条SYSTEM消息保存：
+ * - 窗口裁剪后在事务提交后触发，在独立线程池中执行，不阻塞任何一轮对话
+ * - 被淘汰且未摘要的消息达到阈值时才压缩，通过chat_conversations.summarized_seq记录摘要水位线
+ * - SYSTEM消息不参与窗口裁剪并始终排在窗口最前面，摘要因此一直保留在上下文中
+ * - 摘要落库后清除缓存中的窗口，下一轮对话从数据库读到新的摘要
+ *
+ * @author Mxy
+ */
+@Component
+public class ChatMemoryCompactor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMemoryCompactor.class);
+
+    private static final String SUMMARY_PROMPT = "你负责为一段持续进行的对话维护滚动摘要。" +
+            "请把【已有摘要】和【新移出上下文的对话】合并成一份新的摘要：\n" +
+            "1. 保留用户的身份、偏好、目标以及已经确认的事实和结论\n" +
+            "2. 保留尚未解决的问题和后续需要跟进的事项\n" +
+            "3. 省略寒暄和重复内容，不要编造对话中没有的信息\n" +
+            "4. 使用中文，不超过%d字，直接输出摘要正文\n\n" +
+            "【已有摘要】\n%s\n\n【新移出上下文的对话】\n%s";
+
+    private static final String SUMMARY_PREFIX = "以下是本次对话早期内容的摘要：\n";
+
+    @Resource
+    private ChatMessagesDAO chatMessagesDAO;
+
+    @Resource
+    private ChatConversationsDAO chatConversationsDAO;
+
+    @Resource(name = "dashscopeChatModel")
+    private ChatModel chatModel;
+
+    @Resource(name = "memoryCompactionExecutor")
+    private ThreadPoolTaskExecutor memoryCompactionExecutor;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 对外暴露的聊天记忆仓库（可能带有缓存层），摘要落库后用于清除缓存窗口
+     */
+    @Lazy
+    @Resource
+    private ChatMemoryWindowStore chatMemoryRepository;
+
+    /**
+     * 是否启用滚动摘要压缩
+     */
+    @Value("${mxy.chat.memory.compaction.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 被淘汰且未摘要的消息达到多少条时触发压缩
+     */
+    @Value("${mxy.chat.memory.compaction.min-evicted-messages:6}")
+    private int minEvictedMessages;
+
+    /**
+     * 单次压缩最多合并的消息数
+     */
+    @Value("${mxy.chat.memory.compaction.max-batch-messages:100}")
+    private int maxBatchMessages;
+
+    /**
+     * 摘要最大字数
+     */
+    @Value("${mxy.chat.memory.compaction.max-summary-chars:800}")
+    private int maxSummaryChars;
+
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 窗口裁剪后触发压缩
+     * 在事务中调用时，事务提交后才提交压缩任务
+     *
+     * @param conversationId 对话ID
+     */
+    public void onWindowTrimmed(String conversationId) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(conversationId);
+                }
+            });
+        } else {
+            submit(conversationId);
+        }
+    }
+
+    private void submit(String conversationId) {
+        // 同一对话同一时间只有一个压缩任务
+        if (!compacting.add(conversationId)) {
+            return;
+        }
+        try {
+            memoryCompactionExecutor.execute(() -> {
+                try {
+                    compact(conversationId);
+                } catch (Exception e) {
+                    logger.warn("聊天记忆压缩失败: conversationId={}", conversationId, e);
+                } finally {
+                    compacting.remove(conversationId);
+                }
+            });
+        } catch (Exception e) {
+            compacting.remove(conversationId);
+            logger.warn("提交聊天记忆压缩任务失败: conversationId={}", conversationId, e);
+        }
+    }
+
+    /**
+     * 把被淘汰且未摘要的消息合并进滚动摘要
+     *
+     * @param conversationId 对话ID
+     */
+    public void compact(String conversationId) {
+        ChatConversationsDO conversation = chatConversationsDAO.getByConversationId(conversationId);
+        if (conversation == null) {
+            return;
+        }
+        long summarizedSeq = conversation.getSummarizedSeq() != null ? conversation.getSummarizedSeq() : 0L;
+
+        List<ChatMessagesDO> evicted = chatMessagesDAO.getEvictedMessages(conversationId, summarizedSeq, maxBatchMessages);
+        if (evicted.size() < minEvictedMessages) {
+            return;
+        }
+
+        ChatMessagesDO previousSummary = chatMessagesDAO.getSummaryMessage(conversationId);
+        String summary = summarize(previousSummary, evicted);
+        if (!StringUtils.hasText(summary)) {
+            logger.warn("大模型返回空摘要，跳过本次压缩: conversationId={}", conversationId);
+            return;
+        }
+
+        ChatMessagesDO last = evicted.get(evicted.size() - 1);
+        Boolean saved = transactionTemplate.execute(status -> {
+            if (!chatConversationsDAO.compareAndSetSummarizedSeq(conversationId, summarizedSeq, last.getMessageSeq())) {
+                return false;
+            }
+            if (previousSummary != null) {
+                chatMessagesDAO.deleteMessagesByIds(List.of(previousSummary.getId()));
+            }
+            chatMessagesDAO.save(createSummaryMessage(conversationId, last.getSessionId(), SUMMARY_PREFIX + summary));
+            return true;
+        });
+
+        if (Boolean.TRUE.equals(saved)) {
+            evictCachedWindow(conversationId);
+            logger.info("聊天记忆压缩完成: conversationId={}, evictedMessages={}, summarizedSeq={}",
+                    conversationId, evicted.size(), last.getMessageSeq());
+        } else {
+            logger.debug("摘要水位线已被其他任务推进，放弃本次压缩: conversationId={}", conversationId);
+        }
+    }
+
+    private String summarize(ChatMessagesDO previousSummary, List<ChatMessagesDO> evicted) {
+        String existing = "无";
+        if (previousSummary != null) {
+            existing = previousSummary.getContent().startsWith(SUMMARY_PREFIX)
+                    ? previousSummary.getContent().substring(SUMMARY_PREFIX.length())
+                    : previousSummary.getContent();
+        }
+
+        StringBuilder transcript = new StringBuilder();
+        for (ChatMessagesDO message : evicted) {
+            transcript.append("USER".equals(message.getMessageType()) ? "用户" : "助手")
+                    .append("：")
+                    .append(message.getContent())
+                    .append('\n');
+        }
+        return chatModel.call(String.format(SUMMARY_PROMPT, maxSummaryChars, existing, transcript));
+    }
+
+    private ChatMessagesDO createSummaryMessage(String conversationId, Long sessionId, String content) {
+        LocalDateTime now = LocalDateTime.now();
+        ChatMessagesDO messageDO = new ChatMessagesDO();
+        messageDO.setSessionId(sessionId != null ? sessionId : -1L);
+        messageDO.setConversationId(conversationId);
+        // 摘要不占用对话消息序号，序号0不会落在任何裁剪边界内
+        messageDO.setMessageSeq(0L);
+        messageDO.setMessageType("SYSTEM");
+        messageDO.setContent(content);
+        messageDO.setTokenCount(tokenCountEstimator.estimate(content));
+        messageDO.setDeleted(0);
+        messageDO.setGmtCreate(now);
+        messageDO.setGmtModified(now);
+        messageDO.setCreator(ChatMessagesDAO.SUMMARY_CREATOR);
+        messageDO.setModifier(ChatMessagesDAO.SUMMARY_CREATOR);
+        return messageDO;
+    }
+
+    private void evictCachedWindow(String conversationId) {
+        try {
+            chatMemoryRepository.evict(conversationId);
+        } catch (Exception e) {
+            logger.warn("清除缓存窗口失败: conversationId={}", conversationId, e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 聊天记忆窗口存储
+ * 在Spring AI ChatMemoryRepository的基础上，返回落库后带有序号的消息窗口，
+ * 供缓存等装饰层直接复用，避免保存后再回查数据库
+ *
+ * @author Mxy
+ */
+public interface ChatMemoryWindowStore extends ChatMemoryRepository {
+
+    /**
+     * 保存消息窗口
+     *
+     * @param conversationId 对话ID
+     * @param messages       当前窗口内的消息列表
+     * @return 保存后的窗口，新消息已带上持久化序号
+     */
+    List<Message> saveWindow(String conversationId, List<Message> messages);
+
+    /**
+     * 在调用方已读取的窗口上保存消息窗口
+     * 保存前校验对话的消息水位线仍等于读取窗口时的值，已被其他写入推进时抛出OptimisticLockingFailureException，
+     * 由上层重新读取窗口后合并保存
+     *
+     * @param conversationId  对话ID
+     * @param messages        当前窗口内的消息列表
+     * @param expectedLastSeq 读取窗口时对话的消息水位线
+     * @return 保存后的窗口，新消息已带上持久化序号
+     */
+    List<Message> saveWindow(String conversationId, List<Message> messages, long expectedLastSeq);
+
+    /**
+     * 分页遍历所有对话ID，每次只在内存中保留一页
+     * 供维护任务等需要枚举大量对话的场景使用，默认实现退化为一次性加载
+     *
+     * @param pageSize 每页数量
+     * @return 对话ID迭代器
+     */
+    default Iterator<String> iterateConversationIds(int pageSize) {
+        return findConversationIds().iterator();
+    }
+
+    /**
+     * 丢弃指定对话在各级缓存中的窗口，下次读取时重新加载
+     *
+     * @param conversationId 对话ID
+     */
+    default void evict(String conversationId) {
+    }
+}
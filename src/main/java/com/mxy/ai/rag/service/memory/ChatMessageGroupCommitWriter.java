@@ -0,0 +1,527 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 聊天消息组提交写入器
+ * 所有对话的消息写入先进入队列，由后台线程每隔几毫秒或攒够N条时统一落库：
+ * - 同一批次的新消息合并为多行INSERT，窗口裁剪紧随其后，在一个事务内提交
+ * - 队列只在持有刷盘锁时出队并写完，保证同一对话的写入顺序与入队顺序一致
+ * - 调用方在推进水位线之前先预占队列名额，队列满时等待，超时仍无名额则在任何数据提交前拒绝本轮写入（背压）
+ * - 整批落库失败时逐条写入隔离出错的写入，出错的写入连同同一对话之后的写入一起放回队首，按退避时间等待下次刷盘重试，
+ *   退避期间不占用刷盘锁，其他对话的写入照常落库
+ * - 单个写入重试达到max-attempts仍失败时转入死信日志，释放名额并清除该对话的缓存窗口，
+ *   此后从数据库重新加载的窗口不再包含这些消息；水位线不回退，序号出现空洞不影响后续写入
+ * - 应用关闭时先停止后台线程，再把队列中剩余的写入全部落库
+ *
+ * @author Mxy
+ */
+@Component
+public class ChatMessageGroupCommitWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageGroupCommitWriter.class);
+
+    /**
+     * 死信日志，记录最终未能落库的消息，便于人工补录
+     */
+    private static final Logger deadLetterLogger = LoggerFactory.getLogger("chat-message-dead-letter");
+
+    /**
+     * 队列为空时后台线程的最长休眠时间，有新写入时会被立即唤醒
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Resource
+    private ChatMessagesDAO chatMessagesDAO;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 聊天记忆仓库（最外层，含缓存），写入转入死信后清除缓存窗口
+     */
+    @Lazy
+    @Resource
+    private ChatMemoryWindowStore chatMemoryRepository;
+
+    /**
+     * 是否启用组提交写入
+     */
+    @Value("${mxy.chat.memory.group-commit.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 队列容量（写入请求数）
+     */
+    @Value("${mxy.chat.memory.group-commit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    /**
+     * 每批最多处理的写入请求数，同时也是单条多行INSERT的最大行数
+     */
+    @Value("${mxy.chat.memory.group-commit.max-batch-size:500}")
+    private int maxBatchSize;
+
+    /**
+     * 攒批等待时间
+     */
+    @Value("${mxy.chat.memory.group-commit.flush-interval:5ms}")
+    private Duration flushInterval;
+
+    /**
+     * 队列满时调用方最长等待时间
+     */
+    @Value("${mxy.chat.memory.group-commit.offer-timeout:2s}")
+    private Duration offerTimeout;
+
+    /**
+     * 单个写入的最大落库尝试次数，超过后转入死信日志
+     */
+    @Value("${mxy.chat.memory.group-commit.max-attempts:5}")
+    private int maxAttempts;
+
+    /**
+     * 写入失败后的退避时间，按尝试次数线性增长
+     */
+    @Value("${mxy.chat.memory.group-commit.retry-backoff:100ms}")
+    private Duration retryBackoff;
+
+    /**
+     * 待落库的写入，容量由slots控制，放回失败的写入时需要插入队首
+     */
+    private final BlockingDeque<PendingWrite> queue = new LinkedBlockingDeque<>();
+
+    /**
+     * 队列名额，预占时获取，写入落库后释放
+     */
+    private Semaphore slots;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Map<String, AtomicInteger> pendingByConversation = new ConcurrentHashMap<>();
+
+    private TransactionTemplate transactionTemplate;
+
+    private volatile boolean running;
+
+    private Thread flusher;
+
+    /**
+     * 启动后台刷盘线程
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        slots = new Semaphore(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        flusher = new Thread(this::runFlusher, "chat-message-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("启动聊天消息组提交写入器: queueCapacity={}, maxBatchSize={}, flushInterval={}",
+                queueCapacity, maxBatchSize, flushInterval);
+    }
+
+    /**
+     * 是否启用组提交写入
+     *
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 预占一个队列名额
+     * 必须在推进水位线之前调用，队列满时最多等待offer-timeout，仍无名额时抛出异常，此时尚未提交任何数据，调用方可以直接重试
+     *
+     * @param conversationId 对话ID
+     * @return 写入预占
+     */
+    public Reservation reserve(String conversationId) {
+        try {
+            if (!slots.tryAcquire(offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("聊天消息写入队列已满，请稍后重试");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("聊天消息写入被中断", e);
+        }
+        return new Reservation(conversationId);
+    }
+
+    /**
+     * 提交预占的写入
+     * 在事务中调用时，事务提交后才真正入队，事务回滚时释放名额；预占中没有任何写入时直接释放名额
+     *
+     * @param reservation 写入预占
+     */
+    public void submit(Reservation reservation) {
+        if (reservation.isEmpty()) {
+            release(reservation);
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(reservation);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        release(reservation);
+                    }
+                }
+            });
+        } else {
+            enqueue(reservation);
+        }
+    }
+
+    /**
+     * 放弃预占：本轮写入失败时调用，释放名额，已入队的预占不受影响
+     *
+     * @param reservation 写入预占
+     */
+    public void cancel(Reservation reservation) {
+        release(reservation);
+    }
+
+    /**
+     * 指定对话是否还有未落库的写入
+     *
+     * @param conversationId 对话ID
+     * @return 是否有未落库的写入
+     */
+    public boolean hasPending(String conversationId) {
+        AtomicInteger pending = pendingByConversation.get(conversationId);
+        return pending != null && pending.get() > 0;
+    }
+
+    /**
+     * 在调用线程上立即把队列中的写入落库
+     * 用于读取前保证读到自己刚写入的消息；落库失败或仍在退避中的写入保留在队首，不在这里等待
+     */
+    public void flush() {
+        drainWithLock();
+    }
+
+    /**
+     * 应用关闭时停止后台线程并落库剩余写入
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (!queue.isEmpty()) {
+            logger.error("聊天消息组提交写入器关闭时仍有写入未能落库: writes={}", queue.size());
+        }
+        logger.info("聊天消息组提交写入器已关闭");
+    }
+
+    private void enqueue(Reservation reservation) {
+        if (!reservation.state.compareAndSet(Reservation.RESERVED, Reservation.ENQUEUED)) {
+            return;
+        }
+        PendingWrite write = new PendingWrite(reservation.conversationId, List.copyOf(reservation.messages),
+                reservation.trimBeforeSeq);
+        pendingByConversation.computeIfAbsent(write.conversationId(), key -> new AtomicInteger()).incrementAndGet();
+        boolean wasEmpty = queue.isEmpty();
+        queue.offerLast(write);
+        // 队列由空变为非空时唤醒后台线程开始攒批，攒够一批时立即唤醒刷盘
+        if (wasEmpty || queue.size() >= maxBatchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    private void release(Reservation reservation) {
+        if (reservation.state.compareAndSet(Reservation.RESERVED, Reservation.RELEASED)) {
+            slots.release();
+        }
+    }
+
+    private void runFlusher() {
+        boolean backlog = false;
+        while (running) {
+            // 只剩退避中的写入时按攒批间隔休眠，避免空转
+            if (queue.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else if (backlog || queue.size() < maxBatchSize) {
+                LockSupport.parkNanos(flushInterval.toNanos());
+            }
+            try {
+                backlog = !drainWithLock();
+            } catch (Exception e) {
+                logger.error("聊天消息组提交刷盘异常", e);
+            }
+        }
+    }
+
+    private boolean drainWithLock() {
+        flushLock.lock();
+        try {
+            return drain();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 分批出队并落库，调用方必须持有刷盘锁
+     * 退避中的写入和出错对话之后的写入暂存起来，本轮结束时按原顺序放回队首，其他对话的写入继续落库
+     *
+     * @return 队列中的写入都已处理完时返回true
+     */
+    private boolean drain() {
+        List<PendingWrite> retained = new ArrayList<>();
+        Set<String> blockedConversations = new HashSet<>();
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (queue.drainTo(batch, maxBatchSize) > 0) {
+            long now = System.nanoTime();
+            List<PendingWrite> ready = new ArrayList<>(batch.size());
+            for (PendingWrite write : batch) {
+                if (blockedConversations.contains(write.conversationId()) || write.isBackingOff(now)) {
+                    blockedConversations.add(write.conversationId());
+                    retained.add(write);
+                } else {
+                    ready.add(write);
+                }
+            }
+            batch.clear();
+            if (!ready.isEmpty()) {
+                writeBatch(ready, blockedConversations, retained);
+            }
+        }
+        for (int i = retained.size() - 1; i >= 0; i--) {
+            queue.offerFirst(retained.get(i));
+        }
+        return retained.isEmpty();
+    }
+
+    /**
+     * 落库一批写入
+     * 整批失败时逐条写入，隔离出错的写入；出错对话之后的写入不能越过它先落库，一起暂存
+     */
+    private void writeBatch(List<PendingWrite> batch, Set<String> blockedConversations, List<PendingWrite> retained) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> apply(batch));
+            logger.debug("组提交落库完成: writes={}", batch.size());
+            batch.forEach(this::completed);
+            return;
+        } catch (Exception e) {
+            logger.warn("组提交整批落库失败，改为逐条写入: writes={}", batch.size(), e);
+        }
+
+        for (PendingWrite write : batch) {
+            if (blockedConversations.contains(write.conversationId())) {
+                retained.add(write);
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> apply(List.of(write)));
+                completed(write);
+            } catch (Exception e) {
+                if (write.recordFailure(retryBackoff, maxAttempts)) {
+                    logger.warn("聊天消息写入失败，退避后重试: conversationId={}, messageCount={}, attempts={}",
+                            write.conversationId(), write.messages().size(), write.attempts(), e);
+                    blockedConversations.add(write.conversationId());
+                    retained.add(write);
+                } else {
+                    deadLetter(write, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入重试耗尽：记录死信日志，释放名额，并清除该对话的缓存窗口，避免缓存中继续保留未落库的消息
+     */
+    private void deadLetter(PendingWrite write, Exception cause) {
+        logger.error("聊天消息写入重试耗尽，转入死信日志: conversationId={}, messageCount={}, attempts={}",
+                write.conversationId(), write.messages().size(), write.attempts(), cause);
+        for (ChatMessagesDO row : write.messages()) {
+            deadLetterLogger.error("conversationId={}, sessionId={}, messageSeq={}, messageType={}, creator={}, content={}",
+                    row.getConversationId(), row.getSessionId(), row.getMessageSeq(), row.getMessageType(),
+                    row.getCreator(), row.getContent());
+        }
+        completed(write);
+        try {
+            chatMemoryRepository.evict(write.conversationId());
+        } catch (Exception e) {
+            logger.warn("清除缓存窗口失败: conversationId={}", write.conversationId(), e);
+        }
+    }
+
+    /**
+     * 先把整批新消息合并为多行INSERT，再执行窗口裁剪
+     * 裁剪只删除序号小于窗口起点的消息，后续轮次的新消息序号更大，先插入后裁剪与入队顺序等价
+     */
+    private void apply(List<PendingWrite> batch) {
+        List<ChatMessagesDO> rows = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            rows.addAll(write.messages());
+        }
+        if (!rows.isEmpty()) {
+            chatMessagesDAO.insertBatch(rows, maxBatchSize);
+        }
+        for (PendingWrite write : batch) {
+            if (write.trimBeforeSeq() != null) {
+                chatMessagesDAO.trimWindow(write.conversationId(), write.trimBeforeSeq());
+            }
+        }
+    }
+
+    private void completed(PendingWrite write) {
+        pendingByConversation.computeIfPresent(write.conversationId(),
+                (key, pending) -> pending.decrementAndGet() <= 0 ? null : pending);
+        slots.release();
+    }
+
+    /**
+     * 一轮写入的队列名额预占
+     * 在水位线推进前创建，期间收集本轮的新消息和窗口裁剪边界，事务提交后作为一个写入入队
+     */
+    public static final class Reservation {
+
+        private static final int RESERVED = 0;
+
+        private static final int ENQUEUED = 1;
+
+        private static final int RELEASED = 2;
+
+        private final String conversationId;
+
+        private final List<ChatMessagesDO> messages = new ArrayList<>();
+
+        private Long trimBeforeSeq;
+
+        private final AtomicInteger state = new AtomicInteger(RESERVED);
+
+        private Reservation(String conversationId) {
+            this.conversationId = conversationId;
+        }
+
+        /**
+         * 添加待插入的消息
+         *
+         * @param messages 待插入的消息
+         */
+        public void addMessages(List<ChatMessagesDO> messages) {
+            this.messages.addAll(messages);
+        }
+
+        /**
+         * 设置窗口裁剪边界
+         *
+         * @param windowStartSeq 当前窗口中最早一条非系统消息的序号
+         */
+        public void trimBefore(long windowStartSeq) {
+            this.trimBeforeSeq = windowStartSeq;
+        }
+
+        private boolean isEmpty() {
+            return messages.isEmpty() && trimBeforeSeq == null;
+        }
+    }
+
+    /**
+     * 待落库的写入，记录已失败的次数和下次可重试的时间，只在持有刷盘锁时修改
+     */
+    private static final class PendingWrite {
+
+        private final String conversationId;
+
+        private final List<ChatMessagesDO> messages;
+
+        private final Long trimBeforeSeq;
+
+        private int attempts;
+
+        private long nextAttemptNanos;
+
+        /**
+         * 构造函数
+         *
+         * @param conversationId 对话ID
+         * @param messages       待插入的消息
+         * @param trimBeforeSeq  窗口裁剪边界，为null表示不裁剪
+         */
+        private PendingWrite(String conversationId, List<ChatMessagesDO> messages, Long trimBeforeSeq) {
+            this.conversationId = conversationId;
+            this.messages = messages;
+            this.trimBeforeSeq = trimBeforeSeq;
+        }
+
+        private String conversationId() {
+            return conversationId;
+        }
+
+        private List<ChatMessagesDO> messages() {
+            return messages;
+        }
+
+        private Long trimBeforeSeq() {
+            return trimBeforeSeq;
+        }
+
+        private int attempts() {
+            return attempts;
+        }
+
+        private boolean isBackingOff(long now) {
+            return attempts > 0 && now - nextAttemptNanos < 0;
+        }
+
+        /**
+         * 记录一次落库失败并计算下次重试时间
+         *
+         * @return 还可以重试时返回true
+         */
+        private boolean recordFailure(Duration backoff, int maxAttempts) {
+            attempts++;
+            nextAttemptNanos = System.nanoTime() + backoff.toNanos() * attempts;
+            return attempts < maxAttempts;
+        }
+    }
+}
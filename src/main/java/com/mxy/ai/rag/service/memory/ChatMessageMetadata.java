@@ -0,0 +1,149 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.springframework.ai.chat.messages.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 聊天记忆消息元数据工具类
+ * 在Spring AI Message的metadata中读写持久化相关的信息（如消息序号）
+ *
+ * @author Mxy
+ */
+public final class ChatMessageMetadata {
+
+    /**
+     * 消息在对话内的持久化序号，带有该元数据的消息表示已经落库
+     */
+    public static final String MESSAGE_SEQ = "messageSeq";
+
+    /**
+     * 消息内容的token数，写入时计算一次并随消息落库
+     */
+    public static final String TOKEN_COUNT = "tokenCount";
+
+    /**
+     * 需要随消息一起缓存/共享的元数据键，其余元数据（如模型返回的附加信息）不跨存储传递
+     */
+    public static final Set<String> PERSISTENT_KEYS = Set.of(MESSAGE_SEQ, TOKEN_COUNT);
+
+    private ChatMessageMetadata() {
+    }
+
+    /**
+     * 提取需要随消息一起缓存/共享的元数据
+     *
+     * @param message 消息
+     * @return 元数据副本
+     */
+    public static Map<String, Object> persistentMetadata(Message message) {
+        Map<String, Object> metadata = new HashMap<>();
+        for (String key : PERSISTENT_KEYS) {
+            Object value = message.getMetadata().get(key);
+            if (value != null) {
+                metadata.put(key, value);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * 根据消息类型、内容和元数据重建消息
+     *
+     * @param messageType 消息类型
+     * @param content     消息内容
+     * @param metadata    元数据
+     * @return 消息
+     */
+    public static Message create(MessageType messageType, String content, Map<String, Object> metadata) {
+        return switch (messageType) {
+            case ASSISTANT -> new AssistantMessage(content, metadata);
+            case SYSTEM -> SystemMessage.builder().text(content).metadata(metadata).build();
+            case TOOL -> new ToolResponseMessage(List.of(), metadata);
+            default -> UserMessage.builder().text(content).metadata(metadata).build();
+        };
+    }
+
+    /**
+     * 获取消息的持久化序号
+     *
+     * @param message 消息
+     * @return 序号，未持久化的消息返回null
+     */
+    public static Long getSeq(Message message) {
+        Object seq = message.getMetadata().get(MESSAGE_SEQ);
+        if (seq instanceof Number number) {
+            return number.longValue();
+        }
+        return null;
+    }
+
+    /**
+     * 获取窗口内消息的最大持久化序号
+     * 对话自身的消息序号接在继承的消息之后，已落库窗口的最大序号即读取窗口时对话的消息水位线
+     *
+     * @param messages 消息窗口
+     * @return 最大序号，窗口内没有已落库的消息时返回0
+     */
+    public static long maxSeq(List<Message> messages) {
+        long maxSeq = 0;
+        for (Message message : messages) {
+            Long seq = getSeq(message);
+            if (seq != null && seq > maxSeq) {
+                maxSeq = seq;
+            }
+        }
+        return maxSeq;
+    }
+
+    /**
+     * 获取消息的token数
+     *
+     * @param message 消息
+     * @return token数，尚未计算过的消息返回null
+     */
+    public static Integer getTokenCount(Message message) {
+        Object tokenCount = message.getMetadata().get(TOKEN_COUNT);
+        if (tokenCount instanceof Number number) {
+            return number.intValue();
+        }
+        return null;
+    }
+
+    /**
+     * 返回带有持久化序号的消息副本
+     *
+     * @param message 原始消息
+     * @param seq     持久化序号
+     * @return 消息副本
+     */
+    public static Message withSeq(Message message, long seq) {
+        return withMetadata(message, Map.of(MESSAGE_SEQ, seq));
+    }
+
+    /**
+     * 返回合并了额外元数据的消息副本，消息类型和内容保持不变
+     *
+     * @param message  原始消息
+     * @param metadata 需要合并的元数据
+     * @return 消息副本
+     */
+    public static Message withMetadata(Message message, Map<String, Object> metadata) {
+        Map<String, Object> merged = new HashMap<>(message.getMetadata());
+        merged.putAll(metadata);
+
+        if (message instanceof UserMessage userMessage) {
+            return UserMessage.builder().text(userMessage.getText()).media(userMessage.getMedia()).metadata(merged).build();
+        } else if (message instanceof AssistantMessage assistantMessage) {
+            return new AssistantMessage(assistantMessage.getText(), merged, assistantMessage.getToolCalls(), assistantMessage.getMedia());
+        } else if (message instanceof SystemMessage systemMessage) {
+            return SystemMessage.builder().text(systemMessage.getText()).metadata(merged).build();
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            return new ToolResponseMessage(List.copyOf(toolResponseMessage.getResponses()), merged);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,217 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import com.mxy.ai.rag.web.vo.ChatPurgeReportVO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 软删除聊天消息清理任务
+ * 窗口裁剪、对话清空和会话删除都只做软删除，chat_messages会无限增长，并让每次查询都要跳过大量已删除的行。
+ * 该任务定时在ttlScheduledExecutor上执行，把软删除时间超过保留期的消息归档到chat_messages_archive或直接删除：
+ * - 按主键区间分批处理，每批一个短事务，只锁住很小的主键范围
+ * - 批次之间休眠限流，单次运行超过时长上限时记录断点，下次从断点继续
+ * - 每次运行输出回收行数等报告，并保留最近一次报告供查询
+ * 开启滚动摘要时只清理序号不超过chat_conversations.summarized_seq的消息，被淘汰但尚未合并进摘要的消息（例如压缩失败或积压）会一直保留到摘要完成
+ *
+ * @author Mxy
+ */
+@Component
+public class ChatMessagePurgeJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessagePurgeJob.class);
+
+    private static final String MODE_ARCHIVE = "archive";
+
+    @Resource
+    private ChatMessagesDAO chatMessagesDAO;
+
+    @Resource(name = "ttlScheduledExecutor")
+    private Executor ttlScheduledExecutor;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 是否启用清理任务
+     */
+    @Value("${mxy.chat.purge.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 清理模式：archive归档后删除，delete直接删除
+     */
+    @Value("${mxy.chat.purge.mode:archive}")
+    private String mode;
+
+    /**
+     * 软删除消息的保留期
+     */
+    @Value("${mxy.chat.purge.retention:7d}")
+    private Duration retention;
+
+    /**
+     * 每批处理的主键区间长度
+     */
+    @Value("${mxy.chat.purge.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * 批次之间的休眠时间
+     */
+    @Value("${mxy.chat.purge.throttle:100ms}")
+    private Duration throttle;
+
+    /**
+     * 单次运行的时长上限
+     */
+    @Value("${mxy.chat.purge.max-duration:30m}")
+    private Duration maxDuration;
+
+    /**
+     * 是否开启滚动摘要，开启时只清理已合并进摘要的消息
+     */
+    @Value("${mxy.chat.memory.compaction.enabled:false}")
+    private boolean compactionEnabled;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 上次因超出时长上限中断时的主键断点
+     */
+    private volatile Long resumeFromId;
+
+    private volatile ChatPurgeReportVO lastReport;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 定时触发清理，实际清理在ttlScheduledExecutor上执行，不占用调度线程
+     */
+    @Scheduled(cron = "${mxy.chat.purge.cron:0 30 3 * * ?}")
+    public void schedule() {
+        if (!enabled) {
+            return;
+        }
+        ttlScheduledExecutor.execute(() -> {
+            try {
+                purge();
+            } catch (Exception e) {
+                logger.error("软删除聊天消息清理失败", e);
+            }
+        });
+    }
+
+    /**
+     * 执行一次清理
+     *
+     * @return 清理报告，已有清理任务在运行时返回null
+     */
+    public ChatPurgeReportVO purge() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("软删除聊天消息清理正在运行，跳过本次触发");
+            return null;
+        }
+        try {
+            ChatPurgeReportVO report = doPurge();
+            lastReport = report;
+            logger.info("软删除聊天消息清理完成: mode={}, batches={}, archivedRows={}, reclaimedRows={}, elapsedMs={}, completed={}",
+                    report.getMode(), report.getBatches(), report.getArchivedRows(), report.getReclaimedRows(),
+                    report.getElapsedMs(), report.getCompleted());
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 获取最近一次清理报告
+     *
+     * @return 清理报告，尚未运行过时返回null
+     */
+    public ChatPurgeReportVO getLastReport() {
+        return lastReport;
+    }
+
+    private ChatPurgeReportVO doPurge() {
+        boolean archive = MODE_ARCHIVE.equalsIgnoreCase(mode);
+        long startNanos = System.nanoTime();
+        LocalDateTime before = LocalDateTime.now().minus(retention);
+
+        ChatPurgeReportVO report = new ChatPurgeReportVO();
+        report.setMode(archive ? MODE_ARCHIVE : "delete");
+        report.setStartTime(LocalDateTime.now());
+        report.setRetentionBefore(before);
+
+        long batches = 0;
+        long archivedRows = 0;
+        long reclaimedRows = 0;
+        boolean completed = true;
+
+        Long minId = chatMessagesDAO.getMinId();
+        Long maxId = chatMessagesDAO.getMaxId();
+        if (minId != null && maxId != null) {
+            long fromId = resumeFromId != null ? Math.max(resumeFromId, minId) : minId;
+            while (fromId <= maxId) {
+                if (System.nanoTime() - startNanos > maxDuration.toNanos()) {
+                    completed = false;
+                    break;
+                }
+                long rangeFrom = fromId;
+                long rangeTo = fromId + batchSize;
+                int[] counts = transactionTemplate.execute(status -> new int[]{
+                        archive ? chatMessagesDAO.archiveDeletedRange(rangeFrom, rangeTo, before, compactionEnabled) : 0,
+                        chatMessagesDAO.purgeDeletedRange(rangeFrom, rangeTo, before, compactionEnabled)
+                });
+                batches++;
+                if (counts != null) {
+                    archivedRows += counts[0];
+                    reclaimedRows += counts[1];
+                }
+                fromId = rangeTo;
+                if (!sleepBetweenBatches()) {
+                    completed = false;
+                    break;
+                }
+            }
+            resumeFromId = completed ? null : fromId;
+        }
+
+        report.setBatches(batches);
+        report.setArchivedRows(archivedRows);
+        report.setReclaimedRows(reclaimedRows);
+        report.setCompleted(completed);
+        report.setElapsedMs(Duration.ofNanos(System.nanoTime() - startNanos).toMillis());
+        return report;
+    }
+
+    private boolean sleepBetweenBatches() {
+        if (throttle.isZero()) {
+            return true;
+        }
+        try {
+            Thread.sleep(throttle.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
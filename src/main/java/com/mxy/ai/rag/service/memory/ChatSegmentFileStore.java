@@ -0,0 +1,140 @@
+package com.mxy.ai.rag.service.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 冷对话段文件存储
+ * 只追加写入的本地段文件，每条记录是一个对话的压缩消息数据，由调用方在索引表中记录文件名、偏移量和长度：
+ * - 写入时追加到当前段文件末尾并刷盘，段文件超过上限后滚动到下一个文件
+ * - 读取时按偏移量和长度内存映射读取，不需要把整个段文件读入内存
+ * - 记录一旦写入不再修改，回迁后的记录成为死数据，段文件不做原地压缩
+ *
+ * @author Mxy
+ */
+public class ChatSegmentFileStore {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+
+    private final long maxSegmentBytes;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private Path currentSegment;
+
+    /**
+     * 构造函数
+     *
+     * @param directory       段文件目录
+     * @param maxSegmentBytes 单个段文件的大小上限
+     */
+    public ChatSegmentFileStore(Path directory, long maxSegmentBytes) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param record 记录内容
+     * @return 记录位置
+     * @throws IOException 写入失败
+     */
+    public SegmentPointer append(byte[] record) throws IOException {
+        appendLock.lock();
+        try {
+            Path segment = segmentFor(record.length);
+            try (FileChannel channel = FileChannel.open(segment,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long offset = channel.size();
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                // 索引落库前必须保证记录已经持久化
+                channel.force(true);
+                return new SegmentPointer(segment.getFileName().toString(), offset, record.length);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 按位置读取一条记录（内存映射读取）
+     *
+     * @param segmentFile 段文件名
+     * @param offset      起始偏移量
+     * @param length      记录长度
+     * @return 记录内容
+     * @throws IOException 读取失败
+     */
+    public byte[] read(String segmentFile, long offset, int length) throws IOException {
+        Path segment = directory.resolve(segmentFile).normalize();
+        if (!segment.startsWith(directory)) {
+            throw new IOException("非法的段文件名: " + segmentFile);
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            byte[] record = new byte[length];
+            buffer.get(record);
+            return record;
+        }
+    }
+
+    /**
+     * 选择本次写入的段文件，当前段文件写入后会超过上限时滚动到下一个文件
+     */
+    private Path segmentFor(int recordLength) throws IOException {
+        if (currentSegment == null) {
+            Files.createDirectories(directory);
+            currentSegment = latestSegment();
+        }
+        if (Files.exists(currentSegment) && Files.size(currentSegment) > 0
+                && Files.size(currentSegment) + recordLength > maxSegmentBytes) {
+            currentSegment = segmentPath(segmentNumber(currentSegment) + 1);
+        }
+        return currentSegment;
+    }
+
+    private Path latestSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .max((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+                    .orElse(segmentPath(1));
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 记录位置
+     *
+     * @param segmentFile 段文件名
+     * @param offset      起始偏移量
+     * @param length      记录长度
+     */
+    public record SegmentPointer(String segmentFile, long offset, int length) {
+    }
+}
@@ -1,13 +1,21 @@
 package com.mxy.ai.rag.service.memory;
 
+import com.mxy.ai.rag.datasource.dao.ChatConversationsDAO;
 import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import com.mxy.ai.rag.datasource.dao.ChatSessionsDAO;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
 import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import com.mxy.ai.rag.datasource.entity.ChatSessionsDO;
+import com.mxy.ai.rag.util.UserContextUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.messages.*;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
-import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
@@ -25,16 +33,44 @@ import java.util.stream.Collectors;
  * @author Mxy
  */
 @Component
-public class CustomChatMemoryRepository implements ChatMemoryRepository {
+public class CustomChatMemoryRepository implements ChatMemoryWindowStore {
 
     private static final Logger logger = LoggerFactory.getLogger(CustomChatMemoryRepository.class);
     private static final int DEFAULT_MAX_MESSAGES = 10;
+    private static final int CONVERSATION_ID_PAGE_SIZE = 1000;
+    private static final int MAX_FORK_DEPTH = 32;
+    private static final long UNKNOWN_SESSION_ID = -1L;
+    private static final String DEFAULT_AUTHOR = "system";
 
     @Resource
     private ChatMessagesDAO chatMessagesDAO;
 
+    @Resource
+    private ChatConversationsDAO chatConversationsDAO;
+
+    @Resource
+    private ChatSessionsDAO chatSessionsDAO;
+
+    @Resource
+    private ChatMessageGroupCommitWriter groupCommitWriter;
+
+    @Resource
+    private ChatMemoryCompactor chatMemoryCompactor;
+
+    @Resource
+    private ChatColdTierService chatColdTierService;
+
+    /**
+     * 每次最多加载的最近消息数（按token预算选取窗口时作为上限）
+     */
+    @Value("${mxy.chat.memory.max-messages:10}")
+    private int maxMessages = DEFAULT_MAX_MESSAGES;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
     /**
      * 查找所有对话ID
+     * 从对话注册表按页读取，不再对消息表做DISTINCT全表扫描；对话较多时优先使用iterateConversationIds
      *
      * @return 对话ID列表
      */
@@ -43,13 +79,54 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
         logger.debug("查找所有对话ID");
 
         try {
-            return chatMessagesDAO.findConversationIds();
+            List<String> conversationIds = new ArrayList<>();
+            iterateConversationIds(CONVERSATION_ID_PAGE_SIZE).forEachRemaining(conversationIds::add);
+            return conversationIds;
         } catch (Exception e) {
             logger.error("查找对话ID失败", e);
             return Collections.emptyList();
         }
     }
 
+    /**
+     * 按对话ID游标分页遍历对话注册表
+     *
+     * @param pageSize 每页数量
+     * @return 对话ID迭代器，遍历到页尾时才查询下一页
+     */
+    @Override
+    public Iterator<String> iterateConversationIds(int pageSize) {
+        Assert.isTrue(pageSize > 0, "pageSize must be positive");
+
+        return new Iterator<>() {
+
+            private List<String> page = chatConversationsDAO.getConversationIdsAfter(null, pageSize);
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                if (index < page.size()) {
+                    return true;
+                }
+                if (page.size() < pageSize) {
+                    return false;
+                }
+                page = chatConversationsDAO.getConversationIdsAfter(page.get(page.size() - 1), pageSize);
+                index = 0;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(index++);
+            }
+        };
+    }
+
     /**
      * 根据对话ID查找消息列表
      *
@@ -63,8 +140,14 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
         logger.debug("根据对话ID查找消息: conversationId={}", conversationId);
 
         try {
+            // 组提交模式下先落库本对话尚未写入的消息，保证读到自己刚写入的内容
+            flushPendingWrites(conversationId);
+
+            // 已迁移到冷存储的对话先回迁到热表
+            chatColdTierService.rehydrateIfCold(conversationId);
+
             // 查询消息历史
-            List<Message> messages = getMessagesByConversationId(conversationId, DEFAULT_MAX_MESSAGES);
+            List<Message> messages = getMessagesByConversationId(conversationId, maxMessages);
 
             logger.debug("成功查找消息: conversationId={}, messageCount={}", conversationId, messages.size());
             return messages;
@@ -77,10 +160,14 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
 
     /**
      * 保存所有消息到指定对话
-     * 修正实现：正确实现MessageWindowChatMemory的语义
-     * - 保存当前窗口内的所有消息
-     * - 删除窗口外的旧消息（但保留系统消息）
-     * - 这样既保持了消息窗口管理，又避免了数据丢失
+     * 基于对话的消息序号水位线增量保存：
+     * - 已落库的消息在metadata中带有序号，只追加没有序号的新消息
+     * - 新消息从水位线之后依次分配序号，并推进水位线
+     * - 以窗口中最早一条非系统消息的序号为界，一次范围软删除窗口外的旧消息（保留系统消息）
+     * 每轮对话的数据库开销与对话历史长度无关。
+     * 水位线按读到的旧值乐观推进，多节点并发写同一对话时失败的一方抛出OptimisticLockingFailureException并回滚。
+     * 启用组提交时，先预占写入队列名额（队列满时在推进水位线前拒绝），水位线仍在当前事务内同步推进，
+     * 消息插入和窗口裁剪在事务提交后作为一个写入交给组提交写入器批量落库
      *
      * @param conversationId 对话ID
      * @param messages       当前窗口内的消息列表
@@ -88,31 +175,79 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
     @Override
     @Transactional
     public void saveAll(String conversationId, List<Message> messages) {
+        saveWindow(conversationId, messages);
+    }
+
+    /**
+     * 保存消息窗口并返回新消息已带上序号的窗口
+     *
+     * @param conversationId 对话ID
+     * @param messages       当前窗口内的消息列表
+     * @return 保存后的窗口
+     */
+    @Override
+    @Transactional
+    public List<Message> saveWindow(String conversationId, List<Message> messages) {
+        return doSaveWindow(conversationId, messages, null);
+    }
+
+    /**
+     * 在调用方已读取的窗口上保存，水位线已不等于读取窗口时的值则抛出OptimisticLockingFailureException
+     *
+     * @param conversationId  对话ID
+     * @param messages        当前窗口内的消息列表
+     * @param expectedLastSeq 读取窗口时对话的消息水位线
+     * @return 保存后的窗口
+     */
+    @Override
+    @Transactional
+    public List<Message> saveWindow(String conversationId, List<Message> messages, long expectedLastSeq) {
+        return doSaveWindow(conversationId, messages, expectedLastSeq);
+    }
+
+    private List<Message> doSaveWindow(String conversationId, List<Message> messages, Long expectedLastSeq) {
         Assert.hasText(conversationId, "conversationId cannot be null or empty");
         Assert.notNull(messages, "messages cannot be null");
         Assert.noNullElements(messages, "messages cannot contain null elements");
         
         logger.debug("保存消息窗口: conversationId={}, windowSize={}", conversationId, messages.size());
 
+        // 组提交模式下先预占队列名额，队列满时在提交任何数据之前拒绝本轮写入
+        ChatMessageGroupCommitWriter.Reservation reservation =
+                isGroupCommitEnabled() ? groupCommitWriter.reserve(conversationId) : null;
         try {
-            // 获取所有现有消息
-            List<Message> existingMessages = getMessagesByConversationId(conversationId, Integer.MAX_VALUE);
-            
             // 找出需要保存的新消息
-            List<Message> newMessages = findNewMessages(existingMessages, messages);
-            
+            List<Message> newMessages = findNewMessages(messages);
+
+            List<Message> window = messages;
             if (!newMessages.isEmpty()) {
-                // 保存新消息
-                saveMessagesWithTimestampSequence(conversationId, newMessages);
+                // 乐观推进水位线，其他节点已写入同一对话时回滚，由上层重新读取窗口后重试
+                long lastSeq = chatConversationsDAO.getOrCreateLastSeq(conversationId);
+                if (expectedLastSeq != null && lastSeq != expectedLastSeq) {
+                    throw new OptimisticLockingFailureException("对话窗口读取后已被其他写入更新: conversationId=" + conversationId
+                            + ", expectedLastSeq=" + expectedLastSeq + ", lastSeq=" + lastSeq);
+                }
+                if (!chatConversationsDAO.compareAndSetLastSeq(conversationId, lastSeq, lastSeq + newMessages.size())) {
+                    throw new OptimisticLockingFailureException("对话水位线已被并发更新: conversationId=" + conversationId);
+                }
+                // 从水位线之后分配序号并保存新消息
+                window = saveMessagesWithSequence(conversationId, messages, lastSeq, reservation);
                 logger.debug("保存新增消息: conversationId={}, newMessageCount={}", conversationId, newMessages.size());
             }
             
             // 清理窗口外的旧消息（保留系统消息）
-            cleanupOldMessages(conversationId, messages);
+            cleanupOldMessages(conversationId, window, reservation);
+            if (reservation != null) {
+                groupCommitWriter.submit(reservation);
+            }
             
             logger.info("成功更新消息窗口: conversationId={}, windowSize={}", conversationId, messages.size());
+            return window;
 
         } catch (Exception e) {
+            if (reservation != null) {
+                groupCommitWriter.cancel(reservation);
+            }
             logger.error("保存消息窗口失败: conversationId={}", conversationId, e);
             throw e;
         }
@@ -130,8 +265,12 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
         logger.info("删除聊天记忆: conversationId={}", conversationId);
 
         try {
-            // 软删除消息
+            // 先落库尚未写入的消息，避免删除之后又被写回
+            flushPendingWrites(conversationId);
+
+            // 软删除消息并在注册表中标记对话已删除，清空前的消息不再参与滚动摘要
             deleteMessagesByConversationId(conversationId);
+            chatConversationsDAO.markDeleted(conversationId);
             logger.info("成功删除聊天记忆: conversationId={}", conversationId);
 
         } catch (Exception e) {
@@ -141,11 +280,12 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
     }
 
     /**
-     * 根据对话ID获取消息列表
+     * 根据对话ID获取最近的消息窗口
      * 按照Spring AI标准：按时间升序返回消息
      */
-    private List<Message> getMessagesByConversationId(String conversationId, Integer maxMessages) {
-        List<ChatMessagesDO> messageDOs = chatMessagesDAO.getMessagesByConversationId(conversationId, maxMessages);
+    private List<Message> getMessagesByConversationId(String conversationId, int maxMessages) {
+        List<ChatMessagesDO> messageDOs = withInheritedMessages(conversationId,
+                chatMessagesDAO.getMessageWindowByConversationId(conversationId, maxMessages), maxMessages);
 
         // 转换为Spring AI Message对象
         return messageDOs.stream()
@@ -155,6 +295,66 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
     }
 
 
+    /**
+     * 分支对话自身的消息不足一个窗口时，沿父对话链向上补齐继承的消息
+     * 分支时不复制父对话的消息，各级对话的序号区间互不重叠（分支对话的序号接在分支点之后），
+     * 补齐的消息排在系统消息之后、自身消息之前；分支点序号为空时不再向上补齐
+     */
+    private List<ChatMessagesDO> withInheritedMessages(String conversationId, List<ChatMessagesDO> window,
+                                                       int maxMessages) {
+        int systemCount = (int) window.stream().filter(m -> "SYSTEM".equals(m.getMessageType())).count();
+        int remaining = maxMessages - (window.size() - systemCount);
+        if (remaining <= 0) {
+            return window;
+        }
+        ChatConversationsDO conversation = chatConversationsDAO.getByConversationId(conversationId);
+        if (conversation == null || conversation.getParentConversationId() == null || conversation.getForkSeq() == null) {
+            return window;
+        }
+
+        List<ChatMessagesDO> inherited = new ArrayList<>();
+        long maxSeq = conversation.getForkSeq();
+        for (int depth = 0; depth < MAX_FORK_DEPTH; depth++) {
+            String parentConversationId = conversation.getParentConversationId();
+            chatColdTierService.rehydrateIfCold(parentConversationId);
+            List<ChatMessagesDO> ancestorMessages = chatMessagesDAO.getInheritedMessages(parentConversationId, maxSeq, remaining);
+            inherited.addAll(0, ancestorMessages);
+            remaining -= ancestorMessages.size();
+            if (remaining <= 0) {
+                break;
+            }
+
+            conversation = chatConversationsDAO.getByConversationId(parentConversationId);
+            if (conversation == null || conversation.getParentConversationId() == null || conversation.getForkSeq() == null) {
+                break;
+            }
+            maxSeq = Math.min(maxSeq, conversation.getForkSeq());
+        }
+        if (inherited.isEmpty()) {
+            return window;
+        }
+
+        List<ChatMessagesDO> merged = new ArrayList<>(window.size() + inherited.size());
+        merged.addAll(window.subList(0, systemCount));
+        merged.addAll(inherited);
+        merged.addAll(window.subList(systemCount, window.size()));
+        logger.debug("补齐分支对话继承的消息: conversationId={}, inheritedCount={}", conversationId, inherited.size());
+        return merged;
+    }
+
+    /**
+     * 组提交模式下，若该对话还有未落库的写入则立即刷盘
+     */
+    private void flushPendingWrites(String conversationId) {
+        if (isGroupCommitEnabled() && groupCommitWriter.hasPending(conversationId)) {
+            groupCommitWriter.flush();
+        }
+    }
+
+    private boolean isGroupCommitEnabled() {
+        return groupCommitWriter != null && groupCommitWriter.isEnabled();
+    }
+
     /**
      * 删除指定对话的所有消息（软删除）
      */
@@ -164,61 +364,42 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
 
     /**
      * 找出需要保存的新消息
-     * 比较现有消息和当前窗口消息，找出新增的消息
+     * 从数据库读出的消息在metadata中带有序号，没有序号的即为本轮新增的消息
      */
-    private List<Message> findNewMessages(List<Message> existingMessages, List<Message> windowMessages) {
-        List<Message> newMessages = new ArrayList<>();
-        
-        // 如果窗口消息数量大于现有消息数量，说明有新消息
-        if (windowMessages.size() > existingMessages.size()) {
-            // 取出新增的消息（从现有消息数量开始到窗口消息结束）
-            newMessages = windowMessages.subList(existingMessages.size(), windowMessages.size());
-        }
-        
-        return newMessages;
+    private List<Message> findNewMessages(List<Message> windowMessages) {
+        return windowMessages.stream()
+                .filter(message -> ChatMessageMetadata.getSeq(message) == null)
+                .collect(Collectors.toList());
     }
     
     /**
      * 清理窗口外的旧消息（保留系统消息）
-     * 根据MessageWindowChatMemory的语义，删除不在当前窗口内的旧消息，但保留系统消息
+     * 窗口中最早一条非系统消息之前的非系统消息都已被MessageWindowChatMemory淘汰，按序号范围一次软删除
      */
-    private void cleanupOldMessages(String conversationId, List<Message> windowMessages) {
+    private void cleanupOldMessages(String conversationId, List<Message> windowMessages,
+                                    ChatMessageGroupCommitWriter.Reservation reservation) {
         try {
-            // 获取所有现有消息
-            List<ChatMessagesDO> allMessages = chatMessagesDAO.getMessagesByConversationId(conversationId, Integer.MAX_VALUE);
-            
-            // 如果现有消息数量小于等于窗口大小，无需清理
-            if (allMessages.size() <= windowMessages.size()) {
+            Long windowStartSeq = windowMessages.stream()
+                    .filter(message -> !(message instanceof SystemMessage))
+                    .map(ChatMessageMetadata::getSeq)
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElse(null);
+
+            // 窗口内没有非系统消息时无法确定边界，不做清理
+            if (windowStartSeq == null) {
                 return;
             }
-            
-            // 计算需要删除的消息数量（保留窗口大小的消息）
-            int messagesToDelete = allMessages.size() - windowMessages.size();
-            
-            // 找出最旧的非系统消息进行删除
-            List<Long> messageIdsToDelete = new ArrayList<>();
-            int deletedCount = 0;
-            
-            for (ChatMessagesDO messageDO : allMessages) {
-                // 跳过系统消息
-                if ("SYSTEM".equals(messageDO.getMessageType())) {
-                    continue;
-                }
-                
-                messageIdsToDelete.add(messageDO.getId());
-                deletedCount++;
-                
-                // 达到需要删除的数量就停止
-                if (deletedCount >= messagesToDelete) {
-                    break;
-                }
-            }
-            
-            // 执行删除
-            if (!messageIdsToDelete.isEmpty()) {
-                chatMessagesDAO.deleteMessagesByIds(messageIdsToDelete);
-                logger.debug("清理旧消息: conversationId={}, deletedCount={}", conversationId, messageIdsToDelete.size());
+
+            if (reservation != null) {
+                reservation.trimBefore(windowStartSeq);
+            } else {
+                chatMessagesDAO.trimWindow(conversationId, windowStartSeq);
             }
+            logger.debug("清理旧消息: conversationId={}, windowStartSeq={}", conversationId, windowStartSeq);
+
+            // 被淘汰的消息由后台压缩进滚动摘要
+            chatMemoryCompactor.onWindowTrimmed(conversationId);
             
         } catch (Exception e) {
             logger.warn("清理旧消息失败: conversationId={}", conversationId, e);
@@ -227,24 +408,91 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
     }
 
     /**
-     * 保存消息列表（带时间戳序列，确保消息顺序）
+     * 保存窗口中的新消息（带时间戳序列和对话内序号，确保消息顺序）
+     *
+     * @param conversationId 对话ID
+     * @param windowMessages 当前窗口内的消息列表
+     * @param lastSeq        保存前的序号水位线
+     * @param reservation    组提交写入预占，未启用组提交时为null
+     * @return 新消息已带上序号的窗口
      */
-    private void saveMessagesWithTimestampSequence(String conversationId, List<Message> messages) {
+    private List<Message> saveMessagesWithSequence(String conversationId, List<Message> windowMessages, long lastSeq,
+                                                   ChatMessageGroupCommitWriter.Reservation reservation) {
         List<ChatMessagesDO> messageDOs = new ArrayList<>();
+        List<Message> window = new ArrayList<>(windowMessages.size());
         long baseTimestamp = System.currentTimeMillis();
-
-        for (int i = 0; i < messages.size(); i++) {
-            Message message = messages.get(i);
-            ChatMessagesDO messageDO = convertToMessageDO(-1L, conversationId, message, baseTimestamp + i);
+        long seq = lastSeq;
+        Long sessionId = resolveSessionId(conversationId);
+        String author = resolveAuthor(sessionId);
+
+        for (Message message : windowMessages) {
+            if (ChatMessageMetadata.getSeq(message) != null) {
+                window.add(message);
+                continue;
+            }
+            seq++;
+            int tokenCount = countTokens(message);
+            ChatMessagesDO messageDO = convertToMessageDO(sessionId, conversationId, author, message, seq, tokenCount,
+                    baseTimestamp + messageDOs.size());
             if (messageDO != null) {
                 messageDOs.add(messageDO);
             }
+            window.add(ChatMessageMetadata.withMetadata(message,
+                    Map.of(ChatMessageMetadata.MESSAGE_SEQ, seq, ChatMessageMetadata.TOKEN_COUNT, tokenCount)));
         }
 
-        if (!messageDOs.isEmpty()) {
+        if (messageDOs.isEmpty()) {
+            return window;
+        }
+        if (reservation != null) {
+            // 序号已在水位线内分配好，消息随预占在事务提交后交给组提交写入器与其他对话的写入合并落库
+            reservation.addMessages(messageDOs);
+            logger.debug("提交组提交写入: conversationId={}, count={}", conversationId, messageDOs.size());
+        } else {
             chatMessagesDAO.saveBatch(messageDOs);
             logger.debug("批量保存消息: conversationId={}, count={}", conversationId, messageDOs.size());
         }
+        return window;
+    }
+
+    /**
+     * 解析消息所属的会话ID：对话ID即会话ID的字符串形式，非数字的对话ID记为-1
+     */
+    private static Long resolveSessionId(String conversationId) {
+        try {
+            return Long.valueOf(conversationId);
+        } catch (NumberFormatException e) {
+            return UNKNOWN_SESSION_ID;
+        }
+    }
+
+    /**
+     * 解析消息作者：优先使用随请求传递的用户上下文；
+     * 流式回答在响应线程上落库时用户上下文可能已经丢失，此时回查会话创建人
+     */
+    private String resolveAuthor(Long sessionId) {
+        String currentUserId = UserContextUtil.getCurrentUserId();
+        if (StringUtils.hasText(currentUserId)) {
+            return currentUserId;
+        }
+        if (sessionId != UNKNOWN_SESSION_ID) {
+            ChatSessionsDO session = chatSessionsDAO.getById(sessionId);
+            if (session != null && StringUtils.hasText(session.getCreator())) {
+                return session.getCreator();
+            }
+        }
+        return DEFAULT_AUTHOR;
+    }
+
+    /**
+     * 计算消息的token数，上层（如按token预算的聊天记忆）已计算过的直接复用
+     */
+    private int countTokens(Message message) {
+        Integer tokenCount = ChatMessageMetadata.getTokenCount(message);
+        if (tokenCount != null) {
+            return tokenCount;
+        }
+        return StringUtils.hasText(message.getText()) ? tokenCountEstimator.estimate(message.getText()) : 0;
     }
 
     /**
@@ -257,6 +505,11 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
 
         String messageType = messageDO.getMessageType();
         String content = messageDO.getContent();
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(ChatMessageMetadata.MESSAGE_SEQ, messageDO.getMessageSeq() != null ? messageDO.getMessageSeq() : 0L);
+        if (messageDO.getTokenCount() != null) {
+            metadata.put(ChatMessageMetadata.TOKEN_COUNT, messageDO.getTokenCount());
+        }
 
         // 根据messageType转换为对应的Spring AI Message类型
         // USER: 用户输入消息 -> UserMessage
@@ -264,21 +517,22 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
         // SYSTEM: 系统提示消息 -> SystemMessage
         // TOOL: 工具调用消息 -> ToolResponseMessage
         return switch (messageType.toUpperCase()) {
-            case "USER" -> new UserMessage(content);
-            case "ASSISTANT" -> new AssistantMessage(content);
-            case "SYSTEM" -> new SystemMessage(content);
-            case "TOOL" -> new ToolResponseMessage(List.of()); // 按照Spring AI标准，内容为空
+            case "USER" -> UserMessage.builder().text(content).metadata(metadata).build();
+            case "ASSISTANT" -> new AssistantMessage(content, metadata);
+            case "SYSTEM" -> SystemMessage.builder().text(content).metadata(metadata).build();
+            case "TOOL" -> new ToolResponseMessage(List.of(), metadata); // 按照Spring AI标准，内容为空
             default -> {
                 logger.warn("未知的消息类型: {}", messageType);
-                yield new UserMessage(content); // 默认作为用户消息
+                yield UserMessage.builder().text(content).metadata(metadata).build(); // 默认作为用户消息
             }
         };
     }
 
     /**
-     * 将Spring AI Message转换为ChatMessagesDO（带时间戳序列）
+     * 将Spring AI Message转换为ChatMessagesDO（带会话ID、作者、对话内序号、token数和时间戳序列）
      */
-    private ChatMessagesDO convertToMessageDO(Long sessionId, String conversationId, Message message, long timestampSequence) {
+    private ChatMessagesDO convertToMessageDO(Long sessionId, String conversationId, String author, Message message,
+                                              long messageSeq, int tokenCount, long timestampSequence) {
         if (message == null) {
             return null;
         }
@@ -286,7 +540,9 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
         ChatMessagesDO messageDO = new ChatMessagesDO();
         messageDO.setSessionId(sessionId);
         messageDO.setConversationId(conversationId);
+        messageDO.setMessageSeq(messageSeq);
         messageDO.setContent(message.getText());
+        messageDO.setTokenCount(tokenCount);
         messageDO.setDeleted(0);
         
         // 使用时间戳序列确保消息顺序
@@ -296,8 +552,8 @@ public class CustomChatMemoryRepository implements ChatMemoryRepository {
         );
         messageDO.setGmtCreate(createTime);
         messageDO.setGmtModified(createTime);
-        messageDO.setCreator("system");
-        messageDO.setModifier("system");
+        messageDO.setCreator(author);
+        messageDO.setModifier(author);
 
         // 根据Spring AI消息类型设置message_type字段
         // USER: 用户输入消息
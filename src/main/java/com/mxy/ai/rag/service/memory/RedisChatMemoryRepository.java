@@ -0,0 +1,232 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.redisson.api.RList;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 基于Redis的集群共享聊天记忆仓库
+ * 装饰ChatMemoryWindowStore，把每个对话的当前消息窗口存放在Redis列表中并设置过期时间：
+ * - 读取时优先读Redis，未命中再回源MySQL，仅在Redis中仍没有窗口时回填，不会覆盖其他节点在回源期间写入的新窗口
+ * - 保存时先写MySQL，再用落库后的窗口整体替换Redis列表
+ * - 窗口旁另存窗口内最大的消息序号，替换和回填都由Lua脚本原子比较序号，较旧的窗口不会覆盖较新的窗口
+ * - Redis异常时降级为直接读写MySQL，不影响对话
+ *
+ * @author Mxy
+ */
+public class RedisChatMemoryRepository implements ChatMemoryWindowStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisChatMemoryRepository.class);
+
+    private static final String KEY_PREFIX = "mxy:chat:memory:";
+
+    private static final String SEQ_KEY_SUFFIX = ":seq";
+
+    /**
+     * 原子写入窗口：KEYS[1]为窗口列表，KEYS[2]为窗口最大序号；
+     * ARGV[1]为1时只在窗口不存在时写入（回填），ARGV[2]为新窗口最大序号，ARGV[3]为过期毫秒数，其后为窗口内容。
+     * 已有窗口的序号大于新窗口时放弃写入
+     */
+    private static final String WRITE_WINDOW_SCRIPT =
+            "if ARGV[1] == '1' and redis.call('EXISTS', KEYS[1]) == 1 then return 0 end "
+                    + "local current = tonumber(redis.call('GET', KEYS[2])) "
+                    + "if current and current > tonumber(ARGV[2]) then return 0 end "
+                    + "redis.call('DEL', KEYS[1]) "
+                    + "if #ARGV > 3 then redis.call('RPUSH', KEYS[1], unpack(ARGV, 4)) end "
+                    + "redis.call('SET', KEYS[2], ARGV[2], 'PX', ARGV[3]) "
+                    + "redis.call('PEXPIRE', KEYS[1], ARGV[3]) "
+                    + "return 1";
+
+    private final RedissonClient redissonClient;
+
+    private final ChatMemoryWindowStore delegate;
+
+    private final ObjectMapper objectMapper;
+
+    private final Duration ttl;
+
+    /**
+     * 构造函数
+     *
+     * @param redissonClient Redis客户端
+     * @param delegate       下层聊天记忆存储（MySQL）
+     * @param objectMapper   消息序列化
+     * @param ttl            窗口在Redis中的过期时间，每次保存后重置
+     */
+    public RedisChatMemoryRepository(RedissonClient redissonClient, ChatMemoryWindowStore delegate,
+                                     ObjectMapper objectMapper, Duration ttl) {
+        Assert.notNull(redissonClient, "redissonClient cannot be null");
+        Assert.notNull(delegate, "delegate cannot be null");
+        this.redissonClient = redissonClient;
+        this.delegate = delegate;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        logger.info("初始化Redis共享聊天记忆: ttl={}", ttl);
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        return delegate.findConversationIds();
+    }
+
+    @Override
+    public Iterator<String> iterateConversationIds(int pageSize) {
+        return delegate.iterateConversationIds(pageSize);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+
+        try {
+            RList<String> list = redissonClient.getList(key(conversationId), StringCodec.INSTANCE);
+            List<String> values = list.readAll();
+            if (!values.isEmpty()) {
+                return decode(values);
+            }
+        } catch (Exception e) {
+            logger.warn("读取Redis聊天记忆失败，回源数据库: conversationId={}", conversationId, e);
+        }
+
+        List<Message> messages = delegate.findByConversationId(conversationId);
+        if (!messages.isEmpty()) {
+            writeWindow(conversationId, messages, true);
+        }
+        return messages;
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        saveWindow(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> saveWindow(String conversationId, List<Message> messages) {
+        return shareSavedWindow(conversationId, () -> delegate.saveWindow(conversationId, messages));
+    }
+
+    @Override
+    public List<Message> saveWindow(String conversationId, List<Message> messages, long expectedLastSeq) {
+        return shareSavedWindow(conversationId, () -> delegate.saveWindow(conversationId, messages, expectedLastSeq));
+    }
+
+    /**
+     * 写穿到数据库后用落库后的窗口替换Redis中的共享窗口
+     */
+    private List<Message> shareSavedWindow(String conversationId, Supplier<List<Message>> save) {
+        List<Message> window;
+        try {
+            window = save.get();
+        } catch (RuntimeException e) {
+            // 保存失败（如水位线已被其他节点推进）时丢弃共享窗口，重试时回源数据库
+            deleteWindow(conversationId);
+            throw e;
+        }
+        writeWindow(conversationId, window, false);
+        return window;
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        try {
+            delegate.deleteByConversationId(conversationId);
+        } finally {
+            deleteWindow(conversationId);
+        }
+    }
+
+    @Override
+    public void evict(String conversationId) {
+        deleteWindow(conversationId);
+        delegate.evict(conversationId);
+    }
+
+    /**
+     * 用新的窗口整体替换Redis列表并重置过期时间，已有窗口更新时放弃写入
+     *
+     * @param backfill 为true时只在Redis中没有窗口时写入
+     */
+    private void writeWindow(String conversationId, List<Message> window, boolean backfill) {
+        try {
+            List<Object> args = new ArrayList<>(window.size() + 3);
+            args.add(backfill ? "1" : "0");
+            args.add(String.valueOf(ChatMessageMetadata.maxSeq(window)));
+            args.add(String.valueOf(ttl.toMillis()));
+            args.addAll(encode(window));
+            Long written = redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE,
+                    WRITE_WINDOW_SCRIPT, RScript.ReturnType.INTEGER,
+                    List.<Object>of(key(conversationId), seqKey(conversationId)), args.toArray());
+            if (written == null || written == 0) {
+                logger.debug("Redis中已有更新的聊天记忆窗口，跳过写入: conversationId={}, backfill={}", conversationId, backfill);
+            }
+        } catch (Exception e) {
+            logger.warn("写入Redis聊天记忆失败: conversationId={}", conversationId, e);
+            // 写入失败时删除旧窗口，避免其他节点读到过期数据
+            deleteWindow(conversationId);
+        }
+    }
+
+    private void deleteWindow(String conversationId) {
+        try {
+            redissonClient.getKeys().delete(key(conversationId), seqKey(conversationId));
+        } catch (Exception e) {
+            logger.warn("删除Redis聊天记忆失败: conversationId={}", conversationId, e);
+        }
+    }
+
+    private List<String> encode(List<Message> window) throws JsonProcessingException {
+        List<String> values = new ArrayList<>(window.size());
+        for (Message message : window) {
+            StoredMessage storedMessage = new StoredMessage(message.getMessageType().name(), message.getText(),
+                    ChatMessageMetadata.persistentMetadata(message));
+            values.add(objectMapper.writeValueAsString(storedMessage));
+        }
+        return values;
+    }
+
+    private List<Message> decode(List<String> values) throws JsonProcessingException {
+        List<Message> messages = new ArrayList<>(values.size());
+        for (String value : values) {
+            StoredMessage storedMessage = objectMapper.readValue(value, StoredMessage.class);
+            messages.add(ChatMessageMetadata.create(MessageType.valueOf(storedMessage.type()),
+                    storedMessage.content(), storedMessage.metadata()));
+        }
+        return messages;
+    }
+
+    /**
+     * 窗口列表的key，对话ID放在hash tag中，保证与序号key落在同一个集群槽位
+     */
+    private static String key(String conversationId) {
+        return KEY_PREFIX + "{" + conversationId + "}";
+    }
+
+    private static String seqKey(String conversationId) {
+        return key(conversationId) + SEQ_KEY_SUFFIX;
+    }
+
+    /**
+     * Redis中存储的消息结构
+     *
+     * @param type     消息类型
+     * @param content  消息内容
+     * @param metadata 需要共享的元数据（如消息序号）
+     */
+    record StoredMessage(String type, String content, Map<String, Object> metadata) {
+    }
+}
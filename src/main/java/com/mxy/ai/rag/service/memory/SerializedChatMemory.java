@@ -0,0 +1,209 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按对话串行化写入的聊天记忆
+ * 装饰ChatMemory，同一对话的并发写入（多个浏览器标签页、客户端重试）不再各自读取窗口、计算新消息并写回：
+ * - 写入先进入该对话的待写队列，再竞争按对话ID分段的锁
+ * - 拿到锁的线程一次取走队列中所有待写消息，合并为一次读取和一次保存，其余线程等到锁后发现已被代为写入即直接返回
+ * - 多节点并发写同一对话时由仓库层的水位线乐观校验兜底，校验失败时重新读取窗口后重试
+ * - 调用方带着已读取的窗口追加且没有并发写入可合并时，直接交给下层在该窗口上追加
+ *
+ * @author Mxy
+ */
+public class SerializedChatMemory implements WindowAwareChatMemory {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerializedChatMemory.class);
+
+    private final ChatMemory delegate;
+
+    private final ReentrantLock[] stripes;
+
+    private final int maxRetries;
+
+    private final Map<String, List<PendingAdd>> pendingAdds = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param delegate   下层聊天记忆
+     * @param stripes    分段锁数量（向上取整为2的幂）
+     * @param maxRetries 乐观校验失败时的最大重试次数
+     */
+    public SerializedChatMemory(ChatMemory delegate, int stripes, int maxRetries) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        Assert.isTrue(stripes > 0, "stripes must be greater than 0");
+        Assert.isTrue(maxRetries >= 0, "maxRetries cannot be negative");
+        this.delegate = delegate;
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.maxRetries = maxRetries;
+        logger.info("初始化按对话串行化的聊天记忆: stripes={}, maxRetries={}", this.stripes.length, maxRetries);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        enqueue(conversationId, null, messages);
+    }
+
+    @Override
+    public List<Message> add(String conversationId, List<Message> window, List<Message> messages) {
+        Assert.notNull(window, "window cannot be null");
+        return enqueue(conversationId, window, messages).savedWindow;
+    }
+
+    /**
+     * 写入进入对话的待写队列，由拿到分段锁的线程合并写入
+     */
+    private PendingAdd enqueue(String conversationId, List<Message> window, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Assert.notNull(messages, "messages cannot be null");
+        Assert.noNullElements(messages, "messages cannot contain null elements");
+
+        PendingAdd pending = new PendingAdd(window, messages);
+        pendingAdds.compute(conversationId, (key, queue) -> {
+            List<PendingAdd> result = queue != null ? queue : new ArrayList<>();
+            result.add(pending);
+            return result;
+        });
+
+        ReentrantLock lock = stripeFor(conversationId);
+        lock.lock();
+        try {
+            if (!pending.completed) {
+                combine(conversationId);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (pending.failure != null) {
+            throw pending.failure;
+        }
+        return pending;
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        return delegate.get(conversationId);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = stripeFor(conversationId);
+        lock.lock();
+        try {
+            delegate.clear(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取走对话的全部待写消息，按入队顺序合并后写入一次（调用方已持有该对话的分段锁）
+     */
+    private void combine(String conversationId) {
+        List<PendingAdd> batch = pendingAdds.remove(conversationId);
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        List<Message> combined = new ArrayList<>();
+        for (PendingAdd pending : batch) {
+            combined.addAll(pending.messages);
+        }
+
+        RuntimeException failure = null;
+        try {
+            PendingAdd single = batch.size() == 1 ? batch.get(0) : null;
+            if (single != null && single.window != null && delegate instanceof WindowAwareChatMemory windowAware) {
+                // 没有可合并的并发写入时，直接在调用方已读取的窗口上追加
+                single.savedWindow = addToWindow(windowAware, conversationId, single.window, single.messages);
+            } else {
+                addWithRetry(conversationId, combined);
+            }
+            if (batch.size() > 1) {
+                logger.debug("合并并发写入: conversationId={}, writers={}, messages={}",
+                        conversationId, batch.size(), combined.size());
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (PendingAdd pending : batch) {
+            pending.failure = failure;
+            pending.completed = true;
+        }
+    }
+
+    /**
+     * 在调用方已读取的窗口上追加，下层重新读取后仍遇到并发写入时按普通写入重试
+     */
+    private List<Message> addToWindow(WindowAwareChatMemory windowAware, String conversationId,
+                                      List<Message> window, List<Message> messages) {
+        try {
+            return windowAware.add(conversationId, window, messages);
+        } catch (OptimisticLockingFailureException e) {
+            logger.info("对话水位线已被其他节点推进，改为普通写入重试: conversationId={}", conversationId);
+            addWithRetry(conversationId, messages);
+            return null;
+        }
+    }
+
+    private void addWithRetry(String conversationId, List<Message> messages) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                delegate.add(conversationId, messages);
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                logger.info("对话水位线已被其他节点推进，重新读取窗口后重试: conversationId={}, attempt={}",
+                        conversationId, attempt + 1);
+            }
+        }
+    }
+
+    private ReentrantLock stripeFor(String conversationId) {
+        int hash = conversationId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * 一次待写入请求，completed、failure和savedWindow由合并写入的线程在持有分段锁时设置，请求线程拿到同一把锁后读取
+     */
+    private static final class PendingAdd {
+
+        private final List<Message> window;
+
+        private final List<Message> messages;
+
+        private boolean completed;
+
+        private RuntimeException failure;
+
+        private List<Message> savedWindow;
+
+        private PendingAdd(List<Message> window, List<Message> messages) {
+            this.window = window;
+            this.messages = messages;
+        }
+    }
+}
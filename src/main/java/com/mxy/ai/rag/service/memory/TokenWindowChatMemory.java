@@ -0,0 +1,139 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按token预算选取窗口的聊天记忆
+ * 与MessageWindowChatMemory固定保留N条消息不同，这里保留能放进token预算的最近消息：
+ * - 系统消息始终保留，并优先占用预算；新的系统消息会替换旧的系统消息
+ * - 其余消息从最新一条往前累加，直到超出预算或达到消息条数上限，最新一条消息总会保留
+ * - 每条消息的token数在写入时计算一次并随消息落库，选取窗口时直接读取，不再重复分词
+ * - 调用方已读取过窗口时可在该窗口上直接追加，由仓库层按水位线校验窗口未过期
+ *
+ * @author Mxy
+ */
+public class TokenWindowChatMemory implements WindowAwareChatMemory {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenWindowChatMemory.class);
+
+    private final ChatMemoryRepository chatMemoryRepository;
+
+    private final TokenWindowSelector windowSelector;
+
+    /**
+     * 构造函数
+     *
+     * @param chatMemoryRepository 聊天记忆仓库
+     * @param maxTokens            窗口的token预算
+     * @param maxMessages          窗口的消息条数上限
+     */
+    public TokenWindowChatMemory(ChatMemoryRepository chatMemoryRepository, int maxTokens, int maxMessages) {
+        this(chatMemoryRepository, maxTokens, maxMessages, new JTokkitTokenCountEstimator());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param chatMemoryRepository 聊天记忆仓库
+     * @param maxTokens            窗口的token预算
+     * @param maxMessages          窗口的消息条数上限
+     * @param tokenCountEstimator  token计数器
+     */
+    public TokenWindowChatMemory(ChatMemoryRepository chatMemoryRepository, int maxTokens, int maxMessages,
+                                 TokenCountEstimator tokenCountEstimator) {
+        Assert.notNull(chatMemoryRepository, "chatMemoryRepository cannot be null");
+        this.chatMemoryRepository = chatMemoryRepository;
+        this.windowSelector = new TokenWindowSelector(maxTokens, maxMessages, tokenCountEstimator);
+        logger.info("初始化按token预算的聊天记忆: maxTokens={}, maxMessages={}", maxTokens, maxMessages);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Assert.notNull(messages, "messages cannot be null");
+        Assert.noNullElements(messages, "messages cannot contain null elements");
+
+        List<Message> memoryMessages = chatMemoryRepository.findByConversationId(conversationId);
+        List<Message> window = process(memoryMessages, withTokenCounts(messages));
+        chatMemoryRepository.saveAll(conversationId, window);
+    }
+
+    @Override
+    public List<Message> add(String conversationId, List<Message> window, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Assert.notNull(window, "window cannot be null");
+        Assert.notNull(messages, "messages cannot be null");
+        Assert.noNullElements(messages, "messages cannot contain null elements");
+
+        if (!(chatMemoryRepository instanceof ChatMemoryWindowStore windowStore)) {
+            // 无法校验窗口是否过期，按普通写入重新读取
+            add(conversationId, messages);
+            return null;
+        }
+        List<Message> newMessages = withTokenCounts(messages);
+        try {
+            return windowStore.saveWindow(conversationId, process(window, newMessages), ChatMessageMetadata.maxSeq(window));
+        } catch (OptimisticLockingFailureException e) {
+            logger.debug("已读取的窗口已过期，重新读取后保存: conversationId={}", conversationId);
+            return windowStore.saveWindow(conversationId,
+                    process(chatMemoryRepository.findByConversationId(conversationId), newMessages));
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        // 预算调小后，已落库的窗口可能超出预算，读取时同样按预算截取
+        return windowSelector.select(chatMemoryRepository.findByConversationId(conversationId));
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        chatMemoryRepository.deleteByConversationId(conversationId);
+    }
+
+    /**
+     * 合并已有记忆与新消息并按预算选取窗口
+     */
+    private List<Message> process(List<Message> memoryMessages, List<Message> newMessages) {
+        boolean hasNewSystemMessage = newMessages.stream().anyMatch(SystemMessage.class::isInstance);
+
+        List<Message> merged = new ArrayList<>(memoryMessages.size() + newMessages.size());
+        for (Message message : memoryMessages) {
+            if (!(hasNewSystemMessage && message instanceof SystemMessage)) {
+                merged.add(message);
+            }
+        }
+        merged.addAll(newMessages);
+        return windowSelector.select(merged);
+    }
+
+    /**
+     * 为尚未计算token数的新消息计算一次token数，落库时直接复用
+     */
+    private List<Message> withTokenCounts(List<Message> messages) {
+        List<Message> counted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            if (ChatMessageMetadata.getTokenCount(message) != null) {
+                counted.add(message);
+            } else {
+                counted.add(ChatMessageMetadata.withMetadata(message,
+                        Map.of(ChatMessageMetadata.TOKEN_COUNT, windowSelector.estimate(message))));
+            }
+        }
+        return counted;
+    }
+}
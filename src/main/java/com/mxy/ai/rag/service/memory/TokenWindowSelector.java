@@ -0,0 +1,111 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按token预算选取消息窗口
+ * TokenWindowChatMemory与响应式聊天记忆仓库共用同一套选取规则：
+ * - 系统消息始终保留，并优先占用预算
+ * - 其余消息从最新一条往前累加，直到超出预算或达到消息条数上限，最新一条消息总会保留
+ *
+ * @author Mxy
+ */
+public class TokenWindowSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenWindowSelector.class);
+
+    private final int maxTokens;
+
+    private final int maxMessages;
+
+    private final TokenCountEstimator tokenCountEstimator;
+
+    /**
+     * 构造函数
+     *
+     * @param maxTokens           窗口的token预算
+     * @param maxMessages         窗口的消息条数上限
+     * @param tokenCountEstimator token计数器
+     */
+    public TokenWindowSelector(int maxTokens, int maxMessages, TokenCountEstimator tokenCountEstimator) {
+        Assert.isTrue(maxTokens > 0, "maxTokens must be greater than 0");
+        Assert.isTrue(maxMessages > 0, "maxMessages must be greater than 0");
+        Assert.notNull(tokenCountEstimator, "tokenCountEstimator cannot be null");
+        this.maxTokens = maxTokens;
+        this.maxMessages = maxMessages;
+        this.tokenCountEstimator = tokenCountEstimator;
+    }
+
+    /**
+     * 保留全部系统消息，其余消息从最新一条往前取，直到超出token预算或条数上限
+     *
+     * @param messages 按时间升序的消息
+     * @return 选取后的窗口
+     */
+    public List<Message> select(List<Message> messages) {
+        int systemTokens = 0;
+        int systemCount = 0;
+        for (Message message : messages) {
+            if (message instanceof SystemMessage) {
+                systemTokens += tokenCount(message);
+                systemCount++;
+            }
+        }
+
+        int remainingTokens = maxTokens - systemTokens;
+        int remainingMessages = maxMessages - systemCount;
+        int usedTokens = 0;
+        int keptCount = 0;
+        int windowStart = messages.size();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            Message message = messages.get(i);
+            if (message instanceof SystemMessage) {
+                continue;
+            }
+            int tokens = tokenCount(message);
+            // 最新一条消息即使单独超出预算也保留，否则本轮问题本身会丢失
+            if (keptCount > 0 && (usedTokens + tokens > remainingTokens || keptCount >= remainingMessages)) {
+                break;
+            }
+            usedTokens += tokens;
+            keptCount++;
+            windowStart = i;
+        }
+
+        List<Message> window = new ArrayList<>(systemCount + keptCount);
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message instanceof SystemMessage || i >= windowStart) {
+                window.add(message);
+            }
+        }
+        logger.debug("选取token窗口: totalMessages={}, windowSize={}, tokens={}",
+                messages.size(), window.size(), systemTokens + usedTokens);
+        return window;
+    }
+
+    /**
+     * 估算消息内容的token数
+     *
+     * @param message 消息
+     * @return token数
+     */
+    public int estimate(Message message) {
+        return StringUtils.hasText(message.getText()) ? tokenCountEstimator.estimate(message.getText()) : 0;
+    }
+
+    private int tokenCount(Message message) {
+        Integer tokenCount = ChatMessageMetadata.getTokenCount(message);
+        // 升级前写入的历史消息没有token数，临时计算
+        return tokenCount != null ? tokenCount : estimate(message);
+    }
+}
@@ -0,0 +1,27 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 支持在已读取的窗口上追加消息的聊天记忆
+ * 调用方刚读取过对话窗口（如流水线模式下与知识库检索并行加载的历史）时，
+ * 直接在该窗口上合并新消息并保存，省去add内部再读取一次窗口
+ *
+ * @author Mxy
+ */
+public interface WindowAwareChatMemory extends ChatMemory {
+
+    /**
+     * 在调用方已读取的窗口上追加消息
+     * 窗口读取后已被其他写入推进时，退化为普通add：重新读取窗口后合并保存
+     *
+     * @param conversationId 对话ID
+     * @param window         调用方读取到的窗口（即get的返回值或上一次追加的返回值）
+     * @param messages       新消息
+     * @return 保存后的窗口，新消息已带上持久化序号；无法确定保存后的窗口时返回null，后续写入需使用普通add
+     */
+    List<Message> add(String conversationId, List<Message> window, List<Message> messages);
+}
@@ -0,0 +1,211 @@
+package com.mxy.ai.rag.service.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个回答流的重放缓冲区
+ * 大模型回答只订阅一次，产生的事件依次编号后写入可重放的Sink：
+ * - 首次连接和断线重连的客户端都从Sink读取，重连时跳过Last-Event-ID及之前的事件，不会重新调用大模型
+ * - Sink只保留最近maxEvents个事件，Last-Event-ID之后的事件已被移出时无法续传，只向该客户端发送失败事件
+ * - 客户端断开不会立即取消上游回答，回答完成后缓冲区在注册表中保留一段时间供重连
+ * - 最后一个客户端断开后超过等待重连时间仍无人连接时，视为被放弃，取消上游回答，不再消耗大模型token
+ * 状态由ReentrantLock保护而不是synchronized：写入事件时Sink会同步回调订阅者，虚拟线程下持有监视器时阻塞会钉住载体线程
+ *
+ * @author Mxy
+ */
+public class ChatStreamBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatStreamBuffer.class);
+
+    /**
+     * 回答失败时返回给客户端的提示，具体原因只记录在日志中
+     */
+    private static final String ANSWER_FAILED_MESSAGE = "回答生成失败，请稍后重试";
+
+    /**
+     * 续传所需的事件已被移出缓冲区时返回给客户端的提示
+     */
+    private static final String RESUME_EXPIRED_MESSAGE = "回答流已无法续传，请重新提问";
+
+    private final String streamId;
+
+    private final String userId;
+
+    private final Sinks.Many<ChatStreamEvent> sink;
+
+    private long lastEventId;
+
+    private boolean terminated;
+
+    private int subscribers;
+
+    private long detachGeneration;
+
+    private final Duration abandonTimeout;
+
+    private final ChatStreamCancellation cancellation = new ChatStreamCancellation();
+
+    private final Disposable.Swap upstream = Disposables.swap();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 构造函数
+     *
+     * @param streamId  回答流ID
+     * @param userId    发起回答的用户ID
+     * @param maxEvents 最多缓存的事件数
+     * @param abandonTimeout 没有客户端连接时等待重连的时间
+     */
+    public ChatStreamBuffer(String streamId, String userId, int maxEvents, Duration abandonTimeout) {
+        this.streamId = streamId;
+        this.userId = userId;
+        this.sink = Sinks.many().replay().limit(maxEvents);
+        this.abandonTimeout = abandonTimeout;
+    }
+
+    /**
+     * 订阅回答并把回答片段、完成和失败依次写入缓冲区
+     *
+     * @param answer      大模型回答流
+     * @param onTerminate 回答结束（完成或失败）后的回调
+     */
+    public void start(Flux<String> answer, Runnable onTerminate) {
+        upstream.update(answer.contextWrite(cancellation::writeTo).subscribe(
+                token -> emit(ChatStreamEvent.TOKEN, Map.of("content", token)),
+                error -> {
+                    logger.error("流式回答失败: streamId={}", streamId, error);
+                    emit(ChatStreamEvent.ERROR, Map.of("message", ANSWER_FAILED_MESSAGE));
+                    onTerminate.run();
+                },
+                () -> {
+                    emit(ChatStreamEvent.DONE, Map.of("streamId", streamId));
+                    onTerminate.run();
+                }));
+        // 创建后一直没有客户端连接时同样按放弃处理
+        long generation;
+        lock.lock();
+        try {
+            generation = detachGeneration;
+        } finally {
+            lock.unlock();
+        }
+        scheduleAbandonCheck(generation);
+    }
+
+    /**
+     * 追加一个事件，结束事件之后不再接受新事件
+     *
+     * @param type 事件类型
+     * @param data 事件数据
+     */
+    public void emit(String type, Object data) {
+        lock.lock();
+        try {
+            if (terminated) {
+                return;
+            }
+            ChatStreamEvent event = new ChatStreamEvent(++lastEventId, type, data);
+            sink.tryEmitNext(event);
+            if (event.isTerminal()) {
+                terminated = true;
+                sink.tryEmitComplete();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取Last-Event-ID之后的事件，回答尚未结束时继续接收新事件
+     * 事件ID连续递增，读到的第一个事件不是Last-Event-ID的下一个时，说明中间的事件已被移出缓冲区，
+     * 此时不发送残缺的回答，只向该客户端发送一个失败事件
+     *
+     * @param lastEventId 客户端已收到的最后一个事件ID，首次连接传0
+     * @return 事件流
+     */
+    public Flux<ChatStreamEvent> events(long lastEventId) {
+        return sink.asFlux()
+                .filter(event -> event.id() > lastEventId)
+                .switchOnFirst((first, events) -> {
+                    if (first.hasValue() && first.get().id() > lastEventId + 1) {
+                        logger.warn("续传所需的事件已被移出缓冲区: streamId={}, lastEventId={}, oldestEventId={}",
+                                streamId, lastEventId, first.get().id());
+                        return Flux.just(new ChatStreamEvent(lastEventId, ChatStreamEvent.ERROR,
+                                Map.of("message", RESUME_EXPIRED_MESSAGE)));
+                    }
+                    return events;
+                })
+                .doOnSubscribe(subscription -> attach())
+                .doFinally(signal -> detach());
+    }
+
+    /**
+     * 关闭缓冲区：取消仍在进行的上游回答并结束事件流
+     */
+    public void close() {
+        cancel(ChatStreamCancellation.EXPIRED, "回答流已过期");
+    }
+
+    private void attach() {
+        lock.lock();
+        try {
+            subscribers++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void detach() {
+        lock.lock();
+        try {
+            subscribers--;
+            if (subscribers == 0 && !terminated) {
+                scheduleAbandonCheck(++detachGeneration);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待重连时间后检查：期间没有客户端重新连接且回答仍未结束时取消上游回答
+     */
+    private void scheduleAbandonCheck(long generation) {
+        Mono.delay(abandonTimeout).subscribe(tick -> {
+            lock.lock();
+            try {
+                if (subscribers > 0 || terminated || generation != detachGeneration) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            logger.info("回答流已无客户端连接，取消上游回答: streamId={}", streamId);
+            cancel(ChatStreamCancellation.ABANDONED, "回答流已被放弃");
+        });
+    }
+
+    private void cancel(String reason, String message) {
+        cancellation.cancel(reason, upstream);
+        emit(ChatStreamEvent.ERROR, Map.of("message", message));
+    }
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+}
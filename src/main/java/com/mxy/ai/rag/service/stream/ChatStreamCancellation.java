@@ -0,0 +1,80 @@
+package com.mxy.ai.rag.service.stream;
+
+import reactor.core.Disposable;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流式回答的取消原因
+ * 由订阅回答的一方放入Reactor上下文，取消订阅前先写入原因，上游在doOnCancel中读取后记录未完成的回答
+ *
+ * @author Mxy
+ */
+public final class ChatStreamCancellation {
+
+    private static final String CONTEXT_KEY = ChatStreamCancellation.class.getName();
+
+    /**
+     * 客户端断开连接
+     */
+    public static final String CLIENT_DISCONNECTED = "client-disconnected";
+
+    /**
+     * 异步请求超时
+     */
+    public static final String TIMEOUT = "timeout";
+
+    /**
+     * 写出响应失败
+     */
+    public static final String WRITE_FAILED = "write-failed";
+
+    /**
+     * 回答流没有客户端连接且超过等待重连时间
+     */
+    public static final String ABANDONED = "abandoned";
+
+    /**
+     * 回答流在注册表中过期或被淘汰
+     */
+    public static final String EXPIRED = "expired";
+
+    private static final String UNKNOWN = "cancelled";
+
+    private final AtomicReference<String> reason = new AtomicReference<>();
+
+    /**
+     * 记录取消原因并取消订阅，只保留第一次记录的原因
+     *
+     * @param reason       取消原因
+     * @param subscription 回答订阅
+     */
+    public void cancel(String reason, Disposable subscription) {
+        this.reason.compareAndSet(null, reason);
+        subscription.dispose();
+    }
+
+    /**
+     * 放入Reactor上下文
+     *
+     * @param context 原上下文
+     * @return 包含取消原因持有者的上下文
+     */
+    public Context writeTo(Context context) {
+        return context.put(CONTEXT_KEY, this);
+    }
+
+    /**
+     * 读取上下文中的取消原因
+     *
+     * @param context Reactor上下文
+     * @return 取消原因，未记录时返回cancelled
+     */
+    public static String reasonOf(ContextView context) {
+        return context.<ChatStreamCancellation>getOrEmpty(CONTEXT_KEY)
+                .map(cancellation -> cancellation.reason.get())
+                .orElse(UNKNOWN);
+    }
+}
@@ -0,0 +1,42 @@
+package com.mxy.ai.rag.service.stream;
+
+/**
+ * 流式回答事件
+ * 同一回答流内的事件ID从1开始单调递增，客户端断线重连时通过Last-Event-ID指出已收到的最后一个事件
+ *
+ * @param id   事件ID
+ * @param type 事件类型
+ * @param data 事件数据，按JSON序列化
+ * @author Mxy
+ */
+public record ChatStreamEvent(long id, String type, Object data) {
+
+    /**
+     * 回答片段
+     */
+    public static final String TOKEN = "token";
+
+    /**
+     * 检索到的知识库来源
+     */
+    public static final String SOURCES = "sources";
+
+    /**
+     * 回答完成
+     */
+    public static final String DONE = "done";
+
+    /**
+     * 回答失败
+     */
+    public static final String ERROR = "error";
+
+    /**
+     * 是否为结束事件
+     *
+     * @return 完成或失败事件返回true
+     */
+    public boolean isTerminal() {
+        return DONE.equals(type) || ERROR.equals(type);
+    }
+}
@@ -0,0 +1,165 @@
+package com.mxy.ai.rag.service.stream;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式回答注册表
+ * 以回答流ID保存短期的重放缓冲区，并把缓冲区中的事件转换为带事件ID和心跳的SSE：
+ * - 缓冲区在最后一次写入注册表后保留replay-ttl，回答结束时重新写入一次，保证回答结束后仍可重连
+ * - 容量达到上限或过期被淘汰时，关闭缓冲区并取消仍在进行的回答
+ *
+ * @author Mxy
+ */
+@Component
+public class ChatStreamRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatStreamRegistry.class);
+
+    /**
+     * 回答流保留时间（从创建或回答结束时起算）
+     */
+    @Value("${mxy.chat.stream.replay-ttl:10m}")
+    private Duration replayTtl;
+
+    /**
+     * 同时保留的回答流数量上限
+     */
+    @Value("${mxy.chat.stream.max-streams:10000}")
+    private long maxStreams;
+
+    /**
+     * 单个回答流最多缓存的事件数
+     */
+    @Value("${mxy.chat.stream.max-events:8192}")
+    private int maxEvents;
+
+    /**
+     * 回答流没有客户端连接时等待重连的时间，超时后取消上游回答
+     */
+    @Value("${mxy.chat.stream.abandon-timeout:10s}")
+    private Duration abandonTimeout;
+
+    /**
+     * 心跳间隔，防止代理和负载均衡因连接空闲而断开
+     */
+    @Value("${mxy.chat.stream.heartbeat-interval:15s}")
+    private Duration heartbeatInterval;
+
+    private Cache<String, ChatStreamBuffer> streams;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        this.streams = Caffeine.newBuilder()
+                .maximumSize(maxStreams)
+                .expireAfterWrite(replayTtl)
+                .removalListener((String streamId, ChatStreamBuffer buffer, RemovalCause cause) -> {
+                    if (buffer != null && cause.wasEvicted()) {
+                        buffer.close();
+                    }
+                })
+                .build();
+        logger.info("初始化流式回答注册表: replayTtl={}, maxStreams={}, maxEvents={}, abandonTimeout={}, heartbeatInterval={}",
+                replayTtl, maxStreams, maxEvents, abandonTimeout, heartbeatInterval);
+    }
+
+    /**
+     * 创建并注册一个回答流
+     *
+     * @param userId 发起回答的用户ID
+     * @return 回答流缓冲区
+     */
+    public ChatStreamBuffer create(String userId) {
+        ChatStreamBuffer buffer = new ChatStreamBuffer(UUID.randomUUID().toString(), userId, maxEvents, abandonTimeout);
+        streams.put(buffer.getStreamId(), buffer);
+        return buffer;
+    }
+
+    /**
+     * 开始回答：订阅大模型回答，回答结束后重新计算保留时间
+     *
+     * @param buffer 回答流缓冲区
+     * @param answer 大模型回答流
+     */
+    public void start(ChatStreamBuffer buffer, Flux<String> answer) {
+        buffer.start(answer, () -> streams.asMap().replace(buffer.getStreamId(), buffer, buffer));
+    }
+
+    /**
+     * 获取当前用户的回答流
+     *
+     * @param streamId 回答流ID
+     * @param userId   当前用户ID
+     * @return 回答流缓冲区，不存在、已过期或不属于当前用户时返回null
+     */
+    public ChatStreamBuffer get(String streamId, String userId) {
+        ChatStreamBuffer buffer = streams.getIfPresent(streamId);
+        if (buffer == null || !Objects.equals(buffer.getUserId(), userId)) {
+            return null;
+        }
+        return buffer;
+    }
+
+    /**
+     * 统计回答流连接：订阅时计数加一，完成、失败或取消时减一
+     *
+     * @param stream 写给客户端的回答流
+     * @param <T>    元素类型
+     * @return 带连接计数的回答流
+     */
+    public <T> Flux<T> track(Flux<T> stream) {
+        return stream.doOnSubscribe(subscription -> openConnections.incrementAndGet())
+                .doFinally(signal -> openConnections.decrementAndGet());
+    }
+
+    /**
+     * 当前打开的回答流连接数
+     *
+     * @return 连接数
+     */
+    public int openConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * 保留在内存中可续传的回答流数（近似值）
+     *
+     * @return 回答流数
+     */
+    public long bufferedStreams() {
+        return streams.estimatedSize();
+    }
+
+    /**
+     * 把回答流中Last-Event-ID之后的事件转换为SSE，回答进行期间按间隔穿插心跳注释
+     *
+     * @param buffer      回答流缓冲区
+     * @param lastEventId 客户端已收到的最后一个事件ID，首次连接传0
+     * @return SSE事件流
+     */
+    public Flux<ServerSentEvent<Object>> toServerSentEvents(ChatStreamBuffer buffer, long lastEventId) {
+        Flux<ServerSentEvent<Object>> events = buffer.events(lastEventId)
+                .map(event -> ServerSentEvent.builder(event.data())
+                        .id(String.valueOf(event.id()))
+                        .event(event.type())
+                        .build());
+        return events.publish(shared -> Flux.merge(shared, Flux.interval(heartbeatInterval)
+                .map(tick -> ServerSentEvent.<Object>builder().comment("heartbeat").build())
+                .takeUntilOther(shared.then())));
+    }
+}
@@ -0,0 +1,182 @@
+package com.mxy.ai.rag.service.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 流式回答分帧聚合器
+ * 大模型每个增量都是一个很短的字符串，逐个写出会让系统调用和TCP包数量随token数增长。
+ * 聚合器把增量合并为帧：
+ * - 第一个增量立即发出，不影响首字延迟
+ * - 之后的增量在时间窗口内合并，窗口到期或累计字节数达到上限时发出一帧
+ * - 回答结束或失败前先发出剩余内容；下游取消时取消上游回答并丢弃未发出的内容
+ *
+ * @author Mxy
+ */
+@Component
+public class TokenFrameAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenFrameAggregator.class);
+
+    private final boolean enabled;
+
+    private final Duration window;
+
+    private final int maxBytes;
+
+    private final Scheduler scheduler;
+
+    /**
+     * 构造函数
+     *
+     * @param enabled  是否启用分帧聚合
+     * @param window   合并时间窗口
+     * @param maxBytes 单帧累计字节数上限，达到后立即发出
+     */
+    public TokenFrameAggregator(@Value("${mxy.chat.stream.frame.enabled:true}") boolean enabled,
+                                @Value("${mxy.chat.stream.frame.window:40ms}") Duration window,
+                                @Value("${mxy.chat.stream.frame.max-bytes:1024}") int maxBytes) {
+        this(enabled, window, maxBytes, Schedulers.parallel());
+    }
+
+    TokenFrameAggregator(boolean enabled, Duration window, int maxBytes, Scheduler scheduler) {
+        this.enabled = enabled && !window.isZero() && !window.isNegative();
+        this.window = window;
+        this.maxBytes = maxBytes;
+        this.scheduler = scheduler;
+        logger.info("初始化流式回答分帧聚合器: enabled={}, window={}, maxBytes={}", this.enabled, window, maxBytes);
+    }
+
+    /**
+     * 把回答增量聚合为帧
+     *
+     * @param tokens 回答增量
+     * @return 回答帧
+     */
+    public Flux<String> aggregate(Flux<String> tokens) {
+        if (!enabled) {
+            return tokens;
+        }
+        return Flux.create(sink -> {
+            Frame frame = new Frame(sink);
+            Disposable upstream = tokens.contextWrite(sink.contextView())
+                    .subscribe(frame::onToken, frame::onError, frame::onComplete);
+            sink.onDispose(() -> {
+                upstream.dispose();
+                frame.cancelTimer();
+            });
+        });
+    }
+
+    /**
+     * 一个回答流的当前帧，上游增量和窗口到期的定时任务在不同线程上访问，由锁保证帧内容和发出顺序
+     */
+    private final class Frame {
+
+        private final FluxSink<String> sink;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final StringBuilder buffer = new StringBuilder();
+
+        private int bufferedBytes;
+
+        private boolean firstEmitted;
+
+        private Disposable timer;
+
+        private Frame(FluxSink<String> sink) {
+            this.sink = sink;
+        }
+
+        private void onToken(String token) {
+            lock.lock();
+            try {
+                if (!firstEmitted) {
+                    firstEmitted = true;
+                    sink.next(token);
+                    return;
+                }
+                buffer.append(token);
+                bufferedBytes += token.getBytes(StandardCharsets.UTF_8).length;
+                if (bufferedBytes >= maxBytes) {
+                    flushLocked();
+                } else if (timer == null) {
+                    timer = scheduler.schedule(this::onWindowElapsed, window.toNanos(), TimeUnit.NANOSECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onWindowElapsed() {
+            lock.lock();
+            try {
+                timer = null;
+                flushLocked();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onComplete() {
+            lock.lock();
+            try {
+                flushLocked();
+                sink.complete();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onError(Throwable error) {
+            lock.lock();
+            try {
+                flushLocked();
+                sink.error(error);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void cancelTimer() {
+            lock.lock();
+            try {
+                if (timer != null) {
+                    timer.dispose();
+                    timer = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 发出当前帧（调用方已持有锁）
+         */
+        private void flushLocked() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+            if (buffer.isEmpty()) {
+                return;
+            }
+            sink.next(buffer.toString());
+            buffer.setLength(0);
+            bufferedBytes = 0;
+        }
+    }
+}
@@ -4,43 +4,88 @@ import com.mxy.ai.rag.dto.ChatAskDTO;
 import com.mxy.ai.rag.dto.ChatFeedbackDTO;
 import com.mxy.ai.rag.dto.ChatMessagePageRequestDTO;
 import com.mxy.ai.rag.service.ChatService;
+import com.mxy.ai.rag.service.ChatTransferService;
+import com.mxy.ai.rag.service.stream.ChatStreamCancellation;
+import com.mxy.ai.rag.service.stream.ChatStreamEvent;
 import com.mxy.ai.rag.util.UserContextUtil;
 import com.mxy.ai.rag.web.param.ChatAskRequest;
 import com.mxy.ai.rag.web.param.ChatFeedbackRequest;
 import com.mxy.ai.rag.web.param.ChatMessagePageRequest;
 import com.mxy.ai.rag.web.vo.ApiResult;
+import com.mxy.ai.rag.web.vo.ChatImportResultVO;
+import com.mxy.ai.rag.web.vo.ChatMemoryCacheStatsVO;
 import com.mxy.ai.rag.web.vo.ChatMessageVO;
+import com.mxy.ai.rag.web.vo.ChatPurgeReportVO;
+import com.mxy.ai.rag.web.vo.ChatStreamStatsVO;
 import com.mxy.ai.rag.web.vo.PageResult;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 智能对话控制器
- * 提供智能问答、流式对话、对话历史查询等REST API接口
+ * 提供智能问答、流式对话、对话历史查询、对话导出导入等REST API接口
  *
  * @author Mxy
  */
 @Tag(name = "智能对话管理", description = "提供智能问答、流式对话、对话历史查询等功能")
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/v1/chat")
 public class ChatController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private static final String STREAM_ID_HEADER = "X-Chat-Stream-Id";
+
     @Resource
     private ChatService chatService;
 
+    @Resource
+    private ChatTransferService chatTransferService;
+
+    /**
+     * 流式回答的异步请求超时时间
+     */
+    @Value("${mxy.chat.stream.timeout:5m}")
+    private Duration streamTimeout;
+
+    /**
+     * 是否启用非阻塞流式模式
+     */
+    @Value("${mxy.chat.stream.non-blocking:false}")
+    private boolean nonBlockingStreaming;
+
+    @Resource(name = "streamingTaskExecutor")
+    private AsyncTaskExecutor streamingTaskExecutor;
+
 
     /**
      * 智能问答（阻塞式）
@@ -73,14 +118,14 @@ public class ChatController {
 
     /**
      * 流式智能问答
-     * 基于知识库进行问答，以流的形式返回回答内容
+     * 基于知识库进行问答，以流的形式返回回答内容；客户端断开、超时或写出失败时立即取消上游回答
      *
      * @param request 流式问答请求参数
      * @return 流式回答内容
      */
     @Operation(summary = "流式智能问答", description = "基于知识库进行智能问答，以流的形式返回回答内容")
     @PostMapping(value = "/stream", produces = MediaType.TEXT_PLAIN_VALUE)
-    public Flux<String> askQuestionStream(
+    public ResponseBodyEmitter askQuestionStream(
             @Parameter(description = "流式问答请求参数", required = true)
             @Valid @RequestBody ChatAskRequest request) {
         try {
@@ -92,10 +137,69 @@ public class ChatController {
             ChatAskDTO dto = new ChatAskDTO();
             BeanUtils.copyProperties(request, dto);
 
-            return chatService.askQuestionStream(dto);
+            return bridge(chatService.askQuestionStream(dto));
         } catch (Exception e) {
             logger.error("流式智能问答失败: {}", e.getMessage(), e);
-            return Flux.error(new RuntimeException("流式智能问答失败: " + e.getMessage()));
+            return bridge(Flux.error(new RuntimeException("流式智能问答失败: " + e.getMessage())));
+        }
+    }
+
+    /**
+     * SSE流式智能问答
+     * 以text/event-stream返回带事件ID的token、sources、done、error事件，回答期间定时发送心跳；
+     * 回答流ID通过X-Chat-Stream-Id响应头返回，断线后可携带Last-Event-ID续传
+     *
+     * @param request  流式问答请求参数
+     * @param response HTTP响应
+     * @return SSE事件流
+     */
+    @Operation(summary = "SSE流式智能问答", description = "以SSE事件流返回回答内容，支持断线后按Last-Event-ID续传")
+    @PostMapping(value = "/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> askQuestionSse(
+            @Parameter(description = "流式问答请求参数", required = true)
+            @Valid @RequestBody ChatAskRequest request,
+            HttpServletResponse response) {
+        try {
+            String currentUsername = UserContextUtil.getCurrentUsername();
+            logger.info("接收SSE流式智能问答请求: sessionId={}, currentUsername={}, question={}",
+                    request.getSessionId(), currentUsername, request.getQuestion());
+
+            ChatAskDTO dto = new ChatAskDTO();
+            BeanUtils.copyProperties(request, dto);
+
+            String streamId = chatService.startAnswerStream(dto);
+            prepareEventStream(response);
+            response.setHeader(STREAM_ID_HEADER, streamId);
+            return chatService.subscribeAnswerStream(streamId, 0L);
+        } catch (Exception e) {
+            logger.error("SSE流式智能问答失败: {}", e.getMessage(), e);
+            return Flux.just(errorEvent("SSE流式智能问答失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * SSE流式智能问答续传
+     * 重放Last-Event-ID之后的事件，回答尚未结束时继续推送，不会重新调用大模型
+     *
+     * @param streamId    回答流ID
+     * @param lastEventId 客户端已收到的最后一个事件ID
+     * @param response    HTTP响应
+     * @return SSE事件流
+     */
+    @Operation(summary = "SSE流式智能问答续传", description = "断线重连时按Last-Event-ID续传回答，不重新生成")
+    @GetMapping(value = "/sse/{streamId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> resumeQuestionSse(
+            @Parameter(description = "回答流ID", required = true) @PathVariable String streamId,
+            @Parameter(description = "已收到的最后一个事件ID")
+            @RequestHeader(value = "Last-Event-ID", required = false, defaultValue = "0") long lastEventId,
+            HttpServletResponse response) {
+        try {
+            logger.info("续传SSE流式智能问答: streamId={}, lastEventId={}", streamId, lastEventId);
+            prepareEventStream(response);
+            return chatService.subscribeAnswerStream(streamId, lastEventId);
+        } catch (Exception e) {
+            logger.error("SSE流式智能问答续传失败: {}", e.getMessage(), e);
+            return Flux.just(errorEvent("SSE流式智能问答续传失败: " + e.getMessage()));
         }
     }
 
@@ -173,4 +277,143 @@ public class ChatController {
             return ApiResult.error("生成会话标题失败: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取聊天记忆缓存统计
+     * 返回本地消息窗口缓存的命中、未命中和淘汰次数，用于调整缓存容量
+     *
+     * @return 缓存统计
+     */
+    @Operation(summary = "获取聊天记忆缓存统计", description = "返回本地消息窗口缓存的命中、未命中和淘汰次数")
+    @GetMapping("/memory/cache-stats")
+    public ApiResult<ChatMemoryCacheStatsVO> getMemoryCacheStats() {
+        try {
+            return ApiResult.success(chatService.getMemoryCacheStats());
+        } catch (Exception e) {
+            logger.error("获取聊天记忆缓存统计失败: {}", e.getMessage(), e);
+            return ApiResult.error("获取聊天记忆缓存统计失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取流式回答统计
+     * 返回当前打开的回答流连接数和流式回答执行器的负载
+     *
+     * @return 流式回答统计
+     */
+    @Operation(summary = "获取流式回答统计", description = "返回当前打开的回答流连接数和流式回答执行器的负载")
+    @GetMapping("/stream/stats")
+    public ApiResult<ChatStreamStatsVO> getStreamStats() {
+        try {
+            return ApiResult.success(chatService.getStreamStats());
+        } catch (Exception e) {
+            logger.error("获取流式回答统计失败: {}", e.getMessage(), e);
+            return ApiResult.error("获取流式回答统计失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取最近一次软删除消息清理报告
+     * 返回清理任务回收的行数、批次数和耗时
+     *
+     * @return 清理报告
+     */
+    @Operation(summary = "获取聊天消息清理报告", description = "返回最近一次软删除消息清理任务回收的行数、批次数和耗时")
+    @GetMapping("/memory/purge-report")
+    public ApiResult<ChatPurgeReportVO> getLastPurgeReport() {
+        try {
+            return ApiResult.success(chatService.getLastPurgeReport());
+        } catch (Exception e) {
+            logger.error("获取聊天消息清理报告失败: {}", e.getMessage(), e);
+            return ApiResult.error("获取聊天消息清理报告失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 导出对话
+     * 以NDJSON格式流式导出当前用户的全部会话和消息，消息从数据库游标直接写入响应流
+     *
+     * @param response HTTP响应
+     */
+    @Operation(summary = "导出对话", description = "以NDJSON格式流式导出当前用户的全部会话和消息")
+    @GetMapping(value = "/export", produces = NDJSON_VALUE)
+    public void exportConversations(HttpServletResponse response) {
+        try {
+            logger.info("导出对话: userId={}", UserContextUtil.getCurrentUserId());
+            response.setContentType(NDJSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"chat-export.ndjson\"");
+            chatTransferService.exportConversations(response.getOutputStream());
+        } catch (Exception e) {
+            logger.error("导出对话失败: {}", e.getMessage(), e);
+            // 已经开始写出时只能中断响应，客户端会收到不完整的文件
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
+        }
+    }
+
+    /**
+     * 导入对话
+     * 逐行解析NDJSON请求体，消息攒批后批量插入，导入的会话归属当前用户
+     *
+     * @param request HTTP请求
+     * @return 导入结果
+     */
+    @Operation(summary = "导入对话", description = "逐行解析导出的NDJSON并批量导入会话和消息")
+    @PostMapping(value = "/import", consumes = NDJSON_VALUE)
+    public ApiResult<ChatImportResultVO> importConversations(HttpServletRequest request) {
+        try {
+            logger.info("导入对话: userId={}", UserContextUtil.getCurrentUserId());
+            return ApiResult.success(chatTransferService.importConversations(request.getInputStream()));
+        } catch (Exception e) {
+            logger.error("导入对话失败: {}", e.getMessage(), e);
+            return ApiResult.error("导入对话失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 把回答流桥接到Servlet异步响应
+     * 在异步上下文的完成、超时和错误回调上取消订阅，客户端断开时不必等到下一次写出失败才发现；
+     * 取消信号沿响应式链传到大模型客户端，取消原因通过Reactor上下文传给上游，用于记录未完成的回答。
+     * 非阻塞流式模式下每一帧在流式回答执行器上写出，不在大模型客户端的事件循环线程上做阻塞的Servlet写
+     */
+    private ResponseBodyEmitter bridge(Flux<String> answer) {
+        if (nonBlockingStreaming) {
+            answer = answer.publishOn(Schedulers.fromExecutor(streamingTaskExecutor));
+        }
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(streamTimeout.toMillis());
+        ChatStreamCancellation cancellation = new ChatStreamCancellation();
+        Disposable.Swap subscription = Disposables.swap();
+
+        emitter.onError(error -> cancellation.cancel(ChatStreamCancellation.CLIENT_DISCONNECTED, subscription));
+        emitter.onTimeout(() -> cancellation.cancel(ChatStreamCancellation.TIMEOUT, subscription));
+        emitter.onCompletion(() -> cancellation.cancel(ChatStreamCancellation.CLIENT_DISCONNECTED, subscription));
+
+        subscription.update(answer.contextWrite(cancellation::writeTo).subscribe(
+                token -> {
+                    try {
+                        emitter.send(token, MediaType.TEXT_PLAIN);
+                    } catch (IOException | IllegalStateException e) {
+                        logger.info("流式回答写出失败，取消上游回答: {}", e.getMessage());
+                        cancellation.cancel(ChatStreamCancellation.WRITE_FAILED, subscription);
+                    }
+                },
+                emitter::completeWithError,
+                emitter::complete));
+        return emitter;
+    }
+
+    /**
+     * 关闭代理缓冲和缓存，保证事件逐条到达客户端
+     */
+    private static void prepareEventStream(HttpServletResponse response) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+    }
+
+    private static ServerSentEvent<Object> errorEvent(String message) {
+        return ServerSentEvent.<Object>builder(Map.of("message", message)).event(ChatStreamEvent.ERROR).build();
+    }
+}
@@ -4,6 +4,7 @@ import com.mxy.ai.rag.dto.*;
 import com.mxy.ai.rag.service.ChatSessionService;
 import com.mxy.ai.rag.web.param.CreateSessionRequest;
 import com.mxy.ai.rag.web.param.DeleteSessionRequest;
+import com.mxy.ai.rag.web.param.ForkSessionRequest;
 import com.mxy.ai.rag.web.param.SessionQueryRequest;
 import com.mxy.ai.rag.web.param.UpdateSessionTitleRequest;
 import com.mxy.ai.rag.util.UserContextUtil;
@@ -17,18 +18,20 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
 
 /**
  * 聊天会话管理控制器
- * 提供会话的创建、查询、更新、删除等REST API接口
+ * 提供会话的创建、查询、更新、删除、分支等REST API接口
  *
  * @author Mxy
  */
 @Tag(name = "聊天会话管理", description = "提供聊天会话的创建、查询、更新、删除等功能")
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/v1/chat/sessions")
 public class ChatSessionController {
 
@@ -170,4 +173,32 @@ public class ChatSessionController {
             return ApiResult.error("删除会话失败: " + e.getMessage());
         }
     }
+
+    /**
+     * 从会话的某条消息处分支出新会话
+     *
+     * @param request 分支会话请求参数
+     * @return 新会话ID
+     */
+    @Operation(summary = "分支会话", description = "从指定消息处分支出新会话，新会话继承该消息及之前的对话（不复制消息）")
+    @PostMapping("/fork")
+    public ApiResult<Long> forkSession(
+            @Parameter(description = "分支会话请求参数", required = true)
+            @Valid @RequestBody ForkSessionRequest request) {
+        try {
+            // 从用户上下文获取当前用户ID
+            String currentUserId = UserContextUtil.getCurrentUserId();
+            logger.info("分支会话: sessionId={}, messageId={}, userId={}",
+                    request.getSessionId(), request.getMessageId(), currentUserId);
+
+            // 转换为DTO
+            ForkSessionDTO dto = new ForkSessionDTO();
+            BeanUtils.copyProperties(request, dto);
+            Long sessionId = chatSessionService.forkSession(dto);
+            return ApiResult.success(sessionId);
+        } catch (Exception e) {
+            logger.error("分支会话失败: {}", e.getMessage(), e);
+            return ApiResult.error("分支会话失败: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.mxy.ai.rag.web.controller;
 import com.mxy.ai.rag.service.KnowledgeBaseService;
 import com.mxy.ai.rag.web.vo.ApiResult;
 import org.springframework.ai.document.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -17,6 +18,7 @@ import java.util.List;
  * 基于业务类型进行知识库管理，支持广告和AIGC两个业务类型。
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/v1/knowledge-base")
 public class KnowledgeBaseController {
 
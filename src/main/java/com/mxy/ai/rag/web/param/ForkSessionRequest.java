@@ -0,0 +1,37 @@
+package com.mxy.ai.rag.web.param;
+
+import lombok.Data;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/**
+ * 分支会话请求参数
+ * 用于接收从已有会话的某条消息处分支出新会话的请求数据
+ */
+@Data
+@Schema(description = "分支会话请求参数")
+public class ForkSessionRequest {
+
+    /**
+     * 父会话ID
+     */
+    @Schema(description = "父会话ID", example = "1", required = true)
+    @NotNull(message = "父会话ID不能为空")
+    private Long sessionId;
+
+    /**
+     * 分支点消息ID（新会话继承该消息及之前的对话）
+     */
+    @Schema(description = "分支点消息ID（新会话继承该消息及之前的对话）", example = "100", required = true)
+    @NotNull(message = "分支点消息ID不能为空")
+    private Long messageId;
+
+    /**
+     * 新会话标题（可选，不提供时沿用父会话标题）
+     */
+    @Schema(description = "新会话标题", example = "我的聊天会话（分支）", maxLength = 200)
+    @Size(max = 200, message = "会话标题长度不能超过200个字符")
+    private String title;
+}
@@ -0,0 +1,30 @@
+package com.mxy.ai.rag.web.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 对话导入结果响应对象
+ */
+@Data
+@Schema(description = "对话导入结果响应对象")
+public class ChatImportResultVO {
+
+    @Schema(description = "导入的会话数", example = "12")
+    private Long sessions;
+
+    @Schema(description = "导入的消息数", example = "3456")
+    private Long messages;
+
+    @Schema(description = "跳过的记录数（格式错误、找不到所属会话或不是用户/助手消息）", example = "0")
+    private Long skipped;
+
+    @Schema(description = "导入失败并已回滚的会话在导入文件中的原ID，全部成功时为空", example = "42")
+    private Long failedSessionId;
+
+    @Schema(description = "导入失败原因", example = "Duplicate entry")
+    private String failureMessage;
+
+    @Schema(description = "耗时（毫秒）", example = "2034")
+    private Long elapsedMs;
+}
@@ -0,0 +1,31 @@
+package com.mxy.ai.rag.web.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 聊天记忆缓存统计响应对象
+ * 用于观察本地消息窗口缓存的命中情况，辅助调整缓存容量
+ */
+@Data
+@Schema(description = "聊天记忆缓存统计响应对象")
+public class ChatMemoryCacheStatsVO {
+
+    @Schema(description = "是否启用缓存", example = "true")
+    private Boolean enabled;
+
+    @Schema(description = "当前缓存的对话数（近似值）", example = "128")
+    private Long estimatedSize;
+
+    @Schema(description = "命中次数", example = "1024")
+    private Long hitCount;
+
+    @Schema(description = "未命中次数", example = "64")
+    private Long missCount;
+
+    @Schema(description = "命中率", example = "0.94")
+    private Double hitRate;
+
+    @Schema(description = "淘汰次数", example = "8")
+    private Long evictionCount;
+}
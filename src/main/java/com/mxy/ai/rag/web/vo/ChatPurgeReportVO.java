@@ -0,0 +1,39 @@
+package com.mxy.ai.rag.web.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 聊天消息清理报告响应对象
+ * 记录一次软删除消息清理/归档任务的执行结果
+ */
+@Data
+@Schema(description = "聊天消息清理报告响应对象")
+public class ChatPurgeReportVO {
+
+    @Schema(description = "清理模式（archive:归档后删除；delete:直接删除）", example = "archive")
+    private String mode;
+
+    @Schema(description = "开始时间")
+    private LocalDateTime startTime;
+
+    @Schema(description = "耗时（毫秒）", example = "12034")
+    private Long elapsedMs;
+
+    @Schema(description = "软删除时间早于该时间的消息被清理")
+    private LocalDateTime retentionBefore;
+
+    @Schema(description = "处理的主键区间批次数", example = "120")
+    private Long batches;
+
+    @Schema(description = "归档行数", example = "5000")
+    private Long archivedRows;
+
+    @Schema(description = "从消息表回收的行数", example = "5000")
+    private Long reclaimedRows;
+
+    @Schema(description = "是否扫描完整个主键范围（超出单次时长上限时为false，下次从断点继续）", example = "true")
+    private Boolean completed;
+}
@@ -0,0 +1,26 @@
+package com.mxy.ai.rag.web.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 回答引用的知识库来源响应对象
+ */
+@Data
+@Schema(description = "回答引用的知识库来源响应对象")
+public class ChatSourceVO {
+
+    @Schema(description = "文档片段ID", example = "0b3c5d1e-7f2a-4c1b-9e3d-2a6f8b9c0d1e")
+    private String id;
+
+    @Schema(description = "文档片段内容")
+    private String content;
+
+    @Schema(description = "相似度得分", example = "0.82")
+    private Double score;
+
+    @Schema(description = "文档元数据（来源文件名等）")
+    private Map<String, Object> metadata;
+}
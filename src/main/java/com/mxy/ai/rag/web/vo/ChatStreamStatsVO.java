@@ -0,0 +1,37 @@
+package com.mxy.ai.rag.web.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 流式回答统计响应对象
+ * 用于观察当前打开的回答流数量和流式回答执行器的负载
+ */
+@Data
+@Schema(description = "流式回答统计响应对象")
+public class ChatStreamStatsVO {
+
+    @Schema(description = "是否启用非阻塞流式模式", example = "true")
+    private Boolean nonBlocking;
+
+    @Schema(description = "执行器是否使用虚拟线程", example = "false")
+    private Boolean virtualThreads;
+
+    @Schema(description = "当前打开的回答流连接数", example = "1200")
+    private Integer openConnections;
+
+    @Schema(description = "保留在内存中可续传的回答流数（近似值）", example = "1500")
+    private Long bufferedStreams;
+
+    @Schema(description = "执行器当前线程数", example = "16")
+    private Integer poolSize;
+
+    @Schema(description = "执行器活跃线程数", example = "3")
+    private Integer activeCount;
+
+    @Schema(description = "执行器排队任务数", example = "0")
+    private Integer queueSize;
+
+    @Schema(description = "执行器已完成任务数", example = "1048576")
+    private Long completedTaskCount;
+}
@@ -31,6 +31,12 @@ public class SessionVO {
     @Schema(description = "会话描述", example = "这是一个关于技术讨论的会话")
     private String description;
 
+    /**
+     * 父会话ID
+     */
+    @Schema(description = "父会话ID（分支会话才有）", example = "1")
+    private Long parentSessionId;
+
     /**
      * 创建时间
      */
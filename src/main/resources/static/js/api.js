@@ -243,6 +243,138 @@ class ApiClient {
             onError && onError(error);
         }
     }
+
+    /**
+     * SSE流式请求
+     * 按事件解析text/event-stream响应，连接中断时携带Last-Event-ID续传，不会重新生成回答
+     * @param {string} url - 请求URL
+     * @param {object} data - 请求数据
+     * @param {Function} onMessage - 回答片段回调
+     * @param {Function} onError - 错误回调
+     * @param {Function} onComplete - 完成回调
+     * @param {Function} onSources - 知识库来源回调
+     */
+    async eventStream(url, data, onMessage, onError, onComplete, onSources) {
+        const maxRetries = 3;
+        let streamId = null;
+        let lastEventId = 0;
+        let finished = false;
+
+        const handleEvent = (event) => {
+            if (event.id) {
+                lastEventId = Number(event.id);
+            }
+            const payload = event.data ? JSON.parse(event.data) : {};
+            switch (event.event) {
+                case 'token':
+                    onMessage && onMessage(payload.content);
+                    break;
+                case 'sources':
+                    onSources && onSources(payload);
+                    break;
+                case 'done':
+                    finished = true;
+                    onComplete && onComplete();
+                    break;
+                case 'error':
+                    finished = true;
+                    onError && onError(new Error(payload.message || '流式请求失败'));
+                    break;
+            }
+        };
+
+        for (let attempt = 0; !finished; attempt++) {
+            try {
+                const response = streamId === null
+                    ? await fetch(`${this.baseURL}${url}`, {
+                        method: 'POST',
+                        headers: {
+                            ...this.defaultHeaders,
+                            ...this.getAuthHeaders(),
+                            'Accept': 'text/event-stream'
+                        },
+                        body: JSON.stringify(data)
+                    })
+                    : await fetch(`${this.baseURL}${url}/${streamId}`, {
+                        headers: {
+                            ...this.getAuthHeaders(),
+                            'Accept': 'text/event-stream',
+                            'Last-Event-ID': String(lastEventId)
+                        }
+                    });
+
+                if (!response.ok) {
+                    throw new Error(`HTTP ${response.status}: ${response.statusText}`);
+                }
+                streamId = streamId || response.headers.get('X-Chat-Stream-Id');
+
+                await this.readEvents(response, handleEvent);
+                if (!finished) {
+                    throw new Error('连接在回答完成前断开');
+                }
+            } catch (error) {
+                if (finished) {
+                    return;
+                }
+                if (!streamId || attempt >= maxRetries) {
+                    console.error('SSE流式请求失败:', error);
+                    onError && onError(error);
+                    return;
+                }
+                console.warn(`SSE连接中断，从事件 ${lastEventId} 之后续传:`, error);
+                await new Promise(resolve => setTimeout(resolve, 1000 * (attempt + 1)));
+            }
+        }
+    }
+
+    /**
+     * 读取并解析SSE事件
+     * @param {Response} response - fetch响应
+     * @param {Function} onEvent - 事件回调，参数为 { id, event, data }
+     */
+    async readEvents(response, onEvent) {
+        const reader = response.body.getReader();
+        const decoder = new TextDecoder();
+        let buffer = '';
+
+        while (true) {
+            const { done, value } = await reader.read();
+            if (done) {
+                return;
+            }
+            buffer += decoder.decode(value, { stream: true }).replace(/\r\n?/g, '\n');
+
+            let boundary;
+            while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+                const frame = buffer.slice(0, boundary);
+                buffer = buffer.slice(boundary + 2);
+
+                const event = { id: null, event: 'message', data: [] };
+                for (const line of frame.split('\n')) {
+                    // 冒号开头的行是心跳注释
+                    if (!line || line.startsWith(':')) {
+                        continue;
+                    }
+                    const separator = line.indexOf(':');
+                    const field = separator >= 0 ? line.slice(0, separator) : line;
+                    let fieldValue = separator >= 0 ? line.slice(separator + 1) : '';
+                    if (fieldValue.startsWith(' ')) {
+                        fieldValue = fieldValue.slice(1);
+                    }
+                    if (field === 'id') {
+                        event.id = fieldValue;
+                    } else if (field === 'event') {
+                        event.event = fieldValue;
+                    } else if (field === 'data') {
+                        event.data.push(fieldValue);
+                    }
+                }
+                if (event.data.length > 0) {
+                    onEvent({ ...event, data: event.data.join('\n') });
+                }
+            }
+        }
+    }
 }
 
 /**
@@ -355,6 +487,15 @@ class API {
         return this.client.post('/chat/sessions/delete', deleteData);
     }
 
+    /**
+     * 分支会话（从指定消息处分支出新会话）
+     * @param {object} forkData - 分支数据（sessionId、messageId、title）
+     * @returns {Promise} 新会话ID
+     */
+    async forkSession(forkData) {
+        return this.client.post('/chat/sessions/fork', forkData);
+    }
+
     // ========== 聊天相关接口 ==========
 
     /**
@@ -372,9 +513,10 @@ class API {
      * @param {Function} onMessage - 消息回调
      * @param {Function} onError - 错误回调
      * @param {Function} onComplete - 完成回调
+     * @param {Function} onSources - 知识库来源回调
      */
-    async askQuestionStream(questionData, onMessage, onError, onComplete) {
-        return this.client.stream('/chat/stream', questionData, onMessage, onError, onComplete);
+    async askQuestionStream(questionData, onMessage, onError, onComplete, onSources) {
+        return this.client.eventStream('/chat/sse', questionData, onMessage, onError, onComplete, onSources);
     }
 
     /**
@@ -0,0 +1,103 @@
+package com.mxy.ai.rag.reactive.config;
+
+import com.mxy.ai.rag.config.session.UserSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 响应式用户认证过滤器
+ * 与Servlet节点的UserAuthInterceptor规则一致：校验请求头中的userId，
+ * 用户查询走R2DBC，认证通过后把用户会话写入Reactor上下文而不是ThreadLocal
+ *
+ * @author Mxy
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserAuthWebFilter implements WebFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveUserAuthWebFilter.class);
+
+    /**
+     * 用户ID请求头名称
+     */
+    private static final String USER_ID_HEADER = "X-User-Id";
+
+    /**
+     * 备用用户ID请求头名称
+     */
+    private static final String USER_ID_HEADER_ALT = "userId";
+
+    @Resource
+    private DatabaseClient databaseClient;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String requestURI = exchange.getRequest().getPath().value();
+        if (shouldSkipAuthentication(requestURI)) {
+            return chain.filter(exchange);
+        }
+
+        String userId = getUserIdFromHeader(exchange);
+        if (!StringUtils.hasText(userId)) {
+            logger.warn("请求缺少用户ID: {} {}", exchange.getRequest().getMethod(), requestURI);
+            return sendUnauthorizedResponse(exchange.getResponse(), "缺少用户ID");
+        }
+
+        return databaseClient.sql("SELECT user_id, username FROM users WHERE user_id = :userId AND deleted = 0")
+                .bind("userId", userId)
+                .map((row, metadata) -> new UserSession(row.get("user_id", String.class), row.get("username", String.class)))
+                .one()
+                .flatMap(userSession -> chain.filter(exchange).contextWrite(ReactiveUserContext.with(userSession)))
+                .switchIfEmpty(Mono.defer(() -> {
+                    logger.warn("用户不存在或已删除: userId={}", userId);
+                    return sendUnauthorizedResponse(exchange.getResponse(), "用户不存在或已删除");
+                }));
+    }
+
+    private String getUserIdFromHeader(ServerWebExchange exchange) {
+        String userId = exchange.getRequest().getHeaders().getFirst(USER_ID_HEADER);
+        if (StringUtils.hasText(userId)) {
+            return userId.trim();
+        }
+        userId = exchange.getRequest().getHeaders().getFirst(USER_ID_HEADER_ALT);
+        if (StringUtils.hasText(userId)) {
+            return userId.trim();
+        }
+        return null;
+    }
+
+    private boolean shouldSkipAuthentication(String requestURI) {
+        return requestURI.contains("/actuator/")
+                || requestURI.contains("/static/") || requestURI.contains("/public/")
+                || requestURI.contains("/swagger") || requestURI.contains("/v3/api-docs")
+                || requestURI.contains("/error");
+    }
+
+    private Mono<Void> sendUnauthorizedResponse(ServerHttpResponse response, String message) {
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        response.getHeaders().setContentType(new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8));
+        String jsonResponse = String.format(
+                "{\"code\":%d,\"message\":\"%s\",\"data\":null,\"timestamp\":%d}",
+                HttpStatus.UNAUTHORIZED.value(),
+                message,
+                System.currentTimeMillis()
+        );
+        DataBuffer buffer = response.bufferFactory().wrap(jsonResponse.getBytes(StandardCharsets.UTF_8));
+        return response.writeWith(Mono.just(buffer));
+    }
+}
@@ -0,0 +1,49 @@
+package com.mxy.ai.rag.reactive.config;
+
+import com.mxy.ai.rag.config.session.UserSession;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * 响应式用户上下文
+ * 响应式链路在事件循环线程之间切换，不能依赖ThreadLocal保存用户会话，
+ * 由认证过滤器把用户会话写入Reactor上下文，下游通过current读取
+ *
+ * @author Mxy
+ */
+public final class ReactiveUserContext {
+
+    private static final Class<UserSession> CONTEXT_KEY = UserSession.class;
+
+    private ReactiveUserContext() {
+    }
+
+    /**
+     * 写入用户会话
+     *
+     * @param userSession 用户会话
+     * @return Reactor上下文
+     */
+    public static Context with(UserSession userSession) {
+        return Context.of(CONTEXT_KEY, userSession);
+    }
+
+    /**
+     * 读取当前用户会话
+     *
+     * @return 用户会话，未登录时为空
+     */
+    public static Mono<UserSession> current() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.<UserSession>getOrEmpty(CONTEXT_KEY)));
+    }
+
+    /**
+     * 读取当前用户ID
+     *
+     * @return 用户ID，未登录时抛出异常
+     */
+    public static Mono<String> currentUserId() {
+        return current().map(UserSession::getUserId)
+                .switchIfEmpty(Mono.error(new RuntimeException("用户未登录")));
+    }
+}
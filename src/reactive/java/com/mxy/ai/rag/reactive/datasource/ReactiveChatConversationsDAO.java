@@ -0,0 +1,78 @@
+package com.mxy.ai.rag.reactive.datasource;
+
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import jakarta.annotation.Resource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * 对话状态表的R2DBC访问对象
+ * 消息序号水位线的读取和乐观推进与ChatConversationsDAO保持同一套规则，Servlet节点和响应式节点可以交替写同一对话
+ *
+ * @author Mxy
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveChatConversationsDAO {
+
+    @Resource
+    private DatabaseClient databaseClient;
+
+    /**
+     * 获取对话的消息序号水位线，对话不存在时先创建
+     *
+     * @param conversationId 对话ID
+     * @return 当前水位线
+     */
+    public Mono<Long> getOrCreateLastSeq(String conversationId) {
+        return databaseClient.sql("INSERT IGNORE INTO chat_conversations (conversation_id, last_seq) VALUES (:conversationId, 0)")
+                .bind("conversationId", conversationId)
+                .fetch()
+                .rowsUpdated()
+                .then(databaseClient.sql("SELECT last_seq FROM chat_conversations WHERE conversation_id = :conversationId")
+                        .bind("conversationId", conversationId)
+                        .map((row, metadata) -> row.get("last_seq", Long.class))
+                        .one())
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * 查询对话的分支信息
+     *
+     * @param conversationId 对话ID
+     * @return 只含父对话ID和分支点序号的对话状态，对话不存在时为空
+     */
+    public Mono<ChatConversationsDO> getForkPoint(String conversationId) {
+        return databaseClient.sql("SELECT parent_conversation_id, fork_seq FROM chat_conversations WHERE conversation_id = :conversationId")
+                .bind("conversationId", conversationId)
+                .map((row, metadata) -> {
+                    ChatConversationsDO conversation = new ChatConversationsDO();
+                    conversation.setConversationId(conversationId);
+                    conversation.setParentConversationId(row.get("parent_conversation_id", String.class));
+                    conversation.setForkSeq(row.get("fork_seq", Long.class));
+                    return conversation;
+                })
+                .one();
+    }
+
+    /**
+     * 乐观推进消息序号水位线
+     *
+     * @param conversationId 对话ID
+     * @param expected       读到的旧水位线
+     * @param lastSeq        新水位线
+     * @return 水位线仍为expected且更新成功时返回true
+     */
+    public Mono<Boolean> compareAndSetLastSeq(String conversationId, long expected, long lastSeq) {
+        return databaseClient.sql("UPDATE chat_conversations SET last_seq = :lastSeq, deleted = 0, gmt_modified = NOW() "
+                        + "WHERE conversation_id = :conversationId AND last_seq = :expected")
+                .bind("lastSeq", lastSeq)
+                .bind("conversationId", conversationId)
+                .bind("expected", expected)
+                .fetch()
+                .rowsUpdated()
+                .map(rows -> rows > 0);
+    }
+}
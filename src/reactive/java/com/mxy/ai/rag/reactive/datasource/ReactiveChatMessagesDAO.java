@@ -0,0 +1,156 @@
+package com.mxy.ai.rag.reactive.datasource;
+
+import com.mxy.ai.rag.datasource.codec.ChatContentCodec;
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.springframework.data.relational.core.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.query;
+
+/**
+ * 聊天消息表的R2DBC访问对象
+ * 与ChatMessagesDAO一致：写入前按配置压缩长消息，读取后解码，上层始终只看到明文content
+ *
+ * @author Mxy
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveChatMessagesDAO {
+
+    private static final String TABLE = "chat_messages";
+
+    @Resource
+    private R2dbcEntityTemplate r2dbcEntityTemplate;
+
+    /**
+     * 是否压缩较长的消息内容
+     */
+    @Value("${mxy.chat.compression.enabled:false}")
+    private boolean compressionEnabled;
+
+    /**
+     * 内容达到该字节数才压缩
+     */
+    @Value("${mxy.chat.compression.min-bytes:1024}")
+    private int compressionMinBytes;
+
+    /**
+     * 查询对话中未删除的系统消息（滚动摘要等），按序号升序
+     *
+     * @param conversationId 对话ID
+     * @return 系统消息
+     */
+    public Flux<ChatMessagesDO> getSystemMessages(String conversationId) {
+        return r2dbcEntityTemplate.select(ChatMessagesDO.class)
+                .from(TABLE)
+                .matching(query(activeMessages(conversationId).and("message_type").is("SYSTEM"))
+                        .sort(Sort.by("message_seq")))
+                .all()
+                .doOnNext(ChatContentCodec::decode);
+    }
+
+    /**
+     * 查询对话最近的非系统消息，按序号降序
+     *
+     * @param conversationId 对话ID
+     * @param limit          最多返回的条数
+     * @return 最近的消息
+     */
+    public Flux<ChatMessagesDO> getRecentMessages(String conversationId, int limit) {
+        return r2dbcEntityTemplate.select(ChatMessagesDO.class)
+                .from(TABLE)
+                .matching(query(activeMessages(conversationId).and("message_type").not("SYSTEM"))
+                        .sort(Sort.by(Sort.Direction.DESC, "message_seq"))
+                        .limit(limit))
+                .all()
+                .doOnNext(ChatContentCodec::decode);
+    }
+
+    /**
+     * 查询分支对话从父对话继承的最近消息，按序号降序
+     * 与ChatMessagesDAO一致：父对话之后的窗口裁剪和清空都不影响分支，因此不区分软删除状态
+     *
+     * @param conversationId 父对话ID
+     * @param maxSeq         分支点序号（包含）
+     * @param limit          最多返回的条数
+     * @return 继承的非系统消息
+     */
+    public Flux<ChatMessagesDO> getInheritedMessages(String conversationId, long maxSeq, int limit) {
+        return r2dbcEntityTemplate.select(ChatMessagesDO.class)
+                .from(TABLE)
+                .matching(query(where("conversation_id").is(conversationId)
+                        .and("message_seq").lessThanOrEquals(maxSeq)
+                        .and("message_type").not("SYSTEM"))
+                        .sort(Sort.by(Sort.Direction.DESC, "message_seq"))
+                        .limit(limit))
+                .all()
+                .doOnNext(ChatContentCodec::decode);
+    }
+
+    /**
+     * 分页查询会话的对话历史（不含滚动摘要），按主键降序
+     *
+     * @param sessionId 会话ID
+     * @param pageNum   页码，从1开始
+     * @param pageSize  每页条数
+     * @return 当前页的消息
+     */
+    public Flux<ChatMessagesDO> getChatHistory(Long sessionId, int pageNum, int pageSize) {
+        return r2dbcEntityTemplate.select(ChatMessagesDO.class)
+                .from(TABLE)
+                .matching(query(historyMessages(sessionId))
+                        .sort(Sort.by(Sort.Direction.DESC, "id"))
+                        .offset((long) (pageNum - 1) * pageSize)
+                        .limit(pageSize))
+                .all()
+                .doOnNext(ChatContentCodec::decode);
+    }
+
+    /**
+     * 统计会话的对话历史条数
+     *
+     * @param sessionId 会话ID
+     * @return 条数
+     */
+    public Mono<Long> countChatHistory(Long sessionId) {
+        return r2dbcEntityTemplate.count(query(historyMessages(sessionId)), ChatMessagesDO.class);
+    }
+
+    /**
+     * 按顺序插入消息
+     *
+     * @param messages 消息列表
+     * @return 完成信号
+     */
+    public Mono<Void> insertBatch(List<ChatMessagesDO> messages) {
+        return Flux.fromIterable(messages)
+                .doOnNext(messageDO -> {
+                    if (compressionEnabled) {
+                        ChatContentCodec.encode(messageDO, compressionMinBytes);
+                    }
+                })
+                .concatMap(messageDO -> r2dbcEntityTemplate.insert(ChatMessagesDO.class).into(TABLE).using(messageDO))
+                .then();
+    }
+
+    private static Criteria activeMessages(String conversationId) {
+        return where("conversation_id").is(conversationId).and("deleted").is(0);
+    }
+
+    private static Criteria historyMessages(Long sessionId) {
+        return where("session_id").is(sessionId)
+                .and("deleted").is(0)
+                .and("creator").not(ChatMessagesDAO.SUMMARY_CREATOR);
+    }
+}
@@ -0,0 +1,43 @@
+package com.mxy.ai.rag.reactive.datasource;
+
+import com.mxy.ai.rag.datasource.entity.ChatSessionsDO;
+import jakarta.annotation.Resource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.data.relational.core.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.query;
+
+/**
+ * 聊天会话表的R2DBC访问对象
+ * 复用MyBatis-Plus的ChatSessionsDO，列名按默认命名策略由驼峰映射为下划线
+ *
+ * @author Mxy
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveChatSessionsDAO {
+
+    private static final String TABLE = "chat_sessions";
+
+    @Resource
+    private R2dbcEntityTemplate r2dbcEntityTemplate;
+
+    /**
+     * 查询属于指定用户且未删除的会话
+     *
+     * @param sessionId 会话ID
+     * @param userId    用户ID
+     * @return 会话，不存在或不属于该用户时为空
+     */
+    public Mono<ChatSessionsDO> getOwnedSession(Long sessionId, String userId) {
+        return r2dbcEntityTemplate.select(ChatSessionsDO.class)
+                .from(TABLE)
+                .matching(query(where("id").is(sessionId)
+                        .and("creator").is(userId)
+                        .and("deleted").is(0)))
+                .one();
+    }
+}
@@ -0,0 +1,287 @@
+package com.mxy.ai.rag.reactive.service;
+
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import com.mxy.ai.rag.reactive.datasource.ReactiveChatConversationsDAO;
+import com.mxy.ai.rag.reactive.datasource.ReactiveChatMessagesDAO;
+import com.mxy.ai.rag.service.memory.ChatColdTierService;
+import com.mxy.ai.rag.service.memory.ChatMemoryWindowStore;
+import com.mxy.ai.rag.service.memory.ChatMessageMetadata;
+import com.mxy.ai.rag.service.memory.TokenWindowSelector;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 响应式聊天记忆仓库
+ * 与CustomChatMemoryRepository读写同一组表，遵循同一套序号水位线规则：
+ * - 读取对话的系统消息和最近的非系统消息，按序号升序组成窗口；分支对话自身消息不足时沿父对话链补齐继承的消息，
+ *   窗口类型为token时再按token预算选取，与TokenWindowChatMemory读到的窗口一致
+ * - 追加消息时在R2DBC事务内乐观推进水位线并插入新消息，水位线已被其他节点推进时整体回滚后重试，
+ *   写入后丢弃本地缓存和Redis中的共享窗口，Servlet节点下次读取时回源数据库
+ * 窗口外旧消息的裁剪和滚动摘要仍由Servlet节点的聊天记忆负责
+ *
+ * @author Mxy
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveChatMemoryRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveChatMemoryRepository.class);
+
+    private static final String WINDOW_TYPE_TOKEN = "token";
+
+    private static final int MAX_FORK_DEPTH = 32;
+
+    @Resource
+    private ReactiveChatMessagesDAO reactiveChatMessagesDAO;
+
+    @Resource
+    private ReactiveChatConversationsDAO reactiveChatConversationsDAO;
+
+    @Resource
+    private ReactiveTransactionManager reactiveTransactionManager;
+
+    @Resource
+    private ChatColdTierService chatColdTierService;
+
+    /**
+     * Servlet节点的聊天记忆仓库，用于丢弃已过期的缓存窗口
+     */
+    @Lazy
+    @Resource
+    private ChatMemoryWindowStore chatMemoryRepository;
+
+    /**
+     * 记忆窗口类型：message按固定条数，token按token预算
+     */
+    @Value("${mxy.chat.memory.window-type:message}")
+    private String windowType;
+
+    /**
+     * 按token预算选取窗口时的token预算
+     */
+    @Value("${mxy.chat.memory.max-tokens:4000}")
+    private int maxTokens;
+
+    /**
+     * 每次最多加载的最近消息数
+     */
+    @Value("${mxy.chat.memory.max-messages:10}")
+    private int maxMessages;
+
+    /**
+     * 乐观校验失败时的最大重试次数
+     */
+    @Value("${mxy.chat.memory.serialize.max-retries:3}")
+    private int maxRetries;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    /**
+     * 按token预算选取窗口，窗口类型为message时为null
+     */
+    private TokenWindowSelector windowSelector;
+
+    /**
+     * 按窗口类型初始化窗口选取规则
+     */
+    @PostConstruct
+    public void init() {
+        if (WINDOW_TYPE_TOKEN.equalsIgnoreCase(windowType)) {
+            windowSelector = new TokenWindowSelector(maxTokens, maxMessages, tokenCountEstimator);
+        }
+    }
+
+    /**
+     * 读取对话的消息窗口
+     * 系统消息在前，其后依次为继承的消息和对话自身的消息
+     *
+     * @param conversationId 对话ID
+     * @return 按序号升序的消息列表
+     */
+    public Mono<List<Message>> findByConversationId(String conversationId) {
+        Mono<List<ChatMessagesDO>> systemMessages = reactiveChatMessagesDAO.getSystemMessages(conversationId).collectList();
+        Mono<List<ChatMessagesDO>> recentMessages = reactiveChatMessagesDAO.getRecentMessages(conversationId, maxMessages).collectList();
+        return Mono.zip(systemMessages, recentMessages)
+                .flatMap(tuple -> {
+                    List<ChatMessagesDO> recent = new ArrayList<>(tuple.getT2());
+                    Collections.reverse(recent);
+                    int remaining = maxMessages - recent.size();
+                    Mono<List<ChatMessagesDO>> inherited = remaining > 0
+                            ? getInheritedMessages(conversationId, remaining)
+                            : Mono.just(List.of());
+                    return inherited.map(ancestors -> {
+                        List<Message> messages = new ArrayList<>(tuple.getT1().size() + ancestors.size() + recent.size());
+                        for (List<ChatMessagesDO> part : List.of(tuple.getT1(), ancestors, recent)) {
+                            part.stream().map(this::convertToMessage).filter(Objects::nonNull).forEach(messages::add);
+                        }
+                        return messages;
+                    });
+                })
+                .map(messages -> windowSelector != null ? windowSelector.select(messages) : messages);
+    }
+
+    /**
+     * 分支对话自身的消息不足一个窗口时，沿父对话链向上补齐继承的消息，规则与CustomChatMemoryRepository一致
+     *
+     * @return 按序号升序的继承消息，不是分支对话时为空列表
+     */
+    private Mono<List<ChatMessagesDO>> getInheritedMessages(String conversationId, int remaining) {
+        return reactiveChatConversationsDAO.getForkPoint(conversationId)
+                .flatMap(conversation -> getAncestorMessages(conversation, Long.MAX_VALUE, remaining, 0))
+                .defaultIfEmpty(List.of());
+    }
+
+    /**
+     * 读取conversation的父对话在分支点之前的消息，不足时继续向上读取；分支点缺失时停止向上
+     */
+    private Mono<List<ChatMessagesDO>> getAncestorMessages(ChatConversationsDO conversation, long maxSeq,
+                                                           int remaining, int depth) {
+        if (depth >= MAX_FORK_DEPTH || conversation.getParentConversationId() == null || conversation.getForkSeq() == null) {
+            return Mono.just(List.of());
+        }
+        String parentConversationId = conversation.getParentConversationId();
+        long forkSeq = Math.min(maxSeq, conversation.getForkSeq());
+        return rehydrate(parentConversationId)
+                .then(reactiveChatMessagesDAO.getInheritedMessages(parentConversationId, forkSeq, remaining).collectList())
+                .flatMap(messages -> {
+                    List<ChatMessagesDO> ancestors = new ArrayList<>(messages);
+                    Collections.reverse(ancestors);
+                    int left = remaining - messages.size();
+                    if (left <= 0) {
+                        return Mono.just(ancestors);
+                    }
+                    return reactiveChatConversationsDAO.getForkPoint(parentConversationId)
+                            .flatMap(parent -> getAncestorMessages(parent, forkSeq, left, depth + 1))
+                            .defaultIfEmpty(List.of())
+                            .map(older -> {
+                                List<ChatMessagesDO> merged = new ArrayList<>(older.size() + ancestors.size());
+                                merged.addAll(older);
+                                merged.addAll(ancestors);
+                                return merged;
+                            });
+                });
+    }
+
+    /**
+     * 追加消息到对话
+     *
+     * @param conversationId 对话ID
+     * @param sessionId      会话ID
+     * @param author         消息作者
+     * @param messages       新消息
+     * @return 完成信号
+     */
+    public Mono<Void> append(String conversationId, Long sessionId, String author, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return Mono.empty();
+        }
+        TransactionalOperator transactionalOperator = TransactionalOperator.create(reactiveTransactionManager);
+        Mono<Void> appendOnce = reactiveChatConversationsDAO.getOrCreateLastSeq(conversationId)
+                .flatMap(lastSeq -> reactiveChatConversationsDAO.compareAndSetLastSeq(conversationId, lastSeq, lastSeq + messages.size())
+                        .flatMap(updated -> {
+                            if (!updated) {
+                                return Mono.error(new OptimisticLockingFailureException("对话水位线已被并发更新: conversationId=" + conversationId));
+                            }
+                            return reactiveChatMessagesDAO.insertBatch(convertToMessageDOs(sessionId, conversationId, author, messages, lastSeq));
+                        }))
+                .as(transactionalOperator::transactional);
+
+        return Mono.defer(() -> appendOnce)
+                .retryWhen(Retry.max(maxRetries)
+                        .filter(OptimisticLockingFailureException.class::isInstance)
+                        .doBeforeRetry(signal -> logger.info("对话水位线已被其他节点推进，重新读取水位线后重试: conversationId={}, attempt={}",
+                                conversationId, signal.totalRetries() + 1))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .doOnSuccess(ignored -> logger.debug("追加消息: conversationId={}, count={}", conversationId, messages.size()))
+                .then(evict(conversationId));
+    }
+
+    /**
+     * 丢弃本地缓存和Redis中的共享窗口（阻塞调用），其中不包含响应式节点刚写入的消息
+     */
+    private Mono<Void> evict(String conversationId) {
+        return Mono.fromRunnable(() -> chatMemoryRepository.evict(conversationId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    /**
+     * 已迁移到冷存储的父对话先回迁到热表（阻塞调用）
+     */
+    private Mono<Void> rehydrate(String conversationId) {
+        return Mono.fromRunnable(() -> chatColdTierService.rehydrateIfCold(conversationId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    private List<ChatMessagesDO> convertToMessageDOs(Long sessionId, String conversationId, String author,
+                                                     List<Message> messages, long lastSeq) {
+        List<ChatMessagesDO> messageDOs = new ArrayList<>(messages.size());
+        LocalDateTime now = LocalDateTime.now();
+        long seq = lastSeq;
+        for (Message message : messages) {
+            seq++;
+            ChatMessagesDO messageDO = new ChatMessagesDO();
+            messageDO.setSessionId(sessionId);
+            messageDO.setConversationId(conversationId);
+            messageDO.setMessageSeq(seq);
+            messageDO.setMessageType(message.getMessageType().name());
+            messageDO.setContent(message.getText());
+            messageDO.setTokenCount(StringUtils.hasText(message.getText()) ? tokenCountEstimator.estimate(message.getText()) : 0);
+            messageDO.setDeleted(0);
+            // 同一批消息的创建时间按序号错开，保证按时间排序时顺序稳定
+            LocalDateTime createTime = now.plusNanos((seq - lastSeq) * 1_000_000L);
+            messageDO.setGmtCreate(createTime);
+            messageDO.setGmtModified(createTime);
+            messageDO.setCreator(author);
+            messageDO.setModifier(author);
+            messageDOs.add(messageDO);
+        }
+        return messageDOs;
+    }
+
+    private Message convertToMessage(ChatMessagesDO messageDO) {
+        if (!StringUtils.hasText(messageDO.getContent())) {
+            return null;
+        }
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(ChatMessageMetadata.MESSAGE_SEQ, messageDO.getMessageSeq() != null ? messageDO.getMessageSeq() : 0L);
+        if (messageDO.getTokenCount() != null) {
+            metadata.put(ChatMessageMetadata.TOKEN_COUNT, messageDO.getTokenCount());
+        }
+        MessageType messageType;
+        try {
+            messageType = MessageType.valueOf(messageDO.getMessageType().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("未知的消息类型: {}", messageDO.getMessageType());
+            messageType = MessageType.USER;
+        }
+        return ChatMessageMetadata.create(messageType, messageDO.getContent(), metadata);
+    }
+}
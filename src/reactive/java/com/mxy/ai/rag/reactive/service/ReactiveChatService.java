@@ -0,0 +1,254 @@
+package com.mxy.ai.rag.reactive.service;
+
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import com.mxy.ai.rag.dto.ChatAskDTO;
+import com.mxy.ai.rag.dto.ChatMessagePageRequestDTO;
+import com.mxy.ai.rag.reactive.config.ReactiveUserContext;
+import com.mxy.ai.rag.reactive.datasource.ReactiveChatMessagesDAO;
+import com.mxy.ai.rag.reactive.datasource.ReactiveChatSessionsDAO;
+import com.mxy.ai.rag.service.KnowledgeBaseService;
+import com.mxy.ai.rag.service.memory.ChatColdTierService;
+import com.mxy.ai.rag.service.memory.ChatLongTermMemory;
+import com.mxy.ai.rag.service.stream.ChatStreamBuffer;
+import com.mxy.ai.rag.service.stream.ChatStreamCancellation;
+import com.mxy.ai.rag.service.stream.ChatStreamEvent;
+import com.mxy.ai.rag.service.stream.ChatStreamRegistry;
+import com.mxy.ai.rag.service.stream.TokenFrameAggregator;
+import com.mxy.ai.rag.web.vo.ChatMessageVO;
+import com.mxy.ai.rag.web.vo.ChatSourceVO;
+import com.mxy.ai.rag.web.vo.PageResult;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.BeanUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuples;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 响应式智能对话服务
+ * 流式问答从认证到落库全程不占用请求线程：
+ * - 用户身份从Reactor上下文读取，会话归属、对话历史和消息写入走R2DBC
+ * - 知识库检索仍是阻塞调用，放到boundedElastic上与历史读取并行执行；两者完成后按读到的窗口召回长期记忆
+ * - 回答完成后在同一条流上写入本轮问答，客户端断开时写入已生成的部分回答
+ *
+ * @author Mxy
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveChatService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveChatService.class);
+
+    @Resource
+    private KnowledgeBaseService knowledgeBaseService;
+
+    @Resource
+    private ReactiveChatMemoryRepository reactiveChatMemoryRepository;
+
+    @Resource
+    private ReactiveChatSessionsDAO reactiveChatSessionsDAO;
+
+    @Resource
+    private ReactiveChatMessagesDAO reactiveChatMessagesDAO;
+
+    @Resource
+    private ChatColdTierService chatColdTierService;
+
+    @Resource
+    private ChatLongTermMemory chatLongTermMemory;
+
+    @Resource
+    private ChatStreamRegistry chatStreamRegistry;
+
+    @Resource
+    private TokenFrameAggregator tokenFrameAggregator;
+
+    /**
+     * 智能问答（流式）
+     *
+     * @param dto 流式问答请求数据传输对象
+     * @return 流式问答结果
+     */
+    public Flux<String> askQuestionStream(ChatAskDTO dto) {
+        Assert.notNull(dto.getSessionId(), "会话ID不能为空");
+        Assert.hasText(dto.getQuestion(), "问题内容不能为空");
+        return ReactiveUserContext.currentUserId().flatMapMany(userId -> {
+            logger.info("开始处理响应式流式智能问答: sessionId={}, userId={}, question={}",
+                    dto.getSessionId(), userId, dto.getQuestion());
+            return chatStreamRegistry.track(tokenFrameAggregator.aggregate(answerStream(dto, userId, documents -> {
+            })));
+        });
+    }
+
+    /**
+     * 开始SSE流式问答
+     * 回答在请求之外订阅并写入回答流的重放缓冲区，用户ID在启动前从Reactor上下文取出
+     *
+     * @param dto 流式问答请求数据传输对象
+     * @return 回答流ID
+     */
+    public Mono<String> startAnswerStream(ChatAskDTO dto) {
+        Assert.notNull(dto.getSessionId(), "会话ID不能为空");
+        Assert.hasText(dto.getQuestion(), "问题内容不能为空");
+        return ReactiveUserContext.currentUserId().map(userId -> {
+            logger.info("开始处理响应式SSE流式智能问答: sessionId={}, userId={}, question={}",
+                    dto.getSessionId(), userId, dto.getQuestion());
+            ChatStreamBuffer buffer = chatStreamRegistry.create(userId);
+            chatStreamRegistry.start(buffer, tokenFrameAggregator.aggregate(answerStream(dto, userId,
+                    documents -> buffer.emit(ChatStreamEvent.SOURCES, toSourceVOs(documents)))));
+            return buffer.getStreamId();
+        });
+    }
+
+    /**
+     * 订阅SSE流式问答
+     *
+     * @param streamId    回答流ID
+     * @param lastEventId 客户端已收到的最后一个事件ID，首次连接传0
+     * @return SSE事件流
+     */
+    public Flux<ServerSentEvent<Object>> subscribeAnswerStream(String streamId, long lastEventId) {
+        return ReactiveUserContext.currentUserId().flatMapMany(userId -> {
+            ChatStreamBuffer buffer = chatStreamRegistry.get(streamId, userId);
+            if (buffer == null) {
+                return Flux.error(new RuntimeException("回答流不存在或已过期"));
+            }
+            return chatStreamRegistry.track(chatStreamRegistry.toServerSentEvents(buffer, lastEventId));
+        });
+    }
+
+    /**
+     * 分页查询对话历史
+     *
+     * @param dto 分页请求
+     * @return 分页的对话历史
+     */
+    public Mono<PageResult<ChatMessageVO>> getChatHistory(ChatMessagePageRequestDTO dto) {
+        Assert.notNull(dto.getSessionId(), "会话ID不能为空");
+        int pageNum = dto.getPageNum() != null && dto.getPageNum() > 0 ? dto.getPageNum() : 1;
+        int pageSize = dto.getPageSize() != null && dto.getPageSize() > 0 ? dto.getPageSize() : 20;
+        Long sessionId = dto.getSessionId();
+
+        return ReactiveUserContext.currentUserId()
+                .flatMap(userId -> reactiveChatSessionsDAO.getOwnedSession(sessionId, userId))
+                .switchIfEmpty(Mono.error(new RuntimeException("会话不存在或无权访问")))
+                .then(rehydrate(sessionId.toString()))
+                .then(Mono.zip(
+                        reactiveChatMessagesDAO.getChatHistory(sessionId, pageNum, pageSize).map(this::toMessageVO).collectList(),
+                        reactiveChatMessagesDAO.countChatHistory(sessionId)))
+                .map(tuple -> new PageResult<>(tuple.getT1(), tuple.getT2(), (long) pageNum, (long) pageSize));
+    }
+
+    /**
+     * 组装流式回答：校验会话归属后并行完成检索和历史读取，回答完成时写入本轮问答并存入长期记忆；
+     * 客户端断开等原因取消时，写入问题和已生成的部分回答
+     *
+     * @param dto             流式问答请求数据传输对象
+     * @param userId          当前用户ID
+     * @param sourcesListener 检索结果回调
+     * @return 流式回答内容
+     */
+    private Flux<String> answerStream(ChatAskDTO dto, String userId, Consumer<List<Document>> sourcesListener) {
+        long startTime = System.currentTimeMillis();
+        Long sessionId = dto.getSessionId();
+        String conversationId = sessionId.toString();
+        String question = dto.getQuestion();
+        int topK = dto.getTopK() != null ? dto.getTopK() : 0;
+
+        Mono<List<Document>> documents = Mono.fromCallable(() -> knowledgeBaseService.searchKnowledge(question, topK, sourcesListener))
+                .subscribeOn(Schedulers.boundedElastic());
+        Mono<List<Message>> history = rehydrate(conversationId)
+                .then(reactiveChatMemoryRepository.findByConversationId(conversationId));
+
+        return reactiveChatSessionsDAO.getOwnedSession(sessionId, userId)
+                .switchIfEmpty(Mono.error(new RuntimeException("会话不存在或无权访问")))
+                .then(Mono.zip(documents, history))
+                // 长期记忆召回复用R2DBC读到的窗口，不再经由阻塞的聊天记忆重新读取
+                .flatMap(retrieved -> Mono.fromCallable(() -> knowledgeBaseService.buildSystemPrompt(
+                                userId, conversationId, question, retrieved.getT1(), retrieved.getT2()))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .map(systemPrompt -> Tuples.of(systemPrompt, retrieved.getT2())))
+                .flatMapMany(prepared -> Flux.deferContextual(context -> {
+                    StringBuilder fullAnswer = new StringBuilder();
+                    AtomicBoolean recorded = new AtomicBoolean(false);
+                    return knowledgeBaseService.streamAnswer(prepared.getT1(), prepared.getT2(), question)
+                            .doOnNext(fullAnswer::append)
+                            .concatWith(Mono.defer(() -> {
+                                if (!recorded.compareAndSet(false, true)) {
+                                    return Mono.empty();
+                                }
+                                String answer = fullAnswer.toString();
+                                logger.info("响应式流式知识库对话完成，查询: '{}', 耗时: {}ms", question, System.currentTimeMillis() - startTime);
+                                return reactiveChatMemoryRepository.append(conversationId, sessionId, userId,
+                                                List.of(new UserMessage(question), new AssistantMessage(answer)))
+                                        .doOnSuccess(ignored -> chatLongTermMemory.remember(userId, conversationId, question, answer))
+                                        .then(Mono.empty());
+                            }))
+                            .doOnCancel(() -> {
+                                if (recorded.compareAndSet(false, true)) {
+                                    recordPartialAnswer(conversationId, sessionId, userId, question, fullAnswer.toString(),
+                                            ChatStreamCancellation.reasonOf(context), startTime);
+                                }
+                            });
+                }))
+                .doOnError(error -> logger.error("响应式流式智能问答处理失败: {}", error.getMessage(), error));
+    }
+
+    /**
+     * 记录被取消的流式回答，写入在取消信号之外独立订阅，不随请求一起被取消
+     */
+    private void recordPartialAnswer(String conversationId, Long sessionId, String userId, String question,
+                                     String partialAnswer, String reason, long startTime) {
+        logger.info("响应式流式知识库对话已取消: conversationId={}, reason={}, partialLength={}, 耗时: {}ms",
+                conversationId, reason, partialAnswer.length(), System.currentTimeMillis() - startTime);
+        List<Message> messages = StringUtils.hasText(partialAnswer)
+                ? List.of(new UserMessage(question), new AssistantMessage(partialAnswer))
+                : List.of(new UserMessage(question));
+        reactiveChatMemoryRepository.append(conversationId, sessionId, userId, messages)
+                .subscribe(null, error -> logger.error("记录部分回答失败: conversationId={}", conversationId, error));
+    }
+
+    /**
+     * 已迁移到冷存储的对话先回迁到热表（阻塞调用）
+     */
+    private Mono<Void> rehydrate(String conversationId) {
+        return Mono.fromRunnable(() -> chatColdTierService.rehydrateIfCold(conversationId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    private ChatMessageVO toMessageVO(ChatMessagesDO messageDO) {
+        ChatMessageVO chatMessageVO = new ChatMessageVO();
+        BeanUtils.copyProperties(messageDO, chatMessageVO);
+        return chatMessageVO;
+    }
+
+    /**
+     * 转换检索到的知识库文档为来源响应对象
+     */
+    private static List<ChatSourceVO> toSourceVOs(List<Document> documents) {
+        return documents.stream().map(document -> {
+            ChatSourceVO source = new ChatSourceVO();
+            source.setId(document.getId());
+            source.setContent(document.getText());
+            source.setScore(document.getScore());
+            source.setMetadata(document.getMetadata());
+            return source;
+        }).toList();
+    }
+}
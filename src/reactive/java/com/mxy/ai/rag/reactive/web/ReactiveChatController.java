@@ -0,0 +1,155 @@
+package com.mxy.ai.rag.reactive.web;
+
+import com.mxy.ai.rag.dto.ChatAskDTO;
+import com.mxy.ai.rag.dto.ChatMessagePageRequestDTO;
+import com.mxy.ai.rag.reactive.service.ReactiveChatService;
+import com.mxy.ai.rag.service.stream.ChatStreamEvent;
+import com.mxy.ai.rag.web.param.ChatAskRequest;
+import com.mxy.ai.rag.web.param.ChatMessagePageRequest;
+import com.mxy.ai.rag.web.vo.ApiResult;
+import com.mxy.ai.rag.web.vo.ChatMessageVO;
+import com.mxy.ai.rag.web.vo.PageResult;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.util.Map;
+
+/**
+ * 响应式智能对话控制器
+ * reactive profile下替代ChatController的问答和历史接口，路径和响应格式保持一致，前端无需区分节点类型
+ *
+ * @author Mxy
+ */
+@Tag(name = "智能对话管理（响应式）", description = "基于WebFlux和R2DBC的流式问答和对话历史查询")
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api/v1/chat")
+public class ReactiveChatController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveChatController.class);
+
+    private static final String STREAM_ID_HEADER = "X-Chat-Stream-Id";
+
+    @Resource
+    private ReactiveChatService reactiveChatService;
+
+    /**
+     * 流式智能问答
+     * 客户端断开时WebFlux取消订阅，上游回答随之取消
+     *
+     * @param request 流式问答请求参数
+     * @return 流式回答内容
+     */
+    @Operation(summary = "流式智能问答", description = "基于知识库进行智能问答，以流的形式返回回答内容")
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_PLAIN_VALUE)
+    public Flux<String> askQuestionStream(
+            @Parameter(description = "流式问答请求参数", required = true)
+            @Valid @RequestBody ChatAskRequest request) {
+        logger.info("接收响应式流式智能问答请求: sessionId={}, question={}", request.getSessionId(), request.getQuestion());
+        ChatAskDTO dto = new ChatAskDTO();
+        BeanUtils.copyProperties(request, dto);
+        return Flux.defer(() -> reactiveChatService.askQuestionStream(dto))
+                .onErrorResume(e -> {
+                    logger.error("流式智能问答失败: {}", e.getMessage(), e);
+                    return Flux.just("智能问答处理失败: " + e.getMessage());
+                });
+    }
+
+    /**
+     * SSE流式智能问答
+     * 回答流ID通过X-Chat-Stream-Id响应头返回，断线后可携带Last-Event-ID续传
+     *
+     * @param request  流式问答请求参数
+     * @param response HTTP响应
+     * @return SSE事件流
+     */
+    @Operation(summary = "SSE流式智能问答", description = "以SSE事件流返回回答内容，支持断线后按Last-Event-ID续传")
+    @PostMapping(value = "/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> askQuestionSse(
+            @Parameter(description = "流式问答请求参数", required = true)
+            @Valid @RequestBody ChatAskRequest request,
+            ServerHttpResponse response) {
+        logger.info("接收响应式SSE流式智能问答请求: sessionId={}, question={}", request.getSessionId(), request.getQuestion());
+        ChatAskDTO dto = new ChatAskDTO();
+        BeanUtils.copyProperties(request, dto);
+        prepareEventStream(response);
+        return Mono.defer(() -> reactiveChatService.startAnswerStream(dto))
+                .flatMapMany(streamId -> {
+                    response.getHeaders().set(STREAM_ID_HEADER, streamId);
+                    return reactiveChatService.subscribeAnswerStream(streamId, 0L);
+                })
+                .onErrorResume(e -> {
+                    logger.error("SSE流式智能问答失败: {}", e.getMessage(), e);
+                    return Flux.just(errorEvent("SSE流式智能问答失败: " + e.getMessage()));
+                });
+    }
+
+    /**
+     * SSE流式智能问答续传
+     *
+     * @param streamId    回答流ID
+     * @param lastEventId 客户端已收到的最后一个事件ID
+     * @param response    HTTP响应
+     * @return SSE事件流
+     */
+    @Operation(summary = "SSE流式智能问答续传", description = "断线重连时按Last-Event-ID续传回答，不重新生成")
+    @GetMapping(value = "/sse/{streamId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> resumeQuestionSse(
+            @Parameter(description = "回答流ID", required = true) @PathVariable String streamId,
+            @Parameter(description = "已收到的最后一个事件ID")
+            @RequestHeader(value = "Last-Event-ID", required = false, defaultValue = "0") long lastEventId,
+            ServerHttpResponse response) {
+        logger.info("续传响应式SSE流式智能问答: streamId={}, lastEventId={}", streamId, lastEventId);
+        prepareEventStream(response);
+        return Flux.defer(() -> reactiveChatService.subscribeAnswerStream(streamId, lastEventId))
+                .onErrorResume(e -> {
+                    logger.error("SSE流式智能问答续传失败: {}", e.getMessage(), e);
+                    return Flux.just(errorEvent("SSE流式智能问答续传失败: " + e.getMessage()));
+                });
+    }
+
+    /**
+     * 获取对话历史
+     *
+     * @param chatMessagePageRequest 分页请求参数
+     * @return 分页的对话历史
+     */
+    @Operation(summary = "获取对话历史", description = "分页查询指定会话的对话历史记录")
+    @PostMapping("/getChatHistory")
+    public Mono<ApiResult<PageResult<ChatMessageVO>>> getChatHistory(@RequestBody ChatMessagePageRequest chatMessagePageRequest) {
+        logger.info("获取对话历史: sessionId={}, pageNum={}, pageSize={}",
+                chatMessagePageRequest.getSessionId(),
+                chatMessagePageRequest.getPageNum(), chatMessagePageRequest.getPageSize());
+        ChatMessagePageRequestDTO chatMessagePageRequestDTO = new ChatMessagePageRequestDTO();
+        BeanUtils.copyProperties(chatMessagePageRequest, chatMessagePageRequestDTO);
+        return Mono.defer(() -> reactiveChatService.getChatHistory(chatMessagePageRequestDTO))
+                .map(ApiResult::success)
+                .onErrorResume(e -> {
+                    logger.error("获取对话历史失败: {}", e.getMessage(), e);
+                    return Mono.just(ApiResult.error("获取对话历史失败: " + e.getMessage()));
+                });
+    }
+
+    private static void prepareEventStream(ServerHttpResponse response) {
+        response.getHeaders().set(HttpHeaders.CACHE_CONTROL, "no-cache");
+        response.getHeaders().set("X-Accel-Buffering", "no");
+    }
+
+    private static ServerSentEvent<Object> errorEvent(String message) {
+        return ServerSentEvent.<Object>builder(Map.of("message", message)).event(ChatStreamEvent.ERROR).build();
+    }
+}
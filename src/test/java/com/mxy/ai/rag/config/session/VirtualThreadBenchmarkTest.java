@@ -0,0 +1,146 @@
+package com.mxy.ai.rag.config.session;
+
+import com.alibaba.ttl.TtlRunnable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.JRE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 平台线程与虚拟线程执行模式对比测试
+ * 模拟大量并发请求：每个请求在RAG流水线执行器上并行执行检索和记忆加载，再阻塞等待一次较慢的大模型调用。
+ * 基准测试耗时较长，默认跳过，通过-Dmxy.benchmark=true运行：
+ * mvn test -Dtest=VirtualThreadBenchmarkTest -Dmxy.benchmark=true
+ *
+ * @author Mxy
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadBenchmarkTest.class);
+
+    private static final int REQUESTS = 2000;
+
+    /**
+     * 与Tomcat默认的最大工作线程数一致
+     */
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    private static final Duration RETRIEVAL_LATENCY = Duration.ofMillis(20);
+
+    private static final Duration MEMORY_LATENCY = Duration.ofMillis(5);
+
+    private static final Duration LLM_LATENCY = Duration.ofMillis(500);
+
+    @Test
+    void testUserSessionPropagatesToVirtualThreadExecutors() throws Exception {
+        VirtualThreadConfig config = new VirtualThreadConfig();
+        SimpleAsyncTaskExecutor requestExecutor = config.ttlTaskExecutor();
+        SimpleAsyncTaskExecutor pipelineExecutor = config.ragPipelineExecutor(4);
+
+        String userId = requestExecutor.submit(() -> {
+            UserSessionHolder.setUserSession(new UserSession("user-1", "alice"));
+            try {
+                return CompletableFuture.supplyAsync(UserSessionHolder::getCurrentUserId, pipelineExecutor)
+                        .get(5, TimeUnit.SECONDS);
+            } finally {
+                UserSessionHolder.clearUserSession();
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals("user-1", userId);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "mxy.benchmark", matches = "true")
+    void benchmarkPlatformAndVirtualThreads() throws Exception {
+        ThreadPoolTaskExecutor tomcatExecutor = new ThreadPoolTaskExecutor();
+        tomcatExecutor.setCorePoolSize(TOMCAT_MAX_THREADS);
+        tomcatExecutor.setMaxPoolSize(TOMCAT_MAX_THREADS);
+        tomcatExecutor.setThreadNamePrefix("bench-tomcat-");
+        tomcatExecutor.setTaskDecorator(TtlRunnable::get);
+        tomcatExecutor.initialize();
+        Result platform;
+        try {
+            platform = run("platform", tomcatExecutor, new TtlConfig().ragPipelineExecutor());
+        } finally {
+            tomcatExecutor.shutdown();
+        }
+
+        VirtualThreadConfig config = new VirtualThreadConfig();
+        Result virtual = run("virtual", config.ttlTaskExecutor(), config.ragPipelineExecutor(64));
+
+        logger.info("虚拟线程相对平台线程的吞吐提升: {}x", String.format("%.2f", virtual.throughput() / platform.throughput()));
+        assertEquals(REQUESTS, platform.completed());
+        assertEquals(REQUESTS, virtual.completed());
+    }
+
+    /**
+     * 以requestExecutor模拟请求线程，提交REQUESTS个请求并等待全部完成
+     */
+    private Result run(String mode, AsyncTaskExecutor requestExecutor, Executor pipelineExecutor) throws Exception {
+        AtomicInteger completed = new AtomicInteger();
+        long[] latencies = new long[REQUESTS];
+        List<CompletableFuture<Void>> requests = new ArrayList<>(REQUESTS);
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            int index = i;
+            String userId = "user-" + i;
+            requests.add(CompletableFuture.runAsync(() -> {
+                UserSessionHolder.setUserSession(new UserSession(userId, userId));
+                try {
+                    CompletableFuture<String> retrieval = CompletableFuture.supplyAsync(() -> {
+                        sleep(RETRIEVAL_LATENCY);
+                        return UserSessionHolder.getCurrentUserId();
+                    }, pipelineExecutor);
+                    CompletableFuture<Void> memory = CompletableFuture.runAsync(() -> sleep(MEMORY_LATENCY), pipelineExecutor);
+                    String retrievalUserId = retrieval.thenCombine(memory, (user, ignored) -> user).join();
+                    sleep(LLM_LATENCY);
+                    if (userId.equals(retrievalUserId)) {
+                        completed.incrementAndGet();
+                    }
+                } finally {
+                    UserSessionHolder.clearUserSession();
+                }
+                latencies[index] = System.nanoTime() - start;
+            }, requestExecutor));
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.MINUTES);
+        long elapsedNanos = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        Result result = new Result(completed.get(), REQUESTS * 1_000_000_000.0 / elapsedNanos);
+        logger.info("{}: requests={}, elapsedMs={}, throughput={}/s, p50Ms={}, p99Ms={}",
+                mode, REQUESTS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), String.format("%.1f", result.throughput()),
+                TimeUnit.NANOSECONDS.toMillis(latencies[REQUESTS / 2]),
+                TimeUnit.NANOSECONDS.toMillis(latencies[REQUESTS * 99 / 100]));
+        return result;
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Result(int completed, double throughput) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.mxy.ai.rag.datasource.codec;
+
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatContentCodec测试类
+ *
+ * @author Mxy
+ */
+class ChatContentCodecTest {
+
+    @Test
+    void testLargeContentRoundTrip() {
+        String content = "检索增强生成的回答内容。".repeat(200);
+        ChatMessagesDO messageDO = message(content);
+
+        ChatContentCodec.encode(messageDO, 1024);
+        assertEquals(ChatContentCodec.FORMAT_DEFLATE, messageDO.getContentFormat());
+        assertEquals("", messageDO.getContent());
+        assertNotNull(messageDO.getContentBlob());
+
+        // 重复编码不会再次压缩
+        byte[] blob = messageDO.getContentBlob();
+        ChatContentCodec.encode(messageDO, 1024);
+        assertSame(blob, messageDO.getContentBlob());
+
+        ChatContentCodec.decode(messageDO);
+        assertEquals(content, messageDO.getContent());
+        assertEquals(ChatContentCodec.FORMAT_PLAIN, messageDO.getContentFormat());
+        assertNull(messageDO.getContentBlob());
+    }
+
+    @Test
+    void testShortContentStaysPlain() {
+        ChatMessagesDO messageDO = message("你好");
+
+        ChatContentCodec.encode(messageDO, 1024);
+
+        assertEquals(ChatContentCodec.FORMAT_PLAIN, messageDO.getContentFormat());
+        assertEquals("你好", messageDO.getContent());
+        assertNull(messageDO.getContentBlob());
+    }
+
+    private static ChatMessagesDO message(String content) {
+        ChatMessagesDO messageDO = new ChatMessagesDO();
+        messageDO.setContent(content);
+        return messageDO;
+    }
+}
@@ -0,0 +1,65 @@
+package com.mxy.ai.rag.service.embedding;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CachingEmbeddingModel测试类
+ * 验证同一个问题只向下层嵌入模型请求一次向量
+ *
+ * @author Mxy
+ */
+class CachingEmbeddingModelTest {
+
+    private EmbeddingModel delegate;
+
+    private CachingEmbeddingModel embeddingModel;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(EmbeddingModel.class);
+        when(delegate.embed("question")).thenReturn(new float[]{0.1f, 0.2f});
+        when(delegate.embed("other question")).thenReturn(new float[]{0.3f, 0.4f});
+        embeddingModel = new CachingEmbeddingModel(delegate, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testRepeatedQueryIsEmbeddedOnce() {
+        // 知识库检索和长期记忆召回各调用一次embed(String)
+        float[] knowledgeEmbedding = embeddingModel.embed("question");
+        float[] memoryEmbedding = embeddingModel.embed("question");
+
+        assertArrayEquals(knowledgeEmbedding, memoryEmbedding);
+        verify(delegate, times(1)).embed("question");
+        assertEquals(1, embeddingModel.stats().hitCount());
+        assertEquals(1, embeddingModel.stats().missCount());
+    }
+
+    @Test
+    void testDifferentQueriesAreEmbeddedSeparately() {
+        assertArrayEquals(new float[]{0.1f, 0.2f}, embeddingModel.embed("question"));
+        assertArrayEquals(new float[]{0.3f, 0.4f}, embeddingModel.embed("other question"));
+
+        verify(delegate, times(1)).embed("question");
+        verify(delegate, times(1)).embed("other question");
+    }
+
+    @Test
+    void testBatchEmbeddingBypassesCache() {
+        List<String> texts = List.of("question", "other question");
+        when(delegate.embed(texts)).thenReturn(List.of(new float[]{0.1f, 0.2f}, new float[]{0.3f, 0.4f}));
+
+        embeddingModel.embed(texts);
+        embeddingModel.embed(texts);
+
+        verify(delegate, times(2)).embed(texts);
+        assertEquals(0, embeddingModel.stats().requestCount());
+    }
+}
@@ -0,0 +1,82 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * CachingChatMemoryRepository测试类
+ * 验证消息窗口缓存的命中、写穿和失效逻辑
+ *
+ * @author Mxy
+ */
+class CachingChatMemoryRepositoryTest {
+
+    @Mock
+    private ChatMemoryWindowStore delegate;
+
+    private CachingChatMemoryRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        repository = new CachingChatMemoryRepository(delegate, 100, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void testFindByConversationIdHitsCacheAfterFirstLoad() {
+        String conversationId = "test-conversation-123";
+        List<Message> window = List.of(ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L));
+        when(delegate.findByConversationId(conversationId)).thenReturn(window);
+
+        assertEquals(window, repository.findByConversationId(conversationId));
+        assertEquals(window, repository.findByConversationId(conversationId));
+
+        // 第二次读取命中缓存，不再访问下层存储
+        verify(delegate, times(1)).findByConversationId(conversationId);
+        assertEquals(1L, repository.stats().hitCount());
+        assertEquals(1L, repository.stats().missCount());
+    }
+
+    @Test
+    void testSaveAllWritesThroughAndCachesSavedWindow() {
+        String conversationId = "test-conversation-123";
+        List<Message> incoming = List.of(new UserMessage("Hello"), new AssistantMessage("Hi there!"));
+        List<Message> saved = List.of(
+                ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L),
+                ChatMessageMetadata.withSeq(new AssistantMessage("Hi there!"), 2L));
+        when(delegate.saveWindow(conversationId, incoming)).thenReturn(saved);
+
+        repository.saveAll(conversationId, incoming);
+
+        // 保存后直接从缓存读取落库后的窗口（带序号），不查询下层存储
+        assertEquals(saved, repository.findByConversationId(conversationId));
+        verify(delegate, times(1)).saveWindow(conversationId, incoming);
+        verify(delegate, never()).findByConversationId(any());
+    }
+
+    @Test
+    void testDeleteByConversationIdInvalidatesCache() {
+        String conversationId = "test-conversation-123";
+        List<Message> window = List.of(ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L));
+        when(delegate.findByConversationId(conversationId)).thenReturn(window).thenReturn(List.of());
+
+        repository.findByConversationId(conversationId);
+        repository.deleteByConversationId(conversationId);
+
+        assertTrue(repository.findByConversationId(conversationId).isEmpty());
+        verify(delegate, times(1)).deleteByConversationId(conversationId);
+        verify(delegate, times(2)).findByConversationId(conversationId);
+    }
+}
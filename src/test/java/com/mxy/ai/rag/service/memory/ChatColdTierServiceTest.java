@@ -0,0 +1,113 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mxy.ai.rag.datasource.dao.ChatColdSegmentsDAO;
+import com.mxy.ai.rag.datasource.dao.ChatConversationsDAO;
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import com.mxy.ai.rag.datasource.entity.ChatColdSegmentsDO;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * ChatColdTierService测试类
+ * 验证迁移事务内重新校验对话仍然空闲，期间有新写入时放弃迁移
+ *
+ * @author Mxy
+ */
+class ChatColdTierServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private ChatMessagesDAO chatMessagesDAO;
+
+    private ChatConversationsDAO chatConversationsDAO;
+
+    private ChatColdSegmentsDAO chatColdSegmentsDAO;
+
+    private ChatColdTierService chatColdTierService;
+
+    @BeforeEach
+    void setUp() {
+        chatMessagesDAO = mock(ChatMessagesDAO.class);
+        chatConversationsDAO = mock(ChatConversationsDAO.class);
+        chatColdSegmentsDAO = mock(ChatColdSegmentsDAO.class);
+
+        ChatMessagesDO message = new ChatMessagesDO();
+        message.setId(42L);
+        message.setConversationId("1");
+        message.setMessageSeq(3L);
+        message.setContent("问题");
+        when(chatMessagesDAO.listAllByConversationId("1")).thenReturn(List.of(message));
+        when(chatConversationsDAO.getByConversationId("1")).thenReturn(conversation(3L, 8));
+
+        chatColdTierService = new ChatColdTierService();
+        ReflectionTestUtils.setField(chatColdTierService, "chatMessagesDAO", chatMessagesDAO);
+        ReflectionTestUtils.setField(chatColdTierService, "chatConversationsDAO", chatConversationsDAO);
+        ReflectionTestUtils.setField(chatColdTierService, "chatColdSegmentsDAO", chatColdSegmentsDAO);
+        ReflectionTestUtils.setField(chatColdTierService, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(chatColdTierService, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(chatColdTierService, "chatMemoryRepository", mock(ChatMemoryWindowStore.class));
+        ReflectionTestUtils.setField(chatColdTierService, "directory", directory.toString());
+        ReflectionTestUtils.setField(chatColdTierService, "idleThreshold", Duration.ofDays(7));
+        ReflectionTestUtils.setField(chatColdTierService, "maxSegmentSize", DataSize.ofMegabytes(1));
+        chatColdTierService.init();
+    }
+
+    @Test
+    void testIdleConversationIsTiered() throws Exception {
+        when(chatConversationsDAO.lockByConversationId("1")).thenReturn(conversation(3L, 8));
+
+        assertEquals(1, chatColdTierService.tierConversation("1"));
+
+        verify(chatColdSegmentsDAO).save(any(ChatColdSegmentsDO.class));
+        verify(chatMessagesDAO).removeColdMessages("1", 42L);
+    }
+
+    @Test
+    void testTieringIsAbandonedWhenWatermarkMoved() throws Exception {
+        // 读取消息之后又写入了一轮问答
+        when(chatConversationsDAO.lockByConversationId("1")).thenReturn(conversation(5L, 0));
+
+        assertEquals(0, chatColdTierService.tierConversation("1"));
+
+        verify(chatColdSegmentsDAO, never()).save(any(ChatColdSegmentsDO.class));
+        verify(chatMessagesDAO, never()).removeColdMessages(anyString(), anyLong());
+    }
+
+    @Test
+    void testTieringIsAbandonedWhenConversationWasRehydrated() throws Exception {
+        // 回迁会刷新最后活跃时间，水位线不变
+        when(chatConversationsDAO.lockByConversationId("1")).thenReturn(conversation(3L, 0));
+
+        assertEquals(0, chatColdTierService.tierConversation("1"));
+
+        verify(chatMessagesDAO, never()).removeColdMessages(anyString(), anyLong());
+    }
+
+    private static ChatConversationsDO conversation(long lastSeq, int idleDays) {
+        ChatConversationsDO conversation = new ChatConversationsDO();
+        conversation.setConversationId("1");
+        conversation.setLastSeq(lastSeq);
+        conversation.setDeleted(0);
+        conversation.setGmtModified(LocalDateTime.now().minusDays(idleDays));
+        return conversation;
+    }
+}
@@ -0,0 +1,127 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.mxy.ai.rag.datasource.dao.ChatConversationsDAO;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * ChatLongTermMemory测试类
+ * 验证存入时记录消息序号，召回时排除当前对话中仍在最近窗口内的轮次
+ *
+ * @author Mxy
+ */
+class ChatLongTermMemoryTest {
+
+    private PgVectorStore vectorStore;
+
+    private ChatConversationsDAO chatConversationsDAO;
+
+    private ChatLongTermMemory chatLongTermMemory;
+
+    @BeforeEach
+    void setUp() {
+        vectorStore = mock(PgVectorStore.class);
+        chatConversationsDAO = mock(ChatConversationsDAO.class);
+        ThreadPoolTaskExecutor executor = mock(ThreadPoolTaskExecutor.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(new Document("用户：早期问题\n助手：早期回答")));
+
+        chatLongTermMemory = new ChatLongTermMemory();
+        ReflectionTestUtils.setField(chatLongTermMemory, "vectorStore", vectorStore);
+        ReflectionTestUtils.setField(chatLongTermMemory, "chatConversationsDAO", chatConversationsDAO);
+        ReflectionTestUtils.setField(chatLongTermMemory, "longTermMemoryExecutor", executor);
+        ReflectionTestUtils.setField(chatLongTermMemory, "topK", 3);
+        ReflectionTestUtils.setField(chatLongTermMemory, "similarityThreshold", 0.5);
+    }
+
+    @Test
+    void testRememberStoresConversationWatermarkAsMessageSeq() {
+        ChatConversationsDO conversation = new ChatConversationsDO();
+        conversation.setConversationId("1");
+        conversation.setLastSeq(12L);
+        when(chatConversationsDAO.getByConversationId("1")).thenReturn(conversation);
+
+        chatLongTermMemory.remember("u1", "1", "问题", "回答");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Document>> captor = ArgumentCaptor.forClass(List.class);
+        verify(vectorStore).add(captor.capture());
+        Document document = captor.getValue().get(0);
+        assertEquals("u1", document.getMetadata().get("userId"));
+        assertEquals("1", document.getMetadata().get("conversationId"));
+        assertEquals(12L, document.getMetadata().get("messageSeq"));
+    }
+
+    @Test
+    void testRecallExcludesTurnsStillInWindow() {
+        // 摘要消息序号为0，窗口起点取对话消息的最小序号
+        List<Message> window = List.of(
+                ChatMessageMetadata.withSeq(new SystemMessage("之前对话的摘要"), 0L),
+                ChatMessageMetadata.withSeq(new UserMessage("问题"), 9L),
+                ChatMessageMetadata.withSeq(new AssistantMessage("回答"), 10L));
+
+        List<String> memories = chatLongTermMemory.recall("u1", "1", window, "新问题");
+
+        assertEquals(1, memories.size());
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        assertEquals(b.and(b.eq("userId", "u1"), b.or(b.ne("conversationId", "1"), b.lt("messageSeq", 9L))).build(),
+                captureSearchRequest().getFilterExpression());
+    }
+
+    @Test
+    void testRecallWithoutSequencedWindowExcludesWholeConversation() {
+        List<Message> window = List.of(new UserMessage("问题"), new AssistantMessage("回答"));
+
+        chatLongTermMemory.recall("u1", "1", window, "新问题");
+
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        assertEquals(b.and(b.eq("userId", "u1"), b.or(b.ne("conversationId", "1"), b.lt("messageSeq", 0L))).build(),
+                captureSearchRequest().getFilterExpression());
+    }
+
+    @Test
+    void testRecallWithEmptyWindowFiltersByUserOnly() {
+        chatLongTermMemory.recall("u1", "1", List.of(), "新问题");
+
+        assertEquals(new FilterExpressionBuilder().eq("userId", "u1").build(),
+                captureSearchRequest().getFilterExpression());
+    }
+
+    @Test
+    void testDisabledWithoutVectorStore() {
+        assertTrue(chatLongTermMemory.isEnabled());
+
+        ReflectionTestUtils.setField(chatLongTermMemory, "vectorStore", null);
+
+        assertFalse(chatLongTermMemory.isEnabled());
+        assertTrue(chatLongTermMemory.recall("u1", "1", List.of(), "新问题").isEmpty());
+        verifyNoInteractions(vectorStore);
+    }
+
+    private SearchRequest captureSearchRequest() {
+        ArgumentCaptor<SearchRequest> captor = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(vectorStore).similaritySearch(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,233 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * ChatMessageGroupCommitWriter测试类
+ *
+ * @author Mxy
+ */
+class ChatMessageGroupCommitWriterTest {
+
+    private final ChatMessagesDAO chatMessagesDAO = mock(ChatMessagesDAO.class);
+
+    private final ChatMemoryWindowStore chatMemoryRepository = mock(ChatMemoryWindowStore.class);
+
+    /**
+     * 按落库顺序记录的 对话ID:序号
+     */
+    private final List<String> inserted = new CopyOnWriteArrayList<>();
+
+    private ChatMessageGroupCommitWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void testReserveIsRejectedWhenQueueIsFull() throws Exception {
+        CountDownLatch insertStarted = new CountDownLatch(1);
+        CountDownLatch releaseInsert = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            insertStarted.countDown();
+            releaseInsert.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(chatMessagesDAO).insertBatch(anyList(), anyInt());
+        writer = newWriter(1, Duration.ofMillis(5));
+
+        writer.submit(reservation("conv", 1L));
+        assertTrue(insertStarted.await(5, TimeUnit.SECONDS));
+
+        // 唯一的名额在写入落库前不会释放，第二轮在推进水位线之前即被拒绝
+        assertThrows(IllegalStateException.class, () -> writer.reserve("conv"));
+
+        releaseInsert.countDown();
+        ChatMessageGroupCommitWriter.Reservation next = awaitReserve("conv");
+        writer.cancel(next);
+    }
+
+    @Test
+    void testRolledBackTransactionReleasesReservation() {
+        writer = newWriter(1, Duration.ofMillis(5));
+        ChatMessageGroupCommitWriter.Reservation reservation = reservation("conv", 1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            writer.submit(reservation);
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        writer.cancel(writer.reserve("conv"));
+        verify(chatMessagesDAO, never()).insertBatch(anyList(), anyInt());
+    }
+
+    @Test
+    void testFailedWriteIsRetainedInOrder() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            List<ChatMessagesDO> rows = invocation.getArgument(0);
+            if (failing.get() && rows.stream().anyMatch(row -> "a".equals(row.getConversationId()))) {
+                throw new IllegalStateException("database unavailable");
+            }
+            rows.forEach(row -> inserted.add(row.getConversationId() + ":" + row.getMessageSeq()));
+            return null;
+        }).when(chatMessagesDAO).insertBatch(anyList(), anyInt());
+        writer = newWriter(10, Duration.ofHours(1));
+
+        writer.submit(reservation("a", 1L));
+        writer.submit(reservation("b", 1L));
+        writer.submit(reservation("a", 2L));
+        writer.flush();
+
+        // 对话a的写入失败后连同其后续写入一起保留，对话b照常落库
+        assertTrue(writer.hasPending("a"));
+        assertFalse(writer.hasPending("b"));
+        assertFalse(inserted.contains("a:1"));
+        assertFalse(inserted.contains("a:2"));
+        assertTrue(inserted.contains("b:1"));
+
+        failing.set(false);
+        writer.flush();
+
+        assertFalse(writer.hasPending("a"));
+        assertTrue(inserted.indexOf("a:1") < inserted.indexOf("a:2"));
+    }
+
+    @Test
+    void testWriteIsDeadLetteredAfterMaxAttempts() {
+        doAnswer(invocation -> {
+            List<ChatMessagesDO> rows = invocation.getArgument(0);
+            if (rows.stream().anyMatch(row -> "a".equals(row.getConversationId()) && row.getMessageSeq() == 1L)) {
+                throw new IllegalStateException("Data too long for column 'content'");
+            }
+            rows.forEach(row -> inserted.add(row.getConversationId() + ":" + row.getMessageSeq()));
+            return null;
+        }).when(chatMessagesDAO).insertBatch(anyList(), anyInt());
+        writer = newWriter(2, Duration.ofHours(1));
+        ReflectionTestUtils.setField(writer, "maxAttempts", 2);
+
+        writer.submit(reservation("a", 1L));
+        writer.submit(reservation("a", 2L));
+        writer.flush();
+
+        // 第二次尝试仍失败，转入死信并释放名额，同一对话之后的写入继续落库
+        writer.flush();
+
+        assertFalse(writer.hasPending("a"));
+        assertEquals(List.of("a:2"), inserted);
+        verify(chatMemoryRepository).evict("a");
+        writer.cancel(writer.reserve("a"));
+        writer.cancel(writer.reserve("a"));
+    }
+
+    @Test
+    void testBackingOffWriteDoesNotBlockOtherConversations() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            List<ChatMessagesDO> rows = invocation.getArgument(0);
+            if (failing.get() && rows.stream().anyMatch(row -> "a".equals(row.getConversationId()))) {
+                throw new IllegalStateException("database unavailable");
+            }
+            rows.forEach(row -> inserted.add(row.getConversationId() + ":" + row.getMessageSeq()));
+            return null;
+        }).when(chatMessagesDAO).insertBatch(anyList(), anyInt());
+        writer = newWriter(10, Duration.ofHours(1));
+        ReflectionTestUtils.setField(writer, "retryBackoff", Duration.ofHours(1));
+
+        writer.submit(reservation("a", 1L));
+        writer.flush();
+        failing.set(false);
+        writer.submit(reservation("b", 1L));
+        writer.submit(reservation("a", 2L));
+
+        // 对话a的写入还在退避中，刷盘不等待、不重试它，也不让a的后续写入越过它；对话b照常落库
+        long start = System.nanoTime();
+        writer.flush();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(List.of("b:1"), inserted);
+        assertTrue(writer.hasPending("a"));
+        assertFalse(writer.hasPending("b"));
+    }
+
+    @Test
+    void testShutdownFlushesQueuedWrites() {
+        doAnswer(invocation -> {
+            List<ChatMessagesDO> rows = invocation.getArgument(0);
+            rows.forEach(row -> inserted.add(row.getConversationId() + ":" + row.getMessageSeq()));
+            return null;
+        }).when(chatMessagesDAO).insertBatch(anyList(), anyInt());
+        writer = newWriter(10, Duration.ofHours(1));
+
+        writer.submit(reservation("conv", 1L));
+        writer.submit(reservation("conv", 2L));
+        writer.shutdown();
+
+        assertEquals(List.of("conv:1", "conv:2"), inserted);
+        assertFalse(writer.hasPending("conv"));
+    }
+
+    private ChatMessageGroupCommitWriter newWriter(int queueCapacity, Duration flushInterval) {
+        ChatMessageGroupCommitWriter groupCommitWriter = new ChatMessageGroupCommitWriter();
+        ReflectionTestUtils.setField(groupCommitWriter, "chatMessagesDAO", chatMessagesDAO);
+        ReflectionTestUtils.setField(groupCommitWriter, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(groupCommitWriter, "enabled", true);
+        ReflectionTestUtils.setField(groupCommitWriter, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(groupCommitWriter, "maxBatchSize", 500);
+        ReflectionTestUtils.setField(groupCommitWriter, "flushInterval", flushInterval);
+        ReflectionTestUtils.setField(groupCommitWriter, "offerTimeout", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(groupCommitWriter, "chatMemoryRepository", chatMemoryRepository);
+        ReflectionTestUtils.setField(groupCommitWriter, "maxAttempts", 5);
+        ReflectionTestUtils.setField(groupCommitWriter, "retryBackoff", Duration.ZERO);
+        groupCommitWriter.start();
+        return groupCommitWriter;
+    }
+
+    private ChatMessageGroupCommitWriter.Reservation reservation(String conversationId, long seq) {
+        ChatMessagesDO row = new ChatMessagesDO();
+        row.setConversationId(conversationId);
+        row.setMessageSeq(seq);
+        ChatMessageGroupCommitWriter.Reservation reservation = writer.reserve(conversationId);
+        reservation.addMessages(List.of(row));
+        return reservation;
+    }
+
+    private ChatMessageGroupCommitWriter.Reservation awaitReserve(String conversationId) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                return writer.reserve(conversationId);
+            } catch (IllegalStateException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatSegmentFileStore测试类
+ *
+ * @author Mxy
+ */
+class ChatSegmentFileStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAppendedRecordsAreReadBackByOffset() throws Exception {
+        ChatSegmentFileStore store = new ChatSegmentFileStore(directory, 1024);
+
+        ChatSegmentFileStore.SegmentPointer first = store.append(bytes("first conversation"));
+        ChatSegmentFileStore.SegmentPointer second = store.append(bytes("second conversation"));
+
+        assertEquals(first.segmentFile(), second.segmentFile());
+        assertEquals(first.length(), second.offset());
+        assertEquals("second conversation", text(store.read(second.segmentFile(), second.offset(), second.length())));
+        assertEquals("first conversation", text(store.read(first.segmentFile(), first.offset(), first.length())));
+    }
+
+    @Test
+    void testRollsToNextSegmentWhenFull() throws Exception {
+        ChatSegmentFileStore store = new ChatSegmentFileStore(directory, 16);
+
+        ChatSegmentFileStore.SegmentPointer first = store.append(bytes("0123456789"));
+        ChatSegmentFileStore.SegmentPointer second = store.append(bytes("abcdefghij"));
+
+        assertNotEquals(first.segmentFile(), second.segmentFile());
+        assertEquals(0, second.offset());
+
+        // 重启后继续写入最新的段文件
+        ChatSegmentFileStore reopened = new ChatSegmentFileStore(directory, 16);
+        ChatSegmentFileStore.SegmentPointer third = reopened.append(bytes("xyz"));
+        assertEquals(second.segmentFile(), third.segmentFile());
+        assertEquals("abcdefghij", text(reopened.read(second.segmentFile(), second.offset(), second.length())));
+    }
+
+    @Test
+    void testRejectsPathOutsideDirectory() {
+        ChatSegmentFileStore store = new ChatSegmentFileStore(directory, 1024);
+        assertThrows(java.io.IOException.class, () -> store.read("../outside.seg", 0, 1));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
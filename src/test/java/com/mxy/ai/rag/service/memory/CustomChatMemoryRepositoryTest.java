@@ -1,7 +1,10 @@
 package com.mxy.ai.rag.service.memory;
 
+import com.mxy.ai.rag.datasource.dao.ChatConversationsDAO;
 import com.mxy.ai.rag.datasource.dao.ChatMessagesDAO;
 import com.mxy.ai.rag.datasource.dao.ChatSessionsDAO;
+import com.mxy.ai.rag.datasource.entity.ChatConversationsDO;
+import com.mxy.ai.rag.datasource.entity.ChatMessagesDO;
 import com.mxy.ai.rag.datasource.entity.ChatSessionsDO;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,6 +18,7 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -31,12 +35,22 @@ class CustomChatMemoryRepositoryTest {
     @Mock
     private ChatMessagesDAO chatMessagesDAO;
 
+    @Mock
+    private ChatConversationsDAO chatConversationsDAO;
+
+    @Mock
+    private ChatMemoryCompactor chatMemoryCompactor;
+
+    @Mock
+    private ChatColdTierService chatColdTierService;
+
     @InjectMocks
     private CustomChatMemoryRepository repository;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(chatConversationsDAO.compareAndSetLastSeq(any(), anyLong(), anyLong())).thenReturn(true);
     }
 
     @Test
@@ -173,4 +187,95 @@ class CustomChatMemoryRepositoryTest {
         verify(chatMessagesDAO, never()).deleteMessagesByConversationId(any());
         verify(chatSessionsDAO, times(1)).update(any(), any());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSaveAllAppendsOnlyMessagesPastWatermark() {
+        // 窗口中前两条消息已落库（带序号），只有最后一条是新消息
+        String conversationId = "test-conversation-123";
+        List<Message> window = Arrays.asList(
+                ChatMessageMetadata.withSeq(new UserMessage("Old question"), 7L),
+                ChatMessageMetadata.withSeq(new AssistantMessage("Old answer"), 8L),
+                new UserMessage("New question")
+        );
+        when(chatConversationsDAO.getOrCreateLastSeq(conversationId)).thenReturn(8L);
+
+        repository.saveAll(conversationId, window);
+
+        // 新消息从水位线之后分配序号，窗口外的旧消息按序号范围一次软删除，不再读取历史
+        verify(chatMessagesDAO, times(1)).saveBatch(argThat(list ->
+                list.size() == 1 && list.iterator().next().getMessageSeq() == 9L));
+        verify(chatConversationsDAO, times(1)).compareAndSetLastSeq(conversationId, 8L, 9L);
+        verify(chatMessagesDAO, times(1)).trimWindow(conversationId, 7L);
+        verify(chatMessagesDAO, never()).getMessageWindowByConversationId(any(), anyInt());
+    }
+
+    @Test
+    void testFindConversationIdsPagesThroughRegistry() {
+        // 对话注册表按对话ID游标分页，最后一页不满时停止
+        when(chatConversationsDAO.getConversationIdsAfter(null, 1000))
+                .thenReturn(java.util.Collections.nCopies(1000, "conv-a"));
+        when(chatConversationsDAO.getConversationIdsAfter("conv-a", 1000)).thenReturn(List.of("conv-b"));
+
+        List<String> conversationIds = repository.findConversationIds();
+
+        assertEquals(1001, conversationIds.size());
+        assertEquals("conv-b", conversationIds.get(1000));
+        verify(chatConversationsDAO, times(2)).getConversationIdsAfter(any(), eq(1000));
+    }
+
+    @Test
+    void testSaveAllFailsWhenWatermarkMovedConcurrently() {
+        // 其他节点已推进水位线时不写入消息，交给上层重试
+        String conversationId = "test-conversation-123";
+        when(chatConversationsDAO.getOrCreateLastSeq(conversationId)).thenReturn(8L);
+        when(chatConversationsDAO.compareAndSetLastSeq(conversationId, 8L, 9L)).thenReturn(false);
+
+        assertThrows(org.springframework.dao.OptimisticLockingFailureException.class,
+                () -> repository.saveAll(conversationId, List.of(new UserMessage("New question"))));
+        verify(chatMessagesDAO, never()).saveBatch(any());
+    }
+
+    @Test
+    void testForkWithoutForkSeqDoesNotInherit() {
+        String conversationId = "child";
+        when(chatMessagesDAO.getMessageWindowByConversationId(conversationId, 10))
+                .thenReturn(List.of(messageDO("USER", "own question", 6L)));
+        when(chatConversationsDAO.getByConversationId(conversationId)).thenReturn(conversation("parent", null));
+
+        List<Message> window = repository.findByConversationId(conversationId);
+
+        assertEquals(1, window.size());
+        verify(chatMessagesDAO, never()).getInheritedMessages(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void testInheritanceStopsAtAncestorWithoutForkSeq() {
+        String conversationId = "child";
+        when(chatMessagesDAO.getMessageWindowByConversationId(conversationId, 10))
+                .thenReturn(List.of(messageDO("USER", "own question", 6L)));
+        when(chatConversationsDAO.getByConversationId(conversationId)).thenReturn(conversation("parent", 5L));
+        when(chatMessagesDAO.getInheritedMessages("parent", 5L, 9))
+                .thenReturn(List.of(messageDO("ASSISTANT", "parent answer", 5L)));
+        when(chatConversationsDAO.getByConversationId("parent")).thenReturn(conversation("grandparent", null));
+
+        List<Message> window = repository.findByConversationId(conversationId);
+
+        assertEquals(List.of("parent answer", "own question"), window.stream().map(Message::getText).toList());
+        verify(chatMessagesDAO, never()).getInheritedMessages(eq("grandparent"), anyLong(), anyInt());
+    }
+
+    private static ChatConversationsDO conversation(String parentConversationId, Long forkSeq) {
+        ChatConversationsDO conversation = new ChatConversationsDO();
+        conversation.setParentConversationId(parentConversationId);
+        conversation.setForkSeq(forkSeq);
+        return conversation;
+    }
+
+    private static ChatMessagesDO messageDO(String messageType, String content, long messageSeq) {
+        ChatMessagesDO messageDO = new ChatMessagesDO();
+        messageDO.setMessageType(messageType);
+        messageDO.setContent(content);
+        messageDO.setMessageSeq(messageSeq);
+        return messageDO;
+    }
+}
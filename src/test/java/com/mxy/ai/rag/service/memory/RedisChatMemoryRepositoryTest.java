@@ -0,0 +1,214 @@
+package com.mxy.ai.rag.service.memory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.redisson.api.RKeys;
+import org.redisson.api.RList;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * RedisChatMemoryRepository测试类
+ * 使用内存中的Redis替身（按key保存列表）模拟多个节点共享同一个Redis，
+ * 验证同一对话的连续轮次落在不同节点时不再回源数据库
+ *
+ * @author Mxy
+ */
+class RedisChatMemoryRepositoryTest {
+
+    @Mock
+    private ChatMemoryWindowStore database;
+
+    /**
+     * Redis替身：key -> 列表内容
+     */
+    private final Map<String, List<String>> redis = new ConcurrentHashMap<>();
+
+    /**
+     * Redis替身：序号key -> 窗口最大序号
+     */
+    private final Map<String, Long> seqs = new ConcurrentHashMap<>();
+
+    private RedisChatMemoryRepository nodeA;
+
+    private RedisChatMemoryRepository nodeB;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ObjectMapper objectMapper = new ObjectMapper();
+        nodeA = new RedisChatMemoryRepository(redisStandIn(), database, objectMapper, Duration.ofHours(2));
+        nodeB = new RedisChatMemoryRepository(redisStandIn(), database, objectMapper, Duration.ofHours(2));
+    }
+
+    @Test
+    void testConsecutiveTurnsOnDifferentNodesSkipDatabase() {
+        String conversationId = "test-conversation-123";
+        List<Message> incoming = List.of(new UserMessage("Hello"), new AssistantMessage("Hi there!"));
+        List<Message> saved = List.of(
+                ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L),
+                ChatMessageMetadata.withSeq(new AssistantMessage("Hi there!"), 2L));
+        when(database.saveWindow(conversationId, incoming)).thenReturn(saved);
+
+        // 第一轮落在节点A
+        nodeA.saveAll(conversationId, incoming);
+
+        // 第二轮落在节点B，直接从Redis读取窗口，序号等元数据完整保留
+        List<Message> window = nodeB.findByConversationId(conversationId);
+
+        assertEquals(2, window.size());
+        assertEquals("Hello", window.get(0).getText());
+        assertInstanceOf(AssistantMessage.class, window.get(1));
+        assertEquals(2L, ChatMessageMetadata.getSeq(window.get(1)));
+        verify(database, never()).findByConversationId(any());
+    }
+
+    @Test
+    void testMissFallsBackToDatabaseAndBackfills() {
+        String conversationId = "test-conversation-123";
+        List<Message> stored = List.of(ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L));
+        when(database.findByConversationId(conversationId)).thenReturn(stored);
+
+        assertEquals(1, nodeA.findByConversationId(conversationId).size());
+        assertEquals(1, nodeB.findByConversationId(conversationId).size());
+
+        // 只有第一次未命中时回源数据库
+        verify(database, times(1)).findByConversationId(conversationId);
+    }
+
+    @Test
+    void testDeleteByConversationIdRemovesSharedWindow() {
+        String conversationId = "test-conversation-123";
+        List<Message> stored = List.of(ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L));
+        when(database.findByConversationId(conversationId)).thenReturn(stored).thenReturn(List.of());
+
+        nodeA.findByConversationId(conversationId);
+        nodeB.deleteByConversationId(conversationId);
+
+        assertTrue(nodeA.findByConversationId(conversationId).isEmpty());
+        verify(database, times(1)).deleteByConversationId(conversationId);
+    }
+
+    @Test
+    void testBackfillDoesNotOverwriteNewerWindow() {
+        String conversationId = "test-conversation-123";
+        List<Message> staleWindow = List.of(
+                ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L),
+                ChatMessageMetadata.withSeq(new AssistantMessage("Hi there!"), 2L));
+        List<Message> incoming = List.of(new UserMessage("How are you?"), new AssistantMessage("Fine."));
+        List<Message> newerWindow = List.of(
+                ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L),
+                ChatMessageMetadata.withSeq(new AssistantMessage("Hi there!"), 2L),
+                ChatMessageMetadata.withSeq(new UserMessage("How are you?"), 3L),
+                ChatMessageMetadata.withSeq(new AssistantMessage("Fine."), 4L));
+        when(database.saveWindow(conversationId, incoming)).thenReturn(newerWindow);
+        // 节点A未命中并从数据库读到旧窗口后，节点B保存了下一轮并写入Redis，节点A才开始回填
+        when(database.findByConversationId(conversationId)).thenAnswer(invocation -> {
+            nodeB.saveAll(conversationId, incoming);
+            return staleWindow;
+        });
+
+        assertEquals(2, nodeA.findByConversationId(conversationId).size());
+
+        List<Message> window = nodeB.findByConversationId(conversationId);
+        assertEquals(4, window.size());
+        assertEquals(4L, ChatMessageMetadata.getSeq(window.get(3)));
+    }
+
+    @Test
+    void testOlderSaveDoesNotOverwriteNewerWindow() {
+        String conversationId = "test-conversation-123";
+        List<Message> firstTurn = List.of(new UserMessage("Hello"));
+        List<Message> secondTurn = List.of(new UserMessage("How are you?"));
+        when(database.saveWindow(conversationId, secondTurn)).thenReturn(List.of(
+                ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L),
+                ChatMessageMetadata.withSeq(new UserMessage("How are you?"), 2L)));
+        // 节点A的第一轮先落库，但在写Redis之前节点B的第二轮已经写入了更新的窗口
+        when(database.saveWindow(conversationId, firstTurn)).thenAnswer(invocation -> {
+            nodeB.saveAll(conversationId, secondTurn);
+            return List.of(ChatMessageMetadata.withSeq(new UserMessage("Hello"), 1L));
+        });
+
+        nodeA.saveAll(conversationId, firstTurn);
+
+        assertEquals(2, nodeA.findByConversationId(conversationId).size());
+    }
+
+    /**
+     * 构造一个读写共享内存Map的RedissonClient替身
+     * 窗口写入脚本按WRITE_WINDOW_SCRIPT的语义在内存中执行
+     */
+    @SuppressWarnings("unchecked")
+    private RedissonClient redisStandIn() {
+        RedissonClient client = mock(RedissonClient.class);
+
+        when(client.getList(anyString(), any())).thenAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            RList<String> list = mock(RList.class);
+            when(list.readAll()).thenAnswer(i -> new ArrayList<>(redis.getOrDefault(key, List.of())));
+            return list;
+        });
+
+        RKeys keys = mock(RKeys.class);
+        when(keys.delete(any(String[].class))).thenAnswer(invocation -> {
+            long deleted = 0;
+            for (Object key : invocation.getArguments()) {
+                boolean removed = redis.remove((String) key) != null;
+                removed |= seqs.remove((String) key) != null;
+                if (removed) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        });
+        when(client.getKeys()).thenReturn(keys);
+
+        RScript script = mock(RScript.class);
+        when(script.eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    List<Object> scriptKeys = invocation.getArgument(3);
+                    Object[] args = Arrays.copyOfRange(invocation.getArguments(), 4, invocation.getArguments().length);
+                    String listKey = (String) scriptKeys.get(0);
+                    String seqKey = (String) scriptKeys.get(1);
+                    synchronized (redis) {
+                        if ("1".equals(args[0]) && redis.containsKey(listKey)) {
+                            return 0L;
+                        }
+                        Long current = seqs.get(seqKey);
+                        long seq = Long.parseLong((String) args[1]);
+                        if (current != null && current > seq) {
+                            return 0L;
+                        }
+                        List<String> values = new ArrayList<>();
+                        for (int i = 3; i < args.length; i++) {
+                            values.add((String) args[i]);
+                        }
+                        redis.put(listKey, values);
+                        seqs.put(seqKey, seq);
+                        return 1L;
+                    }
+                });
+        when(client.getScript(any(Codec.class))).thenReturn(script);
+        return client;
+    }
+}
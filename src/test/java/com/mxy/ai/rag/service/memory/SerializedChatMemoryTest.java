@@ -0,0 +1,108 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * SerializedChatMemory测试类
+ *
+ * @author Mxy
+ */
+class SerializedChatMemoryTest {
+
+    @Test
+    void testConcurrentAddsAreCombined() throws Exception {
+        CountDownLatch firstAddStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstAdd = new CountDownLatch(1);
+        ChatMemory delegate = mock(ChatMemory.class);
+        doAnswer(invocation -> {
+            if (firstAddStarted.getCount() > 0) {
+                firstAddStarted.countDown();
+                releaseFirstAdd.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(delegate).add(eq("conv"), anyList());
+        SerializedChatMemory chatMemory = new SerializedChatMemory(delegate, 4, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // 第一次写入持有锁期间，另外两次写入排队，释放后合并为一次写入
+            Future<?> first = executor.submit(() -> chatMemory.add("conv", List.of(new UserMessage("q1"))));
+            assertTrue(firstAddStarted.await(5, TimeUnit.SECONDS));
+            Future<?> second = executor.submit(() -> chatMemory.add("conv", List.of(new UserMessage("q2"))));
+            Future<?> third = executor.submit(() -> chatMemory.add("conv", List.of(new UserMessage("q3"))));
+            Thread.sleep(100);
+            releaseFirstAdd.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            third.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(delegate, times(2)).add(eq("conv"), anyList());
+        verify(delegate).add(eq("conv"), argThat((List<Message> messages) -> messages.size() == 2));
+    }
+
+    @Test
+    void testRetriesOnOptimisticLockingFailure() {
+        ChatMemory delegate = mock(ChatMemory.class);
+        doThrow(new OptimisticLockingFailureException("moved"))
+                .doNothing()
+                .when(delegate).add(eq("conv"), anyList());
+        SerializedChatMemory chatMemory = new SerializedChatMemory(delegate, 4, 1);
+
+        chatMemory.add("conv", List.of(new UserMessage("q")));
+
+        verify(delegate, times(2)).add(eq("conv"), anyList());
+    }
+
+    @Test
+    void testFailureIsRethrownAfterRetriesExhausted() {
+        ChatMemory delegate = mock(ChatMemory.class);
+        doThrow(new OptimisticLockingFailureException("moved")).when(delegate).add(eq("conv"), anyList());
+        SerializedChatMemory chatMemory = new SerializedChatMemory(delegate, 4, 1);
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> chatMemory.add("conv", List.of(new UserMessage("q"))));
+        verify(delegate, times(2)).add(eq("conv"), anyList());
+    }
+
+    @Test
+    void testAddToLoadedWindowIsPassedThrough() {
+        WindowAwareChatMemory delegate = mock(WindowAwareChatMemory.class);
+        List<Message> window = List.of(ChatMessageMetadata.withSeq(new UserMessage("q1"), 1L));
+        List<Message> saved = List.of(ChatMessageMetadata.withSeq(new UserMessage("q2"), 2L));
+        when(delegate.add(eq("conv"), eq(window), anyList())).thenReturn(saved);
+        SerializedChatMemory chatMemory = new SerializedChatMemory(delegate, 4, 1);
+
+        assertSame(saved, chatMemory.add("conv", window, List.of(new UserMessage("q2"))));
+        verify(delegate, never()).add(eq("conv"), anyList());
+    }
+
+    @Test
+    void testAddToLoadedWindowFallsBackToPlainAddOnConflict() {
+        WindowAwareChatMemory delegate = mock(WindowAwareChatMemory.class);
+        List<Message> window = List.of();
+        when(delegate.add(eq("conv"), eq(window), anyList())).thenThrow(new OptimisticLockingFailureException("moved"));
+        SerializedChatMemory chatMemory = new SerializedChatMemory(delegate, 4, 1);
+
+        assertNull(chatMemory.add("conv", window, List.of(new UserMessage("q"))));
+        verify(delegate).add(eq("conv"), anyList());
+    }
+}
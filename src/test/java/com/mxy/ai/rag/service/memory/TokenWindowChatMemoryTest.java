@@ -0,0 +1,129 @@
+package com.mxy.ai.rag.service.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * TokenWindowChatMemory测试类
+ * token计数器按字符数计数，便于构造确定的预算场景
+ *
+ * @author Mxy
+ */
+class TokenWindowChatMemoryTest {
+
+    @Mock
+    private ChatMemoryRepository chatMemoryRepository;
+
+    @Mock
+    private TokenCountEstimator tokenCountEstimator;
+
+    private TokenWindowChatMemory chatMemory;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(tokenCountEstimator.estimate(anyString())).thenAnswer(invocation -> ((String) invocation.getArgument(0)).length());
+        chatMemory = new TokenWindowChatMemory(chatMemoryRepository, 20, 10, tokenCountEstimator);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAddKeepsNewestMessagesWithinTokenBudget() {
+        String conversationId = "test-conversation-123";
+        when(chatMemoryRepository.findByConversationId(conversationId)).thenReturn(List.of(
+                counted(new UserMessage("a very long question"), 1L),
+                counted(new AssistantMessage("short"), 2L)));
+
+        chatMemory.add(conversationId, List.of(new UserMessage("next")));
+
+        ArgumentCaptor<List<Message>> captor = ArgumentCaptor.forClass(List.class);
+        verify(chatMemoryRepository).saveAll(eq(conversationId), captor.capture());
+        List<Message> window = captor.getValue();
+
+        // 19 + 5 + 4 超出预算20，最早的长问题被淘汰
+        assertEquals(2, window.size());
+        assertEquals("short", window.get(0).getText());
+        assertEquals("next", window.get(1).getText());
+        // 新消息的token数在写入前算好，随消息一起落库
+        assertEquals(4, ChatMessageMetadata.getTokenCount(window.get(1)));
+        // 已落库的消息直接使用存储的token数，不重复分词
+        verify(tokenCountEstimator, times(1)).estimate(anyString());
+    }
+
+    @Test
+    void testGetAlwaysKeepsSystemMessageAndNewestMessage() {
+        String conversationId = "test-conversation-123";
+        when(chatMemoryRepository.findByConversationId(conversationId)).thenReturn(List.of(
+                counted(new SystemMessage("be nice"), 1L),
+                counted(new UserMessage("hi"), 2L),
+                counted(new AssistantMessage("an answer that is far longer than the budget"), 3L)));
+
+        List<Message> window = chatMemory.get(conversationId);
+
+        assertEquals(2, window.size());
+        assertInstanceOf(SystemMessage.class, window.get(0));
+        assertInstanceOf(AssistantMessage.class, window.get(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAddToLoadedWindowSavesWithoutReloading() {
+        String conversationId = "test-conversation-123";
+        ChatMemoryWindowStore windowStore = mock(ChatMemoryWindowStore.class);
+        when(windowStore.saveWindow(eq(conversationId), anyList(), anyLong())).thenAnswer(invocation -> invocation.getArgument(1));
+        TokenWindowChatMemory windowAware = new TokenWindowChatMemory(windowStore, 20, 10, tokenCountEstimator);
+        List<Message> window = List.of(counted(new UserMessage("hi"), 7L), counted(new AssistantMessage("hello"), 8L));
+
+        List<Message> saved = windowAware.add(conversationId, window, List.of(new UserMessage("next")));
+
+        assertEquals(3, saved.size());
+        assertEquals("next", saved.get(2).getText());
+        // 以已读取窗口的最大序号作为期望的水位线
+        verify(windowStore).saveWindow(eq(conversationId), anyList(), eq(8L));
+        verify(windowStore, never()).findByConversationId(anyString());
+    }
+
+    @Test
+    void testAddToStaleWindowReloadsBeforeSaving() {
+        String conversationId = "test-conversation-123";
+        ChatMemoryWindowStore windowStore = mock(ChatMemoryWindowStore.class);
+        when(windowStore.saveWindow(eq(conversationId), anyList(), anyLong()))
+                .thenThrow(new OptimisticLockingFailureException("moved"));
+        when(windowStore.findByConversationId(conversationId)).thenReturn(List.of(
+                counted(new UserMessage("hi"), 7L), counted(new AssistantMessage("hello"), 8L),
+                counted(new UserMessage("other"), 9L)));
+        when(windowStore.saveWindow(eq(conversationId), anyList())).thenAnswer(invocation -> invocation.getArgument(1));
+        TokenWindowChatMemory windowAware = new TokenWindowChatMemory(windowStore, 20, 10, tokenCountEstimator);
+
+        List<Message> saved = windowAware.add(conversationId,
+                List.of(counted(new UserMessage("hi"), 7L)), List.of(new UserMessage("next")));
+
+        assertEquals(List.of("hi", "hello", "other", "next"), saved.stream().map(Message::getText).toList());
+    }
+
+    private Message counted(Message message, long seq) {
+        return ChatMessageMetadata.withMetadata(message, Map.of(
+                ChatMessageMetadata.MESSAGE_SEQ, seq,
+                ChatMessageMetadata.TOKEN_COUNT, message.getText().length()));
+    }
+}
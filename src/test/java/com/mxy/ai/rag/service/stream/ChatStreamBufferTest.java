@@ -0,0 +1,118 @@
+package com.mxy.ai.rag.service.stream;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatStreamBuffer测试类
+ *
+ * @author Mxy
+ */
+class ChatStreamBufferTest {
+
+    @Test
+    void testResumeReplaysEventsAfterLastEventId() {
+        ChatStreamBuffer buffer = new ChatStreamBuffer("stream", "user", 100, Duration.ofMinutes(1));
+        AtomicInteger terminated = new AtomicInteger();
+        buffer.start(Flux.just("a", "b", "c"), terminated::incrementAndGet);
+
+        List<ChatStreamEvent> resumed = buffer.events(2).collectList().block(Duration.ofSeconds(5));
+
+        assertNotNull(resumed);
+        assertEquals(List.of(3L, 4L), resumed.stream().map(ChatStreamEvent::id).toList());
+        assertEquals(Map.of("content", "c"), resumed.get(0).data());
+        assertEquals(ChatStreamEvent.DONE, resumed.get(1).type());
+        assertEquals(1, terminated.get());
+    }
+
+    @Test
+    void testAnswerIsSubscribedOnceAcrossReconnects() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        ChatStreamBuffer buffer = new ChatStreamBuffer("stream", "user", 100, Duration.ofMinutes(1));
+        buffer.start(tokens.asFlux().doOnSubscribe(s -> subscriptions.incrementAndGet()), () -> {
+        });
+
+        tokens.tryEmitNext("a");
+        // 第一个客户端读到第一个片段后断开
+        assertEquals(1L, buffer.events(0).blockFirst(Duration.ofSeconds(5)).id());
+        tokens.tryEmitNext("b");
+        tokens.tryEmitComplete();
+
+        List<ChatStreamEvent> resumed = buffer.events(1).collectList().block(Duration.ofSeconds(5));
+
+        assertNotNull(resumed);
+        assertEquals(List.of(ChatStreamEvent.TOKEN, ChatStreamEvent.DONE),
+                resumed.stream().map(ChatStreamEvent::type).toList());
+        assertEquals(1, subscriptions.get());
+    }
+
+    @Test
+    void testCloseCancelsRunningAnswer() {
+        AtomicInteger cancelled = new AtomicInteger();
+        ChatStreamBuffer buffer = new ChatStreamBuffer("stream", "user", 100, Duration.ofMinutes(1));
+        buffer.start(Flux.<String>never().doOnCancel(cancelled::incrementAndGet), () -> {
+        });
+
+        buffer.close();
+
+        ChatStreamEvent last = buffer.events(0).blockLast(Duration.ofSeconds(5));
+        assertNotNull(last);
+        assertEquals(ChatStreamEvent.ERROR, last.type());
+        assertEquals(1, cancelled.get());
+    }
+
+    @Test
+    void testAbandonedAnswerIsCancelled() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        ChatStreamBuffer buffer = new ChatStreamBuffer("stream", "user", 100, Duration.ofMillis(50));
+        buffer.start(Flux.<String>never().doOnCancel(cancelled::countDown), () -> {
+        });
+
+        // 客户端连接后断开，等待重连时间内没有新连接
+        buffer.events(0).subscribe().dispose();
+
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        ChatStreamEvent last = buffer.events(0).blockLast(Duration.ofSeconds(5));
+        assertNotNull(last);
+        assertEquals(ChatStreamEvent.ERROR, last.type());
+    }
+
+    @Test
+    void testResumeFromEvictedEventReceivesError() {
+        ChatStreamBuffer buffer = new ChatStreamBuffer("stream", "user", 2, Duration.ofMinutes(1));
+        buffer.start(Flux.just("a", "b", "c"), () -> {
+        });
+
+        // 只保留了最后两个事件（c和完成），客户端只收到过a
+        List<ChatStreamEvent> resumed = buffer.events(1).collectList().block(Duration.ofSeconds(5));
+
+        assertNotNull(resumed);
+        assertEquals(1, resumed.size());
+        assertEquals(ChatStreamEvent.ERROR, resumed.get(0).type());
+        assertEquals(List.of(3L, 4L), buffer.events(2).map(ChatStreamEvent::id).collectList().block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void testAnswerFailureDoesNotExposeErrorDetails() {
+        ChatStreamBuffer buffer = new ChatStreamBuffer("stream", "user", 100, Duration.ofMinutes(1));
+        buffer.start(Flux.error(new IllegalStateException("jdbc:mysql://db-internal:3306 refused")), () -> {
+        });
+
+        ChatStreamEvent last = buffer.events(0).blockLast(Duration.ofSeconds(5));
+
+        assertNotNull(last);
+        assertEquals(ChatStreamEvent.ERROR, last.type());
+        assertFalse(String.valueOf(last.data()).contains("db-internal"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.mxy.ai.rag.service.stream;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TokenFrameAggregator测试类
+ *
+ * @author Mxy
+ */
+class TokenFrameAggregatorTest {
+
+    @Test
+    void testFirstTokenImmediateAndRestCoalescedByWindow() throws Exception {
+        Scheduler scheduler = Schedulers.newSingle("frame-test");
+        TokenFrameAggregator aggregator = new TokenFrameAggregator(true, Duration.ofMillis(200), 1024, scheduler);
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        List<String> frames = new CopyOnWriteArrayList<>();
+        aggregator.aggregate(tokens.asFlux()).subscribe(frames::add);
+
+        tokens.tryEmitNext("你");
+        assertEquals(List.of("你"), frames);
+
+        tokens.tryEmitNext("好");
+        tokens.tryEmitNext("，");
+        tokens.tryEmitNext("世界");
+        assertEquals(1, frames.size());
+
+        // 窗口到期后合并为一帧
+        long deadline = System.currentTimeMillis() + 5000;
+        while (frames.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("你", "好，世界"), frames);
+
+        tokens.tryEmitNext("！");
+        tokens.tryEmitComplete();
+        assertEquals(List.of("你", "好，世界", "！"), frames);
+        scheduler.dispose();
+    }
+
+    @Test
+    void testFrameFlushedWhenMaxBytesReached() {
+        TokenFrameAggregator aggregator = new TokenFrameAggregator(true, Duration.ofSeconds(10), 4, Schedulers.parallel());
+
+        List<String> frames = aggregator.aggregate(Flux.just("a", "bb", "cc", "d", "e")).collectList().block();
+
+        assertEquals(List.of("a", "bbcc", "de"), frames);
+    }
+
+    @Test
+    void testCancelPropagatesUpstream() {
+        TokenFrameAggregator aggregator = new TokenFrameAggregator(true, Duration.ofMillis(40), 1024, Schedulers.parallel());
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        aggregator.aggregate(Flux.<String>never().doOnCancel(() -> cancelled.set(true))).subscribe().dispose();
+
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void testDisabledPassesTokensThrough() {
+        TokenFrameAggregator aggregator = new TokenFrameAggregator(false, Duration.ofMillis(40), 1024);
+        Flux<String> tokens = Flux.just("a", "b");
+
+        assertSame(tokens, aggregator.aggregate(tokens));
+    }
+}